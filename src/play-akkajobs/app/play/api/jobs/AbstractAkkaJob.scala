@@ -1,6 +1,7 @@
 package play.api.jobs
 
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
 
 import akka.actor.{ActorSystem, Cancellable}
 import org.joda.time.DateTime
@@ -9,29 +10,36 @@ import org.slf4j.LoggerFactory
 import scala.concurrent.ExecutionContext
 import scala.concurrent.duration.Duration
 
-abstract class AbstractAkkaJob (val id:String,val actorSystem: ActorSystem,val executor: ExecutionContext) extends Runnable {
+/**
+  * @param timer 不为空时使用时间轮调度,否则使用actorSystem.scheduler
+  */
+abstract class AbstractAkkaJob (val id:String,val actorSystem: ActorSystem,val executor: ExecutionContext,val timer: TimingWheelScheduler = null) extends Runnable {
   protected val LOGGER = LoggerFactory.getLogger(classOf[AbstractAkkaJob])
   /**
     * The Cron-Expression of this job.
     */
-  var cronExpression: CronExpression = null
+  @volatile var cronExpression: CronExpression = null
 
   /**
     * The current state of the job
     */
-  private var runState =  EJobRunState.STOPPED
+  private val runState = new AtomicReference[EJobRunState.State](EJobRunState.STOPPED)
   /**
     * Restart this job when it failed ?
     */
-  private var restartOnFail = true
+  @volatile private var restartOnFail = true
   /**
     * The date when the job will be next fired
     */
-  private var nextFireDate:DateTime = null
+  @volatile private var nextFireDate:DateTime = null
   /**
     * When the job runs this is the cancallable
     */
-  private var cancellable:Cancellable = null
+  @volatile private var cancellable:Cancellable = null
+  /**
+    * stopJob之后正在执行的任务不再重新调度
+    */
+  @volatile private var stopped = false
 
   def getId():String = id
 
@@ -39,7 +47,17 @@ abstract class AbstractAkkaJob (val id:String,val actorSystem: ActorSystem,val e
     * Schedules the job
     */
   def scheduleJob(): Unit = {
-    if (EJobRunState.DISABLED == runState) {
+    stopped = false
+    doScheduleJob()
+  }
+
+  /**
+    * 执行完成或者被时间轮跳过后计算下一次执行时间
+    */
+  private[jobs] def reschedule(): Unit = if (!stopped) doScheduleJob()
+
+  private def doScheduleJob(): Unit = {
+    if (EJobRunState.DISABLED == runState.get) {
       LOGGER.info("Runstate for the job: " + this.getClass.getName + " is " + EJobRunState.DISABLED + " not going to run")
       return
     }
@@ -58,56 +76,74 @@ abstract class AbstractAkkaJob (val id:String,val actorSystem: ActorSystem,val e
     }
 
     val duration = Duration.create(nextInterval, TimeUnit.MILLISECONDS)
-    runState = EJobRunState.SCHEDULED
-    cancellable = actorSystem.scheduler.scheduleOnce(duration, this)(executor)
+    //正在执行时由执行结束后的reschedule更新状态
+    runState.updateAndGet(state => if (state == EJobRunState.RUNNING) state else EJobRunState.SCHEDULED)
+    val scheduled = if (timer != null) {
+      timer.schedule(this, nextFireDate.getMillis)
+    } else {
+      actorSystem.scheduler.scheduleOnce(duration, this)(executor)
+    }
+    cancellable = scheduled
+    //stopJob可能在检查stopped之后、赋值cancellable之前取消了上一次的调度
+    if (stopped) scheduled.cancel()
 
     if (LOGGER.isDebugEnabled) {
       LOGGER.debug(this.getClass.getName + " job is running again in: " + duration.toString + " @ " + nextFireDate)
     }
   }
 
+  /**
+    * 原子地进入RUNNING状态,已经在执行时返回false
+    */
+  private def tryStartRunning(): Boolean = {
+    var state = runState.get
+    while (state != EJobRunState.RUNNING) {
+      if (runState.compareAndSet(state, EJobRunState.RUNNING)) return true
+      state = runState.get
+    }
+    false
+  }
+
   def runNow():Unit = {
-    if (EJobRunState.RUNNING == runState) {
+    if (!tryStartRunning()) {
       return
     }
     try {
-      runState = EJobRunState.RUNNING
       runInternal()
-      runState = EJobRunState.STOPPED
+      runState.set(EJobRunState.STOPPED)
     } catch {
       case e: Exception =>
         LOGGER.error("An error happend in the internal implementation of the job: " + this.getClass.getName, e)
-        runState = EJobRunState.ERROR
+        runState.set(EJobRunState.ERROR)
     }
   }
 
 
   override def run(): Unit = { // check if the state is not running
-    if (EJobRunState.RUNNING == runState) {
+    if (!tryStartRunning()) {
       LOGGER.warn(this.getClass.getName + " Job not started because it is still in run mode.")
-      scheduleJob()
+      reschedule()
       return
     }
     if (LOGGER.isDebugEnabled) {
       LOGGER.debug(this.getClass.getName + " job is going to run.")
     }
     try {
-      runState = EJobRunState.RUNNING
       runInternal()
-      runState = EJobRunState.STOPPED
+      runState.set(EJobRunState.STOPPED)
     } catch {
       case e: Exception =>
         LOGGER.error("An error happend in the internal implementation of the job: " + this.getClass.getName, e)
-        runState = EJobRunState.ERROR
+        runState.set(EJobRunState.ERROR)
         if (restartOnFail == false) {
-          runState = EJobRunState.KILLED
+          runState.set(EJobRunState.KILLED)
           if (LOGGER.isDebugEnabled) {
             LOGGER.debug("Will not restart the job: " + this.getClass.getName)
           }
           return
         }
     }
-    scheduleJob()
+    reschedule()
   }
 
   def setRestartOnFail(restartOnFail: Boolean): Unit = this.restartOnFail = restartOnFail
@@ -129,6 +165,7 @@ abstract class AbstractAkkaJob (val id:String,val actorSystem: ActorSystem,val e
     * Stops the current job by calling the {@link Cancellable}
     */
   def stopJob(): Unit = {
+    stopped = true
     if (cancellable == null) {
         return
     }
@@ -141,7 +178,14 @@ abstract class AbstractAkkaJob (val id:String,val actorSystem: ActorSystem,val e
 
   def getCronExpression: CronExpression = cronExpression
 
-  def getRunState: EJobRunState.State = runState
+  def getRunState: EJobRunState.State = runState.get
+
+  def isStopped: Boolean = stopped
+
+  /**
+    * 时间轮按这个类限制同时执行的数量
+    */
+  def jobClass: Class[_] = getClass
 
   def isRestartOnFail: Boolean = restartOnFail
 
@@ -149,7 +193,7 @@ abstract class AbstractAkkaJob (val id:String,val actorSystem: ActorSystem,val e
 
   def getActorSystem: ActorSystem = actorSystem
 
-  def setRunState(runState: EJobRunState.State): Unit = this.runState = runState
+  def setRunState(runState: EJobRunState.State): Unit = this.runState.set(runState)
 
   def getNextFireDate: DateTime = nextFireDate
 
@@ -14,8 +14,9 @@ class CronAkkaJob(id:String,
                   executor: ExecutionContext,
                   scheduler: TaskScheduler,
                   cronExp: String,
-                  msg:AnyRef)
-  extends AbstractAkkaJob(id,actorSystem, executor) {
+                  msg:AnyRef,
+                  timer: TimingWheelScheduler = null)
+  extends AbstractAkkaJob(id,actorSystem, executor, timer) {
 
   setCronExpression({
     if(StringUtils.isAllEmpty(cronExp)){
@@ -29,6 +30,8 @@ class CronAkkaJob(id:String,
 
   override def stopInternalJob(): Unit = scheduler.stopInternal(DateTime.now(),msg)
 
+  override def jobClass: Class[_] = scheduler.getClass
+
   @throws[JobException]
   def parseCronInCronExpression(annoCronExpression: String): CronExpression = {
     try {
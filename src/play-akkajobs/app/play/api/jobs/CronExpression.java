@@ -24,9 +24,12 @@ import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.joda.time.Chronology;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.joda.time.MutableDateTime;
+import org.joda.time.chrono.ISOChronology;
 
 /**
  * This provides cron support for java6 upwards and jodatime.
@@ -156,6 +159,18 @@ public class CronExpression {
     private final SimpleField monthField;
     private final DayOfMonthField dayOfMonthField;
 
+    //每个字段允许的取值,第n位表示取值n
+    private final long secondBits;
+    private final long minuteBits;
+    private final int hourBits;
+    private final int monthBits;
+    //日期和星期字段都不含L、W、#时,每月的可选日期可以直接用位运算得到
+    private final int dayOfMonthBits;
+    private final int dayOfWeekBits;
+    private final boolean simpleDays;
+    //最近一次计算的某年某月的可选日期
+    private volatile MonthDays lastMonthDays;
+
     public CronExpression(final String expr) {
         this(expr, true);
     }
@@ -181,6 +196,14 @@ public class CronExpression {
         this.dayOfMonthField = new DayOfMonthField(parts[ix++]);
         this.monthField = new SimpleField(CronFieldType.MONTH, parts[ix++]);
         this.dayOfWeekField = new DayOfWeekField(parts[ix++]);
+
+        this.secondBits = secondField.bits();
+        this.minuteBits = minuteField.bits();
+        this.hourBits = (int) hourField.bits();
+        this.monthBits = (int) monthField.bits();
+        this.simpleDays = dayOfMonthField.isSimple() && dayOfWeekField.isSimple();
+        this.dayOfMonthBits = simpleDays ? (int) dayOfMonthField.bits() : 0;
+        this.dayOfWeekBits = simpleDays ? (int) dayOfWeekField.bits() : 0;
     }
 
     public static CronExpression create(final String expr) {
@@ -205,7 +228,210 @@ public class CronExpression {
         return nextTimeAfter(afterTime, afterTime.plus(durationInMillis));
     }
 
+    /**
+     * 按字段直接跳到下一个允许的取值,不再逐秒逐分钟地尝试:
+     * 在本地时间上依次确定月、日、时、分、秒,某个字段没有可选值时向上一级进位。
+     * 本地时间和时刻之间按时区偏移分段换算,夏令时开始时不存在的本地时间被跳过,
+     * 夏令时结束时重复的本地时间各执行一次,与{@link #nextTimeAfterByStep(DateTime, DateTime)}一致
+     */
     public DateTime nextTimeAfter(DateTime afterTime, DateTime dateTimeBarrier) {
+        DateTimeZone zone = afterTime.getZone();
+        long instant = afterTime.getMillis();
+        instant = instant - Math.floorMod(instant, 1000L) + 1000L;
+        int startDate = packedDate(zone.getOffset(instant) + instant);
+        int barrierDate = packedDate(zone.getOffset(dateTimeBarrier.getMillis()) + dateTimeBarrier.getMillis());
+
+        while (true) {
+            int offset = zone.getOffset(instant);
+            long transition = zone.nextTransition(instant);
+            long local = nextLocalTime(instant + offset, startDate, barrierDate, dateTimeBarrier);
+            long next = local - offset;
+            if (transition == instant || next < transition) {
+                return new DateTime(next, afterTime.getChronology());
+            }
+            //本地时间落在时区偏移变化之后,从变化的时刻按新的偏移重新计算
+            instant = transition;
+        }
+    }
+
+    /**
+     * 在一个时区偏移不变的时间段内查找,参数和返回值都是本地时间的毫秒数(UTC表示)
+     */
+    private long nextLocalTime(long local, int startDate, int barrierDate, DateTime dateTimeBarrier) {
+        Chronology iso = ISOChronology.getInstanceUTC();
+        int year = iso.year().get(local);
+        int month = iso.monthOfYear().get(local);
+        int day = iso.dayOfMonth().get(local);
+        int hour = iso.hourOfDay().get(local);
+        int minute = iso.minuteOfHour().get(local);
+        int second = iso.secondOfMinute().get(local);
+        int barrierYear = barrierDate >> 9;
+
+        while (true) {
+            if (year > barrierYear) {
+                throw barrierReached(dateTimeBarrier);
+            }
+            int m = nextBit(monthBits, month);
+            if (m < 0) {
+                year++;
+                month = 1;
+                day = 1;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (m != month) {
+                month = m;
+                day = 1;
+                hour = minute = second = 0;
+            }
+            int d = nextBit(daysOf(year, month), day);
+            if (d < 0) {
+                month++;
+                day = 1;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (d != day) {
+                day = d;
+                hour = minute = second = 0;
+            }
+            int h = nextBit(hourBits, hour);
+            if (h < 0) {
+                day++;
+                hour = minute = second = 0;
+                continue;
+            }
+            if (h != hour) {
+                hour = h;
+                minute = second = 0;
+            }
+            int mi = nextBit(minuteBits, minute);
+            if (mi < 0) {
+                hour++;
+                minute = second = 0;
+                continue;
+            }
+            if (mi != minute) {
+                minute = mi;
+                second = 0;
+            }
+            int s = nextBit(secondBits, second);
+            if (s < 0) {
+                minute++;
+                second = 0;
+                continue;
+            }
+            int date = packedDate(year, month, day);
+            if (date != startDate && date > barrierDate) {
+                throw barrierReached(dateTimeBarrier);
+            }
+            return iso.getDateTimeMillis(year, month, day, hour, minute, s, 0);
+        }
+    }
+
+    /**
+     * 某年某月同时满足日期和星期字段的日期,第n位表示n号
+     */
+    private int daysOf(int year, int month) {
+        MonthDays cached = lastMonthDays;
+        if (cached != null && cached.year == year && cached.month == month) {
+            return cached.days;
+        }
+        int length = daysInMonth(year, month);
+        int days = 0;
+        if (simpleDays) {
+            int dayOfWeek = dayOfWeek(year, month, 1);
+            for (int d = 1; d <= length; d++) {
+                if ((dayOfMonthBits & (1 << d)) != 0 && (dayOfWeekBits & (1 << dayOfWeek)) != 0) {
+                    days |= 1 << d;
+                }
+                dayOfWeek = dayOfWeek == DAYS_PER_WEEK ? 1 : dayOfWeek + 1;
+            }
+        } else {
+            for (int d = 1; d <= length; d++) {
+                LocalDate date = new LocalDate(year, month, d, ISOChronology.getInstanceUTC());
+                if (dayOfMonthField.matches(date) && dayOfWeekField.matches(date)) {
+                    days |= 1 << d;
+                }
+            }
+        }
+        lastMonthDays = new MonthDays(year, month, days);
+        return days;
+    }
+
+    /**
+     * 大于等于from的第一个取值,没有时返回-1
+     */
+    private static int nextBit(long bits, int from) {
+        if (from >= 64) {
+            return -1;
+        }
+        long rest = bits & (-1L << from);
+        return rest == 0 ? -1 : Long.numberOfTrailingZeros(rest);
+    }
+
+    private static int nextBit(int bits, int from) {
+        if (from >= 32) {
+            return -1;
+        }
+        int rest = bits & (-1 << from);
+        return rest == 0 ? -1 : Integer.numberOfTrailingZeros(rest);
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * ISO星期,1为星期一,7为星期日
+     */
+    private static int dayOfWeek(int year, int month, int day) {
+        long days = ISOChronology.getInstanceUTC().getDateTimeMillis(year, month, day, 0) / 86400000L;
+        //1970-01-01是星期四
+        return (int) Math.floorMod(days + 3, 7L) + 1;
+    }
+
+    private static int packedDate(long local) {
+        Chronology iso = ISOChronology.getInstanceUTC();
+        return packedDate(iso.year().get(local), iso.monthOfYear().get(local), iso.dayOfMonth().get(local));
+    }
+
+    private static int packedDate(int year, int month, int day) {
+        return year << 9 | month << 5 | day;
+    }
+
+    private static IllegalArgumentException barrierReached(DateTime dateTimeBarrier) {
+        return new IllegalArgumentException("No next execution time could be determined that is before the limit of " + dateTimeBarrier);
+    }
+
+    private static final class MonthDays {
+        final int year, month, days;
+
+        MonthDays(int year, int month, int days) {
+            this.year = year;
+            this.month = month;
+            this.days = days;
+        }
+    }
+
+    /**
+     * 原来逐秒、逐分钟向后尝试的实现,保留用于对照测试
+     */
+    DateTime nextTimeAfterByStep(DateTime afterTime, DateTime dateTimeBarrier) {
         MutableDateTime nextTime = new MutableDateTime(afterTime);
         nextTime.setMillisOfSecond(0);
         nextTime.secondOfDay().add(1);
@@ -262,7 +488,7 @@ public class CronExpression {
 
     private static void checkIfDateTimeBarrierIsReached(MutableDateTime nextTime, DateTime dateTimeBarrier) {
         if (nextTime.isAfter(dateTimeBarrier)) {
-            throw new IllegalArgumentException("No next execution time could be determined that is before the limit of " + dateTimeBarrier);
+            throw barrierReached(dateTimeBarrier);
         }
     }
 
@@ -381,6 +607,34 @@ public class CronExpression {
             }
             return false;
         }
+
+        /**
+         * 不含L、W、#时字段只由取值范围决定
+         */
+        boolean isSimple() {
+            for (FieldPart part : parts) {
+                if (part.modifier != null && !"?".equals(part.modifier) || "#".equals(part.incrementModifier)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 字段允许的取值,第n位表示取值n,只用于{@link #isSimple()}的字段
+         */
+        long bits() {
+            long bits = 0;
+            for (int val = fieldType.from; val <= fieldType.to; val++) {
+                for (FieldPart part : parts) {
+                    if (matches(val, part)) {
+                        bits |= 1L << val;
+                        break;
+                    }
+                }
+            }
+            return bits;
+        }
     }
 
     static class SimpleField extends BasicField {
@@ -13,6 +13,7 @@ import play.utils.Reflect
 import scala.collection.JavaConverters._
 import scala.collection.mutable
 import scala.concurrent.{ExecutionContext, Future}
+import scala.concurrent.duration.FiniteDuration
 
 
 /**
@@ -23,6 +24,14 @@ import scala.concurrent.{ExecutionContext, Future}
   *       cronExpression = "0/10 * * * * ?"
   *     }
   *     disabled += "need disabled class name"
+  *     timer{                         //时间轮调度,见TimingWheelScheduler
+  *       enabled = false              //true时使用时间轮,第一次加载任务时才启动时间轮线程
+  *       tick = 10ms
+  *       wheelSize = 512
+  *       maxConcurrentPerClass = 0    //同一个任务类同时执行的数量,0不限制
+  *       misfire = "coalesce"         //coalesce|skip
+  *       misfireThreshold = 5s
+  *     }
   * }
   * @param actorSystem
   * @param lifecycle
@@ -43,19 +52,31 @@ class JobClassLoader @Inject()(val actorSystem: ActorSystem,
 
   private var executionContext:ExecutionContext = null
 
+  private var timer:TimingWheelScheduler = null
+
+  private var timerConf:Configuration = Configuration.empty
+
   private val jobLoaded = config.getOptional[Boolean]("play.jobs.loaded").getOrElse(true)
 
   lifecycle.addStopHook(() => Future.successful(onStop()))
 
   onStart(config)
 
-  def onStop():Unit = jobs.foreach(_._2.stopJob())
+  def onStop():Unit = {
+    jobs.foreach(_._2.stopJob())
+    this.synchronized {
+      if(timer != null) timer.shutdown()
+      timer = null
+    }
+  }
 
   def onStart(conf: Configuration): Unit = {
     executionContext = conf.getOptional[Configuration]("play.jobs.context").map(_ => actorSystem.dispatchers.lookup("play.jobs.context")).getOrElse(actorSystem.dispatcher);
 
     logger.info("AkkaJob scheduler using execution context:{}",executionContext)
 
+    timerConf = conf.getOptional[Configuration]("play.jobs.timer").getOrElse(Configuration.empty)
+
     if(conf.underlying.hasPath("play.jobs.enabled")) {
       val enabled = conf.underlying.getConfigList("play.jobs.enabled")
       val excludes = conf.getOptional[Seq[String]]("play.jobs.disabled").getOrElse(Seq.empty)
@@ -88,7 +109,7 @@ class JobClassLoader @Inject()(val actorSystem: ActorSystem,
     }
     val task = injector.instanceOf(clazz)
 
-    val job = new CronAkkaJob(id,actorSystem,executionContext,task,cronExpr,msg)
+    val job = new CronAkkaJob(id,actorSystem,executionContext,task,cronExpr,msg,jobTimer())
     jobs += id -> job
 
     if(enabled && jobLoaded) {
@@ -96,6 +117,22 @@ class JobClassLoader @Inject()(val actorSystem: ActorSystem,
     }
   }
 
+  /**
+    * 没有开启时间轮时返回null;第一次加载任务时才创建时间轮,没有任务的应用不启动时间轮线程
+    */
+  private def jobTimer():TimingWheelScheduler = this.synchronized {
+    if(timer == null && timerConf.getOptional[Boolean]("enabled").getOrElse(false)) {
+      timer = new TimingWheelScheduler(
+        math.max(timerConf.getOptional[FiniteDuration]("tick").map(_.toMillis).getOrElse(10L), 1L),
+        timerConf.getOptional[Int]("wheelSize").getOrElse(512),
+        executionContext,
+        timerConf.getOptional[Int]("maxConcurrentPerClass").getOrElse(0),
+        timerConf.getOptional[String]("misfire").map(MisfirePolicy.withName).getOrElse(MisfirePolicy.COALESCE),
+        timerConf.getOptional[FiniteDuration]("misfireThreshold").map(_.toMillis).getOrElse(5000L))
+    }
+    timer
+  }
+
   def runJob(id:String):Boolean = jobs.get(id).map(_.runNow()).map(_ => true).getOrElse(false)
 
   def stopJob(id:String):Boolean = jobs.get(id).map(_.stopJob()).map(_ => true).getOrElse(false)
@@ -0,0 +1,52 @@
+package play.api.jobs
+
+import java.util
+
+import io.prometheus.client.Collector.{MetricFamilySamples, Type}
+import io.prometheus.client.{Collector, CounterMetricFamily, GaugeMetricFamily}
+
+/**
+  * 导出时间轮的队列长度和调度延迟,调度延迟为任务到期到开始执行的时间
+  */
+class JobSchedulerCollector extends Collector {
+  override def collect(): util.List[MetricFamilySamples] = {
+    val scheduled = new GaugeMetricFamily("akka_jobs_scheduled", "Jobs waiting in the timing wheel.", util.Collections.emptyList[String]())
+    val waiting = new GaugeMetricFamily("akka_jobs_waiting", "Due jobs waiting for a free slot of their job class.", util.Collections.emptyList[String]())
+    val executing = new GaugeMetricFamily("akka_jobs_executing", "Jobs currently executing.", util.Collections.emptyList[String]())
+    val fired = new CounterMetricFamily("akka_jobs_fired_total", "Job executions started by the timing wheel.", util.Collections.emptyList[String]())
+    val skipped = new CounterMetricFamily("akka_jobs_skipped_total", "Job executions skipped as misfires.", util.Collections.emptyList[String]())
+
+    var scheduledValue, waitingValue, executingValue, firedValue, skippedValue, delaySum = 0L
+    val buckets = new Array[Long](TimingWheelScheduler.DelayBuckets.length + 1)
+    TimingWheelScheduler.all().foreach { timer =>
+      val stats = timer.stats
+      scheduledValue += stats.scheduled
+      waitingValue += stats.waiting
+      executingValue += stats.executing
+      firedValue += stats.fired
+      skippedValue += stats.skipped
+      delaySum += stats.delaySumMillis
+      for (i <- buckets.indices) buckets(i) += stats.delayBuckets(i)
+    }
+    scheduled.addMetric(util.Collections.emptyList[String](), scheduledValue)
+    waiting.addMetric(util.Collections.emptyList[String](), waitingValue)
+    executing.addMetric(util.Collections.emptyList[String](), executingValue)
+    fired.addMetric(util.Collections.emptyList[String](), firedValue)
+    skipped.addMetric(util.Collections.emptyList[String](), skippedValue)
+
+    val name = "akka_jobs_schedule_delay_seconds"
+    val le = util.Collections.singletonList("le")
+    val samples = new util.ArrayList[MetricFamilySamples.Sample]()
+    var cumulative = 0L
+    for (i <- buckets.indices) {
+      cumulative += buckets(i)
+      val bound = if (i < TimingWheelScheduler.DelayBuckets.length) Collector.doubleToGoString(TimingWheelScheduler.DelayBuckets(i) / 1e3) else "+Inf"
+      samples.add(new MetricFamilySamples.Sample(name + "_bucket", le, util.Collections.singletonList(bound), cumulative))
+    }
+    samples.add(new MetricFamilySamples.Sample(name + "_count", util.Collections.emptyList[String](), util.Collections.emptyList[String](), cumulative))
+    samples.add(new MetricFamilySamples.Sample(name + "_sum", util.Collections.emptyList[String](), util.Collections.emptyList[String](), delaySum / 1e3))
+    val delay = new MetricFamilySamples(name, Type.HISTOGRAM, "Delay between a job's fire time and the start of its execution.", samples)
+
+    util.Arrays.asList[MetricFamilySamples](scheduled, waiting, executing, fired, skipped, delay)
+  }
+}
@@ -0,0 +1,30 @@
+package play.api.jobs
+
+import javax.inject.{Inject, Singleton}
+
+import io.prometheus.client.CollectorRegistry
+import play.api.inject.{ApplicationLifecycle, Module}
+import play.api.{Configuration, Environment}
+
+import scala.concurrent.Future
+
+/**
+  * 把时间轮的指标注册到prometheus,需要应用自己引入play-prometheus(提供CollectorRegistry)并启用:
+  * {{{
+  * play.modules.enabled += "play.api.jobs.JobSchedulerMetricsModule"
+  * }}}
+  */
+class JobSchedulerMetricsModule extends Module {
+  override def bindings(environment: Environment, configuration: Configuration) = Seq(
+    bind[JobSchedulerMetrics].toSelf.eagerly()
+  )
+}
+
+@Singleton
+class JobSchedulerMetrics @Inject()(registry: CollectorRegistry, lifecycle: ApplicationLifecycle) {
+  private val collector = new JobSchedulerCollector
+
+  registry.register(collector)
+
+  lifecycle.addStopHook(() => Future.successful(registry.unregister(collector)))
+}
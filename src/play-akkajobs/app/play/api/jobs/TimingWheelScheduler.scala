@@ -0,0 +1,370 @@
+package play.api.jobs
+
+import java.util
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue, RejectedExecutionException}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong, AtomicLongArray}
+
+import akka.actor.Cancellable
+import org.slf4j.LoggerFactory
+
+import scala.concurrent.ExecutionContext
+
+/**
+  * 任务错过执行时间或者并发数已满时的处理方式
+  */
+object MisfirePolicy extends Enumeration {
+  type Policy = Value
+  /**
+    * 排队等待,错过的多次执行合并成一次
+    */
+  val COALESCE = Value("coalesce")
+  /**
+    * 跳过本次执行,直接计算下一次执行时间
+    */
+  val SKIP = Value("skip")
+}
+
+/**
+  * 专门给{@link AbstractAkkaJob}使用的分层时间轮:
+  * <ul>
+  *   <li>一个线程按tick推进时间轮,每个tick把到期的任务一次取出后提交到执行线程池</li>
+  *   <li>新任务和取消都不加锁,新任务先放进队列,由时间轮线程在下一个tick放入对应的槽</li>
+  *   <li>同一个任务类同时执行的数量不超过maxConcurrentPerClass,0表示不限制</li>
+  *   <li>延迟超过misfireThreshold或并发数已满时按{@link MisfirePolicy}跳过或合并</li>
+  * </ul>
+  * 任务只会在到期之后执行,最多晚一个tick.
+  * 时间轮按单调时钟(System.nanoTime)推进,调度时把墙上时间的deadline换算成单调时钟,
+  * 系统时间被调整后已经调度的任务按原来的间隔执行
+  *
+  * @param startWorker 为false时不启动时间轮线程,由测试调用{@link #advance}推进
+  */
+class TimingWheelScheduler private[jobs](tickMillis: Long,
+                                         wheelSize: Int,
+                                         executor: ExecutionContext,
+                                         maxConcurrentPerClass: Int,
+                                         misfirePolicy: MisfirePolicy.Policy,
+                                         misfireThreshold: Long,
+                                         startWorker: Boolean) {
+  import TimingWheelScheduler._
+
+  def this(tickMillis: Long, wheelSize: Int, executor: ExecutionContext, maxConcurrentPerClass: Int,
+           misfirePolicy: MisfirePolicy.Policy, misfireThreshold: Long) =
+    this(tickMillis, wheelSize, executor, maxConcurrentPerClass, misfirePolicy, misfireThreshold, true)
+
+  private val logger = LoggerFactory.getLogger(classOf[TimingWheelScheduler])
+
+  private val origin = System.nanoTime()
+  private val submitted = new ConcurrentLinkedQueue[Timeout]()
+  private val slots = new ConcurrentHashMap[Class[_], ClassSlots]()
+  private val due = new util.ArrayList[Timeout]()
+  private val wheel = new Wheel(tickMillis, wheelSize, monotonicMillis())
+  @volatile private var running = true
+
+  private val scheduled = new AtomicLong()
+  private val waiting = new AtomicLong()
+  private val executing = new AtomicLong()
+  private val fired = new AtomicLong()
+  private val skipped = new AtomicLong()
+  private val delaySum = new AtomicLong()
+  private val delayBuckets = new AtomicLongArray(DelayBuckets.length + 1)
+
+  private val worker = new Thread(new Runnable {
+    override def run(): Unit = loop()
+  }, "akka-jobs-timer")
+  worker.setDaemon(true)
+  if (startWorker) worker.start()
+
+  TimingWheelScheduler.instances.add(this)
+
+  /**
+    * 在deadline(毫秒时间戳)到期后执行job
+    */
+  def schedule(job: AbstractAkkaJob, deadline: Long): Cancellable = {
+    val timeout = new Timeout(job, deadline - wallMillis() + monotonicMillis())
+    scheduled.incrementAndGet()
+    submitted.add(timeout)
+    timeout
+  }
+
+  def shutdown(): Unit = {
+    running = false
+    worker.interrupt()
+    TimingWheelScheduler.instances.remove(this)
+  }
+
+  def stats: Stats = {
+    val buckets = new Array[Long](delayBuckets.length())
+    var i = 0
+    while (i < buckets.length) {
+      buckets(i) = delayBuckets.get(i)
+      i += 1
+    }
+    Stats(scheduled.get(), waiting.get(), executing.get(), fired.get(), skipped.get(), delaySum.get(), buckets)
+  }
+
+  /**
+    * 单调时钟,毫秒
+    */
+  protected def monotonicMillis(): Long = (System.nanoTime() - origin) / 1000000
+
+  protected def wallMillis(): Long = System.currentTimeMillis()
+
+  private def loop(): Unit = {
+    while (running) {
+      try {
+        advance(monotonicMillis())
+        val sleep = Math.min(wheel.currentTime + tickMillis - monotonicMillis(), tickMillis)
+        if (sleep > 0) Thread.sleep(sleep)
+      } catch {
+        case _: InterruptedException =>
+        case e: Throwable => logger.error("Error while advancing the job timing wheel", e)
+      }
+    }
+  }
+
+  /**
+    * 把新任务放入时间轮,推进到now(单调时钟)并执行到期的任务;只在时间轮线程中调用
+    */
+  private[jobs] def advance(now: Long): Unit = {
+    var timeout = submitted.poll()
+    while (timeout != null) {
+      if (!timeout.isCancelled && !wheel.add(timeout)) due.add(timeout)
+      timeout = submitted.poll()
+    }
+    wheel.advanceTo(now, t => if (!wheel.add(t)) due.add(t))
+    if (!due.isEmpty) {
+      try dispatch(now) finally due.clear()
+    }
+  }
+
+  /**
+    * 一个tick内到期的任务一起处理
+    */
+  private def dispatch(now: Long): Unit = {
+    var i = 0
+    while (i < due.size()) {
+      val timeout = due.get(i)
+      i += 1
+      if (timeout.expire()) {
+        scheduled.decrementAndGet()
+        val late = now - timeout.deadline > misfireThreshold
+        if (late && misfirePolicy == MisfirePolicy.SKIP) {
+          skip(timeout, "fired " + (now - timeout.deadline) + "ms late")
+        } else {
+          val classSlots = slotsOf(timeout.job.jobClass)
+          if (classSlots == null || classSlots.tryAcquire()) {
+            execute(timeout, classSlots)
+          } else if (misfirePolicy == MisfirePolicy.SKIP) {
+            skip(timeout, "too many concurrent executions")
+          } else {
+            waiting.incrementAndGet()
+            classSlots.waiting.add(timeout)
+            //等待期间可能已经有任务执行完
+            if (classSlots.tryAcquire()) runNextWaiting(classSlots)
+          }
+        }
+      }
+    }
+  }
+
+  private def slotsOf(clazz: Class[_]): ClassSlots = {
+    if (maxConcurrentPerClass <= 0) return null
+    val classSlots = slots.get(clazz)
+    if (classSlots != null) {
+      classSlots
+    } else {
+      val created = new ClassSlots(maxConcurrentPerClass)
+      val existing = slots.putIfAbsent(clazz, created)
+      if (existing != null) existing else created
+    }
+  }
+
+  private def skip(timeout: Timeout, reason: String): Unit = {
+    skipped.incrementAndGet()
+    if (logger.isDebugEnabled) {
+      logger.debug(timeout.job.getClass.getName + " job " + timeout.job.getId() + " skipped, " + reason)
+    }
+    timeout.job.reschedule()
+  }
+
+  private def execute(timeout: Timeout, classSlots: ClassSlots): Unit = {
+    executing.incrementAndGet()
+    try {
+      submit(timeout, classSlots)
+    } catch {
+      case e: RejectedExecutionException =>
+        //线程池拒绝时归还计数和并发数,重新计算下一次执行时间
+        executing.decrementAndGet()
+        if (classSlots != null) classSlots.release()
+        logger.error("Failed to submit " + timeout.job.getClass.getName + " job " + timeout.job.getId(), e)
+        timeout.job.reschedule()
+    }
+  }
+
+  private def submit(timeout: Timeout, classSlots: ClassSlots): Unit = {
+    executor.execute(new Runnable {
+      override def run(): Unit = {
+        val delay = Math.max(monotonicMillis() - timeout.deadline, 0)
+        fired.incrementAndGet()
+        delaySum.addAndGet(delay)
+        delayBuckets.incrementAndGet(bucketOf(delay))
+        try {
+          timeout.job.run()
+        } finally {
+          executing.decrementAndGet()
+          if (classSlots != null) {
+            classSlots.release()
+            if (!classSlots.waiting.isEmpty && classSlots.tryAcquire()) runNextWaiting(classSlots)
+          }
+        }
+      }
+    })
+  }
+
+  /**
+    * 已经占用了一个并发数,执行排队中的下一个任务
+    */
+  private def runNextWaiting(classSlots: ClassSlots): Unit = {
+    var timeout = classSlots.waiting.poll()
+    while (timeout != null && timeout.job.isStopped) {
+      waiting.decrementAndGet()
+      timeout = classSlots.waiting.poll()
+    }
+    if (timeout == null) {
+      classSlots.release()
+    } else {
+      waiting.decrementAndGet()
+      execute(timeout, classSlots)
+    }
+  }
+
+  /**
+    * @param deadline 单调时钟的到期时间
+    */
+  private class Timeout(val job: AbstractAkkaJob, val deadline: Long) extends Cancellable {
+    private val state = new AtomicInteger(Pending)
+
+    def expire(): Boolean = state.compareAndSet(Pending, Expired)
+
+    override def cancel(): Boolean = {
+      val cancelled = state.compareAndSet(Pending, Cancelled)
+      if (cancelled) scheduled.decrementAndGet()
+      cancelled
+    }
+
+    override def isCancelled: Boolean = state.get() == Cancelled
+  }
+
+  private class ClassSlots(limit: Int) {
+    private val permits = new AtomicInteger(limit)
+    val waiting = new ConcurrentLinkedQueue[Timeout]()
+
+    def tryAcquire(): Boolean = {
+      var n = permits.get()
+      while (n > 0) {
+        if (permits.compareAndSet(n, n - 1)) return true
+        n = permits.get()
+      }
+      false
+    }
+
+    def release(): Unit = permits.incrementAndGet()
+  }
+
+  /**
+    * 时间轮的一层,每个槽对应tick毫秒,超出范围的任务放到上一层tick * size的时间轮中;
+    * 只在时间轮线程中访问
+    */
+  private class Wheel(tick: Long, size: Int, startMillis: Long) {
+    private val interval = tick * size
+    private val buckets = Array.fill(size)(new util.ArrayList[Timeout]())
+    var currentTime: Long = startMillis - startMillis % tick
+    private var overflow: Wheel = null
+
+    /**
+      * 已经到期时返回false
+      */
+    def add(timeout: Timeout): Boolean = {
+      if (timeout.deadline < currentTime) {
+        false
+      } else if (timeout.deadline < currentTime + interval) {
+        buckets(((timeout.deadline / tick) % size).toInt).add(timeout)
+        true
+      } else {
+        if (overflow == null) overflow = new Wheel(interval, size, currentTime)
+        overflow.add(timeout)
+      }
+    }
+
+    /**
+      * 推进到time,已经过去的槽中的任务交给reinsert重新放入时间轮或者执行
+      */
+    def advanceTo(time: Long, reinsert: Timeout => Unit): Unit = {
+      while (currentTime + tick <= time) {
+        //先推进再取出,取出的任务都早于currentTime,重新放入时直接到期
+        val bucket = buckets(((currentTime / tick) % size).toInt)
+        currentTime += tick
+        drain(bucket, reinsert)
+        if (overflow != null) overflow.cascade(currentTime, reinsert)
+      }
+    }
+
+    /**
+      * 上层时间轮:槽的开始时间到了以后,槽里的任务都落在下层时间轮的范围内
+      */
+    private def cascade(time: Long, reinsert: Timeout => Unit): Unit = {
+      while (currentTime + tick <= time) {
+        currentTime += tick
+        drain(buckets(((currentTime / tick) % size).toInt), reinsert)
+        if (overflow != null) overflow.cascade(currentTime, reinsert)
+      }
+    }
+
+    private def drain(bucket: util.ArrayList[Timeout], reinsert: Timeout => Unit): Unit = {
+      if (!bucket.isEmpty) {
+        val timeouts = bucket.toArray(new Array[Timeout](bucket.size()))
+        bucket.clear()
+        timeouts.foreach(t => if (!t.isCancelled) reinsert(t))
+      }
+    }
+  }
+}
+
+object TimingWheelScheduler {
+  private val Pending = 0
+  private val Expired = 1
+  private val Cancelled = 2
+
+  /**
+    * 调度延迟直方图的上界,毫秒
+    */
+  val DelayBuckets: Array[Long] = Array(10L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L)
+
+  private val instances = new ConcurrentLinkedQueue[TimingWheelScheduler]()
+
+  /**
+    * 所有运行中的时间轮,用于导出指标
+    */
+  def all(): Seq[TimingWheelScheduler] = {
+    import scala.collection.JavaConverters._
+    instances.asScala.toVector
+  }
+
+  private def bucketOf(delay: Long): Int = {
+    var i = 0
+    while (i < DelayBuckets.length && delay > DelayBuckets(i)) i += 1
+    i
+  }
+
+  /**
+    * @param scheduled 时间轮中等待到期的任务数
+    * @param waiting 已经到期,等待并发数的任务数
+    * @param executing 正在执行的任务数
+    * @param fired 已经执行的次数
+    * @param skipped 跳过的次数
+    * @param delaySumMillis 到期到开始执行的延迟总和
+    * @param delayBuckets 延迟落在每个DelayBuckets区间的次数,最后一个为超出最大上界的次数
+    */
+  case class Stats(scheduled: Long, waiting: Long, executing: Long, fired: Long, skipped: Long,
+                   delaySumMillis: Long, delayBuckets: Array[Long])
+}
@@ -0,0 +1,111 @@
+package play.api.jobs;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CronExpressionTest {
+    private static final DateTimeZone BERLIN = DateTimeZone.forID("Europe/Berlin");
+
+    //每个字段的候选写法,随机组合成表达式
+    private static final String[][] FIELDS = {
+            {"*", "0", "30", "*/5", "0/15", "5-10", "1,7,59", "10-40/7"},
+            {"*", "0", "30", "*/5", "15", "0-10/3", "1,31,59"},
+            {"*", "0", "1", "2", "3", "*/6", "9-17", "22-23", "0,12"},
+            {"*", "?", "1", "15", "29", "30", "31", "L", "5L", "15W", "1W", "31W", "1-10", "*/10", "13,20"},
+            {"*", "2", "1-3", "*/4", "FEB", "11,12", "6"},
+            {"*", "?", "MON", "MON-FRI", "SAT,SUN", "5#3", "2#5", "5L", "1L", "0", "7", "3-5"}
+    };
+
+    private static final String[] ZONES = {"UTC", "Europe/Berlin", "America/New_York", "Australia/Sydney", "Asia/Shanghai"};
+
+    /**
+     * 随机的表达式、时区和起始时间(一半落在夏令时切换前后两小时内),
+     * 连续计算几次下一次执行时间,结果和异常都必须与原来逐步尝试的实现一致
+     */
+    @Test
+    public void testSameAsStepping() {
+        Random random = new Random(20180601L);
+        long from = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        long range = 15L * 365 * 24 * 3600 * 1000;
+        int checked = 0;
+        while (checked < 500) {
+            StringBuilder expr = new StringBuilder();
+            for (String[] field : FIELDS) {
+                expr.append(field[random.nextInt(field.length)]).append(' ');
+            }
+            CronExpression cron;
+            try {
+                cron = new CronExpression(expr.toString().trim());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            DateTimeZone zone = DateTimeZone.forID(ZONES[random.nextInt(ZONES.length)]);
+            DateTime time = new DateTime(from + (long) (random.nextDouble() * range), zone);
+            long transition = zone.nextTransition(time.getMillis());
+            if (random.nextBoolean() && transition != time.getMillis()) {
+                time = new DateTime(transition - random.nextInt(7200) * 1000L - random.nextInt(1000), zone);
+            }
+            for (int i = 0; i < 3 && time != null; i++, checked++) {
+                time = assertSameAsStepping(cron, time);
+            }
+        }
+    }
+
+    private static DateTime assertSameAsStepping(CronExpression cron, DateTime after) {
+        DateTime barrier = after.plusYears(4);
+        DateTime expected;
+        try {
+            expected = cron.nextTimeAfterByStep(after, barrier);
+        } catch (IllegalArgumentException e) {
+            try {
+                cron.nextTimeAfter(after, barrier);
+                fail(cron + " after " + after + " should reach the barrier");
+            } catch (IllegalArgumentException ignored) {
+            }
+            return null;
+        }
+        assertEquals(cron + " after " + after, expected, cron.nextTimeAfter(after, barrier));
+        return expected;
+    }
+
+    @Test
+    public void testLeapDay() {
+        CronExpression cron = new CronExpression("0 0 12 29 2 ?");
+        DateTime after = new DateTime(2017, 3, 1, 0, 0, DateTimeZone.UTC);
+        assertEquals(new DateTime(2020, 2, 29, 12, 0, DateTimeZone.UTC), cron.nextTimeAfter(after));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNeverMatches() {
+        new CronExpression("0 0 0 30 2 ?").nextTimeAfter(new DateTime(2017, 1, 1, 0, 0, DateTimeZone.UTC));
+    }
+
+    /**
+     * 夏令时开始(2021-03-28 02:00跳到03:00)当天不存在的02:30不执行
+     */
+    @Test
+    public void testSkipMissingLocalTime() {
+        CronExpression cron = new CronExpression("0 30 2 * * ?");
+        DateTime after = new DateTime(2021, 3, 27, 3, 0, BERLIN);
+        assertEquals(new DateTime(2021, 3, 29, 2, 30, BERLIN), cron.nextTimeAfter(after));
+    }
+
+    /**
+     * 夏令时结束(2021-10-31 03:00回到02:00)时重复的02:30执行两次
+     */
+    @Test
+    public void testRepeatedLocalTime() {
+        CronExpression cron = new CronExpression("0 30 2 * * ?");
+        DateTime first = cron.nextTimeAfter(new DateTime(2021, 10, 31, 0, 0, BERLIN));
+        DateTime second = cron.nextTimeAfter(first);
+        assertEquals(2, first.getHourOfDay());
+        assertEquals(2, second.getHourOfDay());
+        assertEquals(3600 * 1000L, second.getMillis() - first.getMillis());
+        assertEquals(new DateTime(2021, 11, 1, 2, 30, BERLIN), cron.nextTimeAfter(second));
+    }
+}
@@ -0,0 +1,220 @@
+package play.api.jobs;
+
+import akka.actor.Cancellable;
+import akka.dispatch.ExecutionContexts;
+import org.junit.After;
+import org.junit.Test;
+import scala.Enumeration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 不启动时间轮线程,用手动推进的时钟调用advance,每次推进1ms
+ */
+public class TimingWheelSchedulerTest {
+    private static final long TICK = 10;
+    private static final int WHEEL_SIZE = 8; //每层分别覆盖80ms、640ms、5120ms...
+
+    private final AtomicLong clock = new AtomicLong();
+    private TimingWheelScheduler timer;
+
+    private TimingWheelScheduler newTimer(Executor executor, int maxConcurrentPerClass, Enumeration.Value misfirePolicy) {
+        timer = new TimingWheelScheduler(TICK, WHEEL_SIZE, ExecutionContexts.fromExecutor(executor),
+                maxConcurrentPerClass, misfirePolicy, 5000L, false) {
+            @Override
+            public long monotonicMillis() {
+                return clock.get();
+            }
+
+            @Override
+            public long wallMillis() {
+                return clock.get();
+            }
+        };
+        return timer;
+    }
+
+    private void advanceTo(long until) {
+        for (long now = clock.get() + 1; now <= until; now++) {
+            clock.set(now);
+            timer.advance(now);
+        }
+    }
+
+    @After
+    public void shutdown() {
+        if (timer != null) timer.shutdown();
+    }
+
+    @Test
+    public void testNoEarlyFireAtMostOneTickLate() {
+        newTimer(Runnable::run, 0, MisfirePolicy.COALESCE());
+        Random random = new Random(20181017L);
+        List<TestJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            TestJob job = new TestJob("job-" + i, random.nextInt(20000));
+            timer.schedule(job, job.deadline);
+            jobs.add(job);
+        }
+        advanceTo(20000 + TICK);
+        for (TestJob job : jobs) {
+            assertEquals(job.id(), 1, job.fired.size());
+            long late = job.fired.get(0) - job.deadline;
+            assertTrue(job.id() + " fired " + late + "ms early", late >= 0);
+            assertTrue(job.id() + " fired " + late + "ms late", late <= TICK);
+        }
+        assertEquals(0, timer.stats().scheduled());
+        assertEquals(500, timer.stats().fired());
+    }
+
+    /**
+     * 超出前两层范围的任务从上层时间轮逐层降到最底层后执行
+     */
+    @Test
+    public void testCascadeFromOverflowWheel() {
+        newTimer(Runnable::run, 0, MisfirePolicy.COALESCE());
+        TestJob job = new TestJob("cascade", 3000);
+        timer.schedule(job, job.deadline);
+        advanceTo(job.deadline - 1);
+        assertTrue(job.fired.isEmpty());
+        advanceTo(job.deadline + TICK);
+        assertEquals(1, job.fired.size());
+        assertTrue(job.fired.get(0) >= job.deadline && job.fired.get(0) <= job.deadline + TICK);
+    }
+
+    @Test
+    public void testCancel() {
+        newTimer(Runnable::run, 0, MisfirePolicy.COALESCE());
+        //还在提交队列中时取消
+        TestJob queued = new TestJob("queued", 500);
+        assertTrue(timer.schedule(queued, queued.deadline).cancel());
+        //已经放入时间轮后取消
+        TestJob drained = new TestJob("drained", 500);
+        Cancellable cancellable = timer.schedule(drained, drained.deadline);
+        advanceTo(100);
+        assertTrue(cancellable.cancel());
+        assertTrue(cancellable.isCancelled());
+        advanceTo(1000);
+        assertTrue(queued.fired.isEmpty());
+        assertTrue(drained.fired.isEmpty());
+        assertEquals(0, timer.stats().scheduled());
+        //已经执行后不能再取消
+        TestJob fired = new TestJob("fired", 1100);
+        Cancellable firedCancellable = timer.schedule(fired, fired.deadline);
+        advanceTo(1200);
+        assertEquals(1, fired.fired.size());
+        assertFalse(firedCancellable.cancel());
+        assertFalse(firedCancellable.isCancelled());
+    }
+
+    /**
+     * 并发数已满时排队,前一个执行完后执行下一个
+     */
+    @Test
+    public void testPerClassLimitCoalesce() {
+        List<Runnable> tasks = new ArrayList<>();
+        newTimer(tasks::add, 1, MisfirePolicy.COALESCE());
+        TestJob first = new TestJob("first", 100);
+        TestJob second = new TestJob("second", 100);
+        timer.schedule(first, first.deadline);
+        timer.schedule(second, second.deadline);
+        advanceTo(120);
+        assertEquals(1, tasks.size());
+        assertEquals(1, timer.stats().executing());
+        assertEquals(1, timer.stats().waiting());
+
+        tasks.remove(0).run();
+        assertEquals(1, tasks.size());
+        assertEquals(0, timer.stats().waiting());
+        tasks.remove(0).run();
+        assertEquals(1, first.fired.size());
+        assertEquals(1, second.fired.size());
+        assertEquals(0, timer.stats().executing());
+        assertEquals(0, timer.stats().skipped());
+    }
+
+    /**
+     * 并发数已满或者延迟超过misfireThreshold时跳过,直接计算下一次执行时间
+     */
+    @Test
+    public void testPerClassLimitSkip() {
+        List<Runnable> tasks = new ArrayList<>();
+        newTimer(tasks::add, 1, MisfirePolicy.SKIP());
+        TestJob first = new TestJob("first", 100);
+        TestJob second = new TestJob("second", 100);
+        timer.schedule(first, first.deadline);
+        timer.schedule(second, second.deadline);
+        advanceTo(120);
+        assertEquals(1, tasks.size());
+        assertEquals(0, timer.stats().waiting());
+        assertEquals(1, timer.stats().skipped());
+        assertEquals(1, first.rescheduled + second.rescheduled);
+
+        tasks.remove(0).run();
+        assertTrue(tasks.isEmpty());
+        assertEquals(1, first.fired.size() + second.fired.size());
+
+        TestJob late = new TestJob("late", 200);
+        timer.schedule(late, late.deadline);
+        clock.set(6000);
+        timer.advance(6000);
+        assertTrue(tasks.isEmpty());
+        assertEquals(2, timer.stats().skipped());
+        assertEquals(1, late.rescheduled);
+    }
+
+    /**
+     * 线程池拒绝时归还并发数,重新调度
+     */
+    @Test
+    public void testRejectedExecution() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        newTimer(task -> {
+            if (reject.get()) throw new RejectedExecutionException("shutdown");
+            task.run();
+        }, 1, MisfirePolicy.COALESCE());
+        TestJob job = new TestJob("rejected", 100);
+        timer.schedule(job, job.deadline);
+        advanceTo(120);
+        assertTrue(job.fired.isEmpty());
+        assertEquals(1, job.rescheduled);
+        assertEquals(0, timer.stats().executing());
+
+        reject.set(false);
+        timer.schedule(job, 200);
+        advanceTo(220);
+        assertEquals(1, job.fired.size());
+    }
+
+    private class TestJob extends AbstractAkkaJob {
+        final long deadline;
+        final List<Long> fired = new ArrayList<>();
+        int rescheduled = 0;
+
+        TestJob(String id, long deadline) {
+            super(id, null, null, timer);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void runInternal() {
+            fired.add(clock.get());
+        }
+
+        /**
+         * 没有cron表达式,只记录次数
+         */
+        @Override
+        public void reschedule() {
+            rescheduled++;
+        }
+    }
+}
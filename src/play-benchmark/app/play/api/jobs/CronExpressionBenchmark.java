@@ -0,0 +1,51 @@
+package play.api.jobs;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CronExpression}计算下一次执行时间的开销:
+ * <ul>
+ *     <li>step: 原来的实现,逐秒、逐分钟、逐天向后尝试</li>
+ *     <li>jump: 按字段的取值位图直接跳到下一个允许的取值</li>
+ * </ul>
+ * nextTimeAfterByStep不是public的,所以放在play.api.jobs包下
+ * <pre>
+ * sbt "PlayBenchmark/jmh:run -prof gc .*CronExpressionBenchmark.*"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CronExpressionBenchmark {
+
+    @Param({"0 * * * * ?", "0 30 9 * * MON-FRI", "0 0 2 L * ?", "0 0 9 ? * 5#3", "0 0 12 29 2 ?"})
+    public String expression;
+
+    private CronExpression cron;
+    private DateTime after;
+    private DateTime barrier;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cron = new CronExpression(expression);
+        after = new DateTime(2018, 3, 1, 10, 15, 30, DateTimeZone.forID("Asia/Shanghai"));
+        barrier = after.plusYears(4);
+    }
+
+    @Benchmark
+    public DateTime step() {
+        return cron.nextTimeAfterByStep(after, barrier);
+    }
+
+    @Benchmark
+    public DateTime jump() {
+        return cron.nextTimeAfter(after, barrier);
+    }
+}
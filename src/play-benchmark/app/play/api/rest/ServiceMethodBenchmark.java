@@ -0,0 +1,91 @@
+package play.api.rest;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.openjdk.jmh.annotations.*;
+import play.api.rest.http.GET;
+import play.api.rest.http.Headers;
+import play.api.rest.http.Path;
+import play.api.rest.http.Query;
+import play.libs.concurrent.Promise;
+import play.libs.transport.http.PromiseHttpClient;
+import play.libs.transport.http.client.HttpClientFactory;
+import play.libs.transport.http.client.IOType;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Rest#create}代理每次调用生成请求的开销:
+ * <ul>
+ *     <li>legacy: 原来的实现,每次String.replace替换路径参数,URI.create后再resolve baseUrl</li>
+ *     <li>template: 使用{@link RequestTemplate},只把参数值填入预编译的片段</li>
+ *     <li>toCall: 通过ServiceMethod和参数处理器的完整路径</li>
+ * </ul>
+ * ServiceMethod不是public的,所以放在play.api.rest包下
+ * <pre>
+ * sbt "PlayBenchmark/jmh:run -prof gc .*ServiceMethodBenchmark.*"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ServiceMethodBenchmark {
+    private static final String BASE_URL = "http://10.0.0.1:8080/gateway/";
+    private static final String RELATIVE_URL = "v1/merchants/{merchantId}/orders/{orderId}";
+
+    interface GatewayApi {
+        @GET(RELATIVE_URL)
+        @Headers({"Accept: application/json", "X-Gateway: partner"})
+        Promise<String> order(@Path("merchantId") String merchantId, @Path("orderId") long orderId,
+                              @Query("fields") String fields);
+    }
+
+    private PromiseHttpClient httpClient;
+    private ServiceMethod<?, ?> serviceMethod;
+    private RequestTemplate template;
+    private Map<String, String> headers;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchMethodException {
+        httpClient = HttpClientFactory.createHttpClient(IOType.ASYNC_NIO, HttpClientFactory.getConfiguration());
+        Rest rest = new Rest.Builder().baseUrl(BASE_URL).callFactory(httpClient).build();
+        serviceMethod = rest.loadServiceMethod(GatewayApi.class.getMethod("order", String.class, long.class, String.class));
+        headers = new LinkedHashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("X-Gateway", "partner");
+        template = new RequestTemplate("GET", BASE_URL, RELATIVE_URL, null, headers, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        httpClient.close();
+    }
+
+    @Benchmark
+    public HttpUriRequest legacy() {
+        ReqBuilder builder = new ReqBuilder("GET", BASE_URL, RELATIVE_URL, null, headers, false);
+        builder.addPathParam("merchantId", "m-10086");
+        builder.addPathParam("orderId", "20181017000123");
+        builder.addQueryParam("fields", "status,amount");
+        return builder.build();
+    }
+
+    @Benchmark
+    public HttpUriRequest template() {
+        ReqBuilder builder = new ReqBuilder(template);
+        builder.addPathParam("merchantId", "m-10086");
+        builder.addPathParam("orderId", "20181017000123");
+        builder.addQueryParam("fields", "status,amount");
+        return builder.build();
+    }
+
+    @Benchmark
+    public HttpUriRequest toCall() throws IOException {
+        return serviceMethod.toCall("m-10086", 20181017000123L, "status,amount");
+    }
+}
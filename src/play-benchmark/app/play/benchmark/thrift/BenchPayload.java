@@ -0,0 +1,223 @@
+package play.benchmark.thrift;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TBaseHelper;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 压测用的Thrift结构体,手写实现,等价于:
+ * <pre>
+ * struct BenchPayload {
+ *   1: i64 id,
+ *   2: string name,
+ *   3: binary data
+ * }
+ * </pre>
+ * 只实现标准协议(TBinaryProtocol/TCompactProtocol)的读写,避免压测模块依赖Thrift编译器
+ */
+public class BenchPayload implements TBase<BenchPayload, BenchPayload._Fields>, java.io.Serializable, Cloneable {
+    private static final TStruct STRUCT_DESC = new TStruct("BenchPayload");
+    private static final TField ID_FIELD_DESC = new TField("id", TType.I64, (short) 1);
+    private static final TField NAME_FIELD_DESC = new TField("name", TType.STRING, (short) 2);
+    private static final TField DATA_FIELD_DESC = new TField("data", TType.STRING, (short) 3);
+
+    public long id;
+    public String name;
+    public ByteBuffer data;
+    private boolean idIsSet;
+
+    public enum _Fields implements TFieldIdEnum {
+        ID((short) 1, "id"),
+        NAME((short) 2, "name"),
+        DATA((short) 3, "data");
+
+        private final short thriftId;
+        private final String fieldName;
+
+        _Fields(short thriftId, String fieldName) {
+            this.thriftId = thriftId;
+            this.fieldName = fieldName;
+        }
+
+        public static _Fields findByThriftId(int fieldId) {
+            switch (fieldId) {
+                case 1: return ID;
+                case 2: return NAME;
+                case 3: return DATA;
+                default: return null;
+            }
+        }
+
+        @Override
+        public short getThriftFieldId() {
+            return thriftId;
+        }
+
+        @Override
+        public String getFieldName() {
+            return fieldName;
+        }
+    }
+
+    public BenchPayload() {
+    }
+
+    public BenchPayload(long id, String name, byte[] data) {
+        setId(id);
+        this.name = name;
+        this.data = data == null ? null : ByteBuffer.wrap(data);
+    }
+
+    public BenchPayload(BenchPayload other) {
+        this.id = other.id;
+        this.idIsSet = other.idIsSet;
+        this.name = other.name;
+        this.data = other.data == null ? null : TBaseHelper.copyBinary(other.data);
+    }
+
+    public BenchPayload setId(long id) {
+        this.id = id;
+        this.idIsSet = true;
+        return this;
+    }
+
+    @Override
+    public BenchPayload deepCopy() {
+        return new BenchPayload(this);
+    }
+
+    @Override
+    public void clear() {
+        this.id = 0;
+        this.idIsSet = false;
+        this.name = null;
+        this.data = null;
+    }
+
+    @Override
+    public _Fields fieldForId(int fieldId) {
+        return _Fields.findByThriftId(fieldId);
+    }
+
+    @Override
+    public boolean isSet(_Fields field) {
+        switch (field) {
+            case ID: return idIsSet;
+            case NAME: return name != null;
+            case DATA: return data != null;
+        }
+        throw new IllegalStateException();
+    }
+
+    @Override
+    public Object getFieldValue(_Fields field) {
+        switch (field) {
+            case ID: return id;
+            case NAME: return name;
+            case DATA: return data;
+        }
+        throw new IllegalStateException();
+    }
+
+    @Override
+    public void setFieldValue(_Fields field, Object value) {
+        switch (field) {
+            case ID:
+                if (value == null) {
+                    idIsSet = false;
+                } else {
+                    setId((Long) value);
+                }
+                break;
+            case NAME:
+                name = (String) value;
+                break;
+            case DATA:
+                data = value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : (ByteBuffer) value;
+                break;
+        }
+    }
+
+    @Override
+    public void read(TProtocol iprot) throws TException {
+        TField field;
+        iprot.readStructBegin();
+        while (true) {
+            field = iprot.readFieldBegin();
+            if (field.type == TType.STOP) {
+                break;
+            }
+            switch (field.id) {
+                case 1:
+                    if (field.type == TType.I64) {
+                        setId(iprot.readI64());
+                    } else {
+                        TProtocolUtil.skip(iprot, field.type);
+                    }
+                    break;
+                case 2:
+                    if (field.type == TType.STRING) {
+                        name = iprot.readString();
+                    } else {
+                        TProtocolUtil.skip(iprot, field.type);
+                    }
+                    break;
+                case 3:
+                    if (field.type == TType.STRING) {
+                        data = iprot.readBinary();
+                    } else {
+                        TProtocolUtil.skip(iprot, field.type);
+                    }
+                    break;
+                default:
+                    TProtocolUtil.skip(iprot, field.type);
+            }
+            iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+    }
+
+    @Override
+    public void write(TProtocol oprot) throws TException {
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (idIsSet) {
+            oprot.writeFieldBegin(ID_FIELD_DESC);
+            oprot.writeI64(id);
+            oprot.writeFieldEnd();
+        }
+        if (name != null) {
+            oprot.writeFieldBegin(NAME_FIELD_DESC);
+            oprot.writeString(name);
+            oprot.writeFieldEnd();
+        }
+        if (data != null) {
+            oprot.writeFieldBegin(DATA_FIELD_DESC);
+            oprot.writeBinary(data);
+            oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+    }
+
+    @Override
+    public int compareTo(BenchPayload other) {
+        int cmp = Long.compare(id, other.id);
+        if (cmp != 0) return cmp;
+        cmp = TBaseHelper.compareTo(name == null ? "" : name, other.name == null ? "" : other.name);
+        if (cmp != 0) return cmp;
+        return TBaseHelper.compareTo(data == null ? ByteBuffer.allocate(0) : data, other.data == null ? ByteBuffer.allocate(0) : other.data);
+    }
+
+    @Override
+    public String toString() {
+        return "BenchPayload(id:" + id + ", name:" + name + ", data:" + (data == null ? 0 : data.remaining()) + " bytes)";
+    }
+}
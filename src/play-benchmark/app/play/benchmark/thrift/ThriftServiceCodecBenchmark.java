@@ -0,0 +1,108 @@
+package play.benchmark.thrift;
+
+import akka.util.ByteString;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.openjdk.jmh.annotations.*;
+import play.api.rpc.thrift.TByteStringOutputTransport;
+import play.api.rpc.thrift.TByteStringTransport;
+import play.api.rpc.thrift.ThriftProtocolFactories;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ThriftService请求解码和响应编码的开销:
+ * <ul>
+ *     <li>decodeCopy: 先把请求内容拷贝成完整的数组,再用TMemoryInputTransport读取</li>
+ *     <li>decodeByteString: {@link TByteStringTransport}直接在ByteString的分段上读取</li>
+ *     <li>encodeMemoryBuffer: 原来的实现,TMemoryBuffer(128)逐步扩容,再拷贝成ByteString</li>
+ *     <li>encodePooled: {@link TByteStringOutputTransport}复用线程内的缓冲区</li>
+ * </ul>
+ * 请求内容按8K分段,与Play读取请求体得到的ByteString一致
+ * <pre>
+ * sbt "PlayBenchmark/jmh:run -prof gc .*ThriftServiceCodecBenchmark.*"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ThriftServiceCodecBenchmark {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    @Param({"TBINARY", "TCOMPACT"})
+    public String protocol;
+
+    @Param({"64", "65536"})
+    public int dataSize;
+
+    private TProtocolFactory factory;
+    private BenchPayload payload;
+    private ByteString body;
+
+    @Setup(Level.Trial)
+    public void setup() throws TException {
+        factory = "TBINARY".equals(protocol) ? ThriftProtocolFactories.BINARY() : ThriftProtocolFactories.COMPACT();
+        byte[] data = new byte[dataSize];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        payload = new BenchPayload(1L, "bench-payload", data);
+
+        byte[] encoded = encodeMemoryBuffer().toArray();
+        ByteString chunked = ByteString.empty();
+        for (int i = 0; i < encoded.length; i += CHUNK_SIZE) {
+            chunked = chunked.concat(ByteString.fromArray(encoded, i, Math.min(CHUNK_SIZE, encoded.length - i)));
+        }
+        body = chunked;
+    }
+
+    private BenchPayload decode(TTransport transport) throws TException {
+        TProtocol in = factory.getProtocol(transport);
+        in.readMessageBegin();
+        BenchPayload result = new BenchPayload();
+        result.read(in);
+        in.readMessageEnd();
+        return result;
+    }
+
+    private void encode(TTransport transport) throws TException {
+        TProtocol out = factory.getProtocol(transport);
+        out.writeMessageBegin(new TMessage("bench", TMessageType.REPLY, 1));
+        payload.write(out);
+        out.writeMessageEnd();
+    }
+
+    @Benchmark
+    public BenchPayload decodeCopy() throws TException {
+        byte[] bytes = body.toArray();
+        return decode(new TMemoryInputTransport(bytes, 0, bytes.length));
+    }
+
+    @Benchmark
+    public BenchPayload decodeByteString() throws TException {
+        return decode(new TByteStringTransport(body));
+    }
+
+    @Benchmark
+    public ByteString encodeMemoryBuffer() throws TException {
+        TMemoryBuffer transport = new TMemoryBuffer(128);
+        encode(transport);
+        return ByteString.fromArray(transport.getArray(), 0, transport.length());
+    }
+
+    @Benchmark
+    public ByteString encodePooled() throws TException {
+        TByteStringOutputTransport transport = TByteStringOutputTransport.apply();
+        encode(transport);
+        return transport.result();
+    }
+}
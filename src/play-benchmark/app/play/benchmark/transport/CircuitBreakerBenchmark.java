@@ -0,0 +1,82 @@
+package play.benchmark.transport;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.apache.http.HttpHost;
+import org.openjdk.jmh.annotations.*;
+import play.libs.transport.hystrix.CircuitBreakerRegistry;
+import play.libs.transport.hystrix.HystrixCircuitBreaker;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次请求查找并更新熔断器的开销:
+ * <ul>
+ *     <li>guavaCache: 原来的实现,拼接host:port后查LoadingCache,熔断器基于HystrixRollingNumber</li>
+ *     <li>registry: 按HttpHost查{@link CircuitBreakerRegistry},熔断器基于预分配的滑动窗口</li>
+ * </ul>
+ * <pre>
+ * sbt "PlayBenchmark/jmh:run -prof gc .*CircuitBreakerBenchmark.*"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Threads(8)
+@Fork(1)
+public class CircuitBreakerBenchmark {
+
+    @Param({"1", "16"})
+    public int hostCount;
+
+    private HttpHost[] hosts;
+    private LoadingCache<String, HystrixCircuitBreaker> cache;
+    private CircuitBreakerRegistry registry;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        hosts = new HttpHost[hostCount];
+        for (int i = 0; i < hostCount; i++) {
+            hosts[i] = new HttpHost("10.0.0." + (i + 1), 8080, "http");
+        }
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(1 << 10)
+                .build(new CacheLoader<String, HystrixCircuitBreaker>() {
+                    @Override
+                    public HystrixCircuitBreaker load(String host) throws Exception {
+                        return HystrixCircuitBreaker.Factory.create();
+                    }
+                });
+        registry = new CircuitBreakerRegistry();
+    }
+
+    private HttpHost nextHost() {
+        return hosts[hostCount == 1 ? 0 : ThreadLocalRandom.current().nextInt(hostCount)];
+    }
+
+    @Benchmark
+    public boolean guavaCache() throws ExecutionException {
+        HttpHost host = nextHost();
+        //与原AsyncPromiseHttpClient相同,每次请求生成一个新的HttpHost和tag
+        HttpHost target = new HttpHost(host.getHostName(), host.getPort(), host.getSchemeName());
+        HystrixCircuitBreaker breaker = cache.get(target.toHostString());
+        boolean allowed = breaker.allowRequest();
+        breaker.markSuccess();
+        return allowed;
+    }
+
+    @Benchmark
+    public boolean registry() {
+        HttpHost host = nextHost();
+        HttpHost target = new HttpHost(host.getHostName(), host.getPort(), host.getSchemeName());
+        HystrixCircuitBreaker breaker = registry.get(target);
+        boolean allowed = breaker.allowRequest();
+        breaker.markSuccess();
+        return allowed;
+    }
+}
@@ -0,0 +1,152 @@
+package play.benchmark.transport;
+
+import brave.Tracer;
+import brave.Tracing;
+import brave.sampler.Sampler;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.*;
+import play.Configuration;
+import play.benchmark.thrift.BenchPayload;
+import play.libs.concurrent.Promise;
+import play.libs.transport.http.HTTP;
+import play.libs.transport.http.HTTPInvokerContext;
+import play.libs.transport.http.HTTPUtils;
+import play.libs.transport.http.PromiseHttpClient;
+import play.libs.transport.http.client.HttpClientFactory;
+import play.libs.transport.http.client.IOType;
+import play.libs.transport.http.handler.BytesBodyHandler;
+import play.libs.transport.http.handler.HTTPHandler;
+import play.libs.transport.http.handler.RawBodyHandler;
+import play.libs.transport.http.handler.TextBodyHandler;
+import play.libs.transport.thrift.ThriftBodyHandler;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP出口调用链路的端到端压测:
+ * HTTP.makeHTTP -> HTTPInvoker(负载均衡/重试) -> PromiseHttpClient -> 本地桩服务 -> HTTPHandler
+ *
+ * 同时输出吞吐量(Throughput)和延迟分布(SampleTime,包含p0.50/p0.99),
+ * 每次请求的内存分配量需要带上GC profiler查看gc.alloc.rate.norm:
+ * <pre>
+ * sbt "PlayBenchmark/jmh:run -prof gc .*HTTPInvokerBenchmark.*"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class HTTPInvokerBenchmark {
+    private static final long TIMEOUT = 10 * 1000;
+
+    public enum ClientType {
+        ASYNC_NIO,   //AsyncPromiseHttpClient
+        ASYNC_NIO_BUFFERED, //AsyncPromiseHttpClient + BufferedResponseConsumer
+        ASYNC_H2,    //Http2PromiseHttpClient
+        SYNC_IO,     //SyncPromiseHttpClient
+        SYNC_HYSTRIX //HystrixHttpClient
+    }
+
+    public enum BodyType {
+        BYTES,
+        TEXT,
+        RAW,
+        THRIFT
+    }
+
+    @Param({"ASYNC_NIO", "ASYNC_NIO_BUFFERED", "ASYNC_H2", "SYNC_IO", "SYNC_HYSTRIX"})
+    public ClientType client;
+
+    @Param({"BYTES", "TEXT", "RAW", "THRIFT"})
+    public BodyType body;
+
+    @Param({"256", "65536"})
+    public int bodySize;
+
+    private LocalHttpStub stub;
+    private PromiseHttpClient httpClient;
+    private HTTPInvokerContext context;
+    private Tracer tracer;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        stub = new LocalHttpStub(bodySize);
+        tracer = Tracing.newBuilder()
+                .localServiceName("play-benchmark")
+                .sampler(Sampler.NEVER_SAMPLE)
+                .build()
+                .tracer();
+        httpClient = createHttpClient(client);
+        context = new HTTPInvokerContext(httpClient);
+        context.setRetryHandler(HTTP.DEFAULT_RETRY);
+        url = stub.url(path(body));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        httpClient.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public Object invoke() throws Exception {
+        HttpGet req = new HttpGet(url);
+        Promise<?> promise = HTTP.makeHTTP(tracer, req, createHandler(body), context);
+        Object result = promise.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        if (result instanceof HttpResponse) {
+            HttpResponse resp = (HttpResponse) result;
+            EntityUtils.consume(resp.getEntity());
+            HTTPUtils.closeQuietly(resp);
+        }
+        return result;
+    }
+
+    static PromiseHttpClient createHttpClient(ClientType type) {
+        Configuration config = HttpClientFactory.getConfiguration();
+        switch (type) {
+            case ASYNC_NIO:
+                return HttpClientFactory.createHttpClient(IOType.ASYNC_NIO, config);
+            case ASYNC_NIO_BUFFERED:
+                //开启ws.limit.enabled时返回的是LimitedHttpClient,通过配置打开而不是强转后设置
+                Configuration buffered = new Configuration(Collections.singletonMap("ws.nio.bufferedConsumer", true)).withFallback(config);
+                return HttpClientFactory.createHttpClient(IOType.ASYNC_NIO, buffered);
+            case ASYNC_H2:
+                return HttpClientFactory.createHttpClient(IOType.ASYNC_H2, config);
+            case SYNC_IO:
+                return HttpClientFactory.createHttpClient(IOType.SYNC_IO, config);
+            default:
+                return HttpClientFactory.syncHttpClientToHystrix(HttpClientFactory.createHttpClient(IOType.SYNC_IO, config), config);
+        }
+    }
+
+    static String path(BodyType type) {
+        switch (type) {
+            case TEXT:
+                return "/text";
+            case THRIFT:
+                return "/thrift";
+            default:
+                return "/bytes";
+        }
+    }
+
+    static HTTPHandler<?> createHandler(BodyType type) {
+        switch (type) {
+            case BYTES:
+                return new BytesBodyHandler();
+            case TEXT:
+                return new TextBodyHandler();
+            case RAW:
+                return new RawBodyHandler();
+            default:
+                return new ThriftBodyHandler<>(BenchPayload.class);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package play.benchmark.transport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import play.benchmark.thrift.BenchPayload;
+import play.libs.transport.thrift.Thrifts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 进程内的HTTP桩服务,基于JDK自带的HttpServer,只用于压测
+ * <ul>
+ *     <li>/bytes  返回固定大小的二进制内容</li>
+ *     <li>/text   返回固定大小的文本内容</li>
+ *     <li>/thrift 返回Thrift序列化后的{@link BenchPayload}</li>
+ * </ul>
+ * 响应内容在启动时生成,避免桩服务本身的开销干扰测试结果
+ */
+public class LocalHttpStub implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] bytesBody;
+    private final byte[] textBody;
+    private final byte[] thriftBody;
+
+    public LocalHttpStub(int bodySize) throws IOException {
+        this.bytesBody = new byte[bodySize];
+        Arrays.fill(bytesBody, (byte) 'b');
+        char[] text = new char[bodySize];
+        Arrays.fill(text, 't');
+        this.textBody = new String(text).getBytes(StandardCharsets.UTF_8);
+        this.thriftBody = Thrifts.toBytes(new BenchPayload(1L, "bench", bytesBody));
+
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/bytes", exchange -> reply(exchange, "application/octet-stream", bytesBody));
+        this.server.createContext("/text", exchange -> reply(exchange, "text/plain; charset=UTF-8", textBody));
+        this.server.createContext("/thrift", exchange -> reply(exchange, "application/x-thrift", thriftBody));
+        this.server.start();
+    }
+
+    private void reply(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] drain = new byte[1024];
+            while (in.read(drain) != -1) ;
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,104 @@
+package play.api.libs.changestream
+
+import java.io.{File, FileOutputStream, IOException}
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, StandardCopyOption, StandardOpenOption}
+
+import com.fasterxml.jackson.databind.JsonNode
+import org.slf4j.LoggerFactory
+import play.libs.Json
+
+/**
+  * binlog位置的持久化:
+  * <ul>
+  *   <li>位置更新先记在内存中,累计flushCount次或距离上次写入超过flushInterval毫秒才写文件,
+  *   没有新的更新时由{@link #flushIfDue}定时写出</li>
+  *   <li>先写临时文件并fsync,再rename覆盖原文件并fsync目录,崩溃时只会看到完整的旧位置或新位置</li>
+  *   <li>按(文件序号,偏移)比较,早于已记录或已写入的位置的更新直接忽略,包括跨文件的情况</li>
+  * </ul>
+  * 崩溃时最多丢失最近一次写入之后的更新,重启后从较早的位置重放,数据至少处理一次
+  */
+class BinlogCheckpointStore(val file: File, flushCount: Int, flushInterval: Long) {
+  protected val log = LoggerFactory.getLogger(getClass)
+
+  private val tmpFile = new File(file.getPath + ".tmp")
+  private var pending: BinlogPosition = null
+  /** 最近一次写入文件的位置,启动时是文件中的位置 **/
+  private var written: BinlogPosition = null
+  private var updates = 0
+  private var lastWriteAt = System.currentTimeMillis()
+
+  /**
+    * 记录新的位置,满足条件时写入文件
+    *
+    * @return 是否写入了文件
+    */
+  def update(p: BinlogPosition): Boolean = synchronized {
+    val last = if (pending != null) pending else written
+    if (last != null && p.version < last.version) {
+      return false //并行处理时较早计算出的位置后到,已经有更新的位置
+    }
+    pending = p
+    updates += 1
+    if (updates >= flushCount || System.currentTimeMillis() - lastWriteAt >= flushInterval) {
+      flush()
+    } else {
+      false
+    }
+  }
+
+  def flushIfDue(): Boolean = synchronized {
+    if (System.currentTimeMillis() - lastWriteAt >= flushInterval) flush() else false
+  }
+
+  /**
+    * 立即写入尚未保存的位置
+    */
+  def flush(): Boolean = synchronized {
+    if (pending == null) return false
+    write(pending)
+    written = pending
+    pending = null
+    updates = 0
+    lastWriteAt = System.currentTimeMillis()
+    true
+  }
+
+  def load(): Option[BinlogPosition] = synchronized {
+    if (!file.exists()) return None
+    val node = Json.parse(new String(Files.readAllBytes(file.toPath), StandardCharsets.UTF_8))
+    val p = BinlogPosition(node.path("filename").asText(""), node.path("position").asLong(0), text(node.get("gtidset")))
+    if (written == null) written = p
+    Some(p)
+  }
+
+  private def text(node: JsonNode): String = if (node == null || node.isNull) "" else node.asText("")
+
+  protected def write(p: BinlogPosition): Unit = {
+    val onode = Json.newObject()
+    onode.put("filename", p.filename)
+    onode.put("position", p.position)
+    onode.put("gtidset", p.gtidSet)
+    val out = new FileOutputStream(tmpFile)
+    try {
+      out.write(onode.toString.getBytes(StandardCharsets.UTF_8))
+      out.getFD.sync()
+    } finally {
+      out.close()
+    }
+    Files.move(tmpFile.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    syncDirectory()
+  }
+
+  private def syncDirectory(): Unit = {
+    val dir = file.getAbsoluteFile.getParentFile
+    if (dir == null) return
+    try {
+      val channel = FileChannel.open(dir.toPath, StandardOpenOption.READ)
+      try channel.force(true) finally channel.close()
+    } catch {
+      case e: IOException => log.debug("fsync directory " + dir + " failed", e) //部分平台不支持打开目录
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package play.api.libs.changestream
+
+import scala.util.Try
+
+/**
+  * binlog的读取位置,从该位置重新开始复制
+  *
+  * @param filename binlog文件名
+  * @param position 文件中的偏移
+  * @param gtidSet  开启GTID时已经执行过的GTID集合
+  */
+case class BinlogPosition(filename: String, position: Long, gtidSet: String = "") {
+
+  /**
+    * 按binlog先后顺序递增的版本号,文件名的序号在高位,文件中的偏移在低32位
+    */
+  def version: Long = {
+    val dot = filename.lastIndexOf('.')
+    val index = if (dot < 0) 0L else Try(filename.substring(dot + 1).toLong).getOrElse(0L)
+    (index << 32) | position
+  }
+}
@@ -1,22 +1,19 @@
 package play.api.libs.changestream
 
-import java.io.{FileOutputStream, IOException}
+import java.io.IOException
 import java.util.concurrent.TimeUnit
 import javax.inject.{Inject, Singleton}
 
 import akka.actor.ActorSystem
 import akka.util.Timeout
-import com.fasterxml.jackson.databind.node.ObjectNode
 import com.github.shyiko.mysql.binlog.BinaryLogClient
 import com.typesafe.config.Config
 import org.slf4j.LoggerFactory
 import play.api.db.Database
 import play.api.{Configuration, Environment}
-import play.libs.Json
 
 import scala.concurrent.ExecutionContext
 import scala.concurrent.duration._
-import scala.io.Source
 
 @Singleton
 class ChangeStream @Inject()(cf: Config, env:Environment,val system:ActorSystem, val ds: Database,implicit val ec: ExecutionContext){
@@ -38,8 +35,25 @@ class ChangeStream @Inject()(cf: Config, env:Environment,val system:ActorSystem,
   @volatile
   protected var isPaused = false
 
+  /** 已经读取完的事务的GTID集合,只在事务提交(XID/COMMIT)或回滚时更新 **/
+  @volatile
+  protected var committedGtidSet = ""
+
+  /** 每次从保存的位置重新连接时加1 **/
+  @volatile
+  var generation = 0L
+
   protected implicit val timeout = Timeout(10 seconds)
 
+  protected val checkpointInterval = conf.getOptional[FiniteDuration]("checkpoint.flush-interval").getOrElse(1 second)
+
+  /** binlog位置按次数和时间合并写入,写入时先写临时文件再rename **/
+  val checkpointStore = new BinlogCheckpointStore(
+    env.getFile(conf.getOptional[String]("checkpoint.file").getOrElse("slave.info")),
+    conf.getOptional[Int]("checkpoint.flush-count").getOrElse(100),
+    checkpointInterval.toMillis)
+  system.scheduler.schedule(checkpointInterval, checkpointInterval)(checkpointStore.flushIfDue())
+
   /** Every changestream instance must have a unique server-id.
     *
     * http://dev.mysql.com/doc/refman/5.7/en/replication-setup-slaves.html#replication-howto-slavebaseconfig
@@ -49,8 +63,10 @@ class ChangeStream @Inject()(cf: Config, env:Environment,val system:ActorSystem,
   /** If we lose the connection to the server retry every `changestream.mysql.keepalive` milliseconds. **/
   client.setKeepAliveInterval(config.getLong("mysql.keepalive"))
 
+  protected val eventListener = new ChangeStreamEventListener(config,ds,this,env)
+
   /** Register the objects that will receive `onEvent` calls and deserialize data **/
-  client.registerEventListener(new ChangeStreamEventListener(config,ds,this,env))
+  client.registerEventListener(eventListener)
   client.setEventDeserializer(ChangestreamEventDeserializer)
 
   /** Register the object that will receive BinaryLogClient connection lifecycle events **/
@@ -80,42 +96,49 @@ class ChangeStream @Inject()(cf: Config, env:Environment,val system:ActorSystem,
     log.info("Shutting down...")
     if(client.isConnected()) {
       isPaused = true
+      eventListener.stop() //先停止lane,binlog线程不会阻塞在lane的队列上
       client.disconnect()
+      checkpointStore.flush()
       true
     }
     else {
+      eventListener.stop()
       false
     }
   }
 
-  def saveBinlogPosition = {
-    val sf =  env.getFile("slave.info")
-    val onode = Json.newObject()
-    onode.put("filename",client.getBinlogFilename)
-    onode.put("position",client.getBinlogPosition)
-    onode.put("gtidset",client.getGtidSet)
-    val out = new FileOutputStream(sf)
-    out.write(onode.toString.getBytes)
-    out.close()
-  }
+  /**
+    * 当前读取到的位置,在onEvent中调用时是正在处理的事件的开始位置.
+    * GTID集合只包括已经读取完的事务,事务中间保存的位置重启后整个事务重新发送
+    */
+  def binlogPosition = BinlogPosition(client.getBinlogFilename, client.getBinlogPosition, committedGtidSet)
 
-  def loadBinlogPosition = {
-    env.getExistingFile("slave.info").map(f => {
-      val in = Source.fromFile(f,"UTF-8").mkString
-      val onode = Json.parse(in).asInstanceOf[ObjectNode]
-      (onode.get("filename").asText("") -> onode.get("position").asLong(0))
-    })
-  }
+  /** 事务结束时调用,client的GTID集合此时包括刚结束的事务 **/
+  def commitGtidSet(): Unit = committedGtidSet = Option(client.getGtidSet).getOrElse("")
+
+  /** 正在处理的事件的开始位置,不读取GTID集合 **/
+  def eventPosition = BinlogPosition(client.getBinlogFilename, client.getBinlogPosition)
+
+  def saveBinlogPosition: Unit = saveBinlogPosition(binlogPosition)
+
+  def saveBinlogPosition(p: BinlogPosition): Unit = checkpointStore.update(p)
+
+  def loadBinlogPosition: Option[BinlogPosition] = checkpointStore.load()
 
   protected def getConnected = {
     /** Finally, signal the BinaryLogClient to start processing events **/
     log.info(s"Starting changestream...")
     while(!isPaused && !client.isConnected) {
       try {
-        loadBinlogPosition.map(f => {
-          client.setBinlogFilename(f._1)
-          client.setBinlogPosition(f._2)
+        loadBinlogPosition.foreach(p => {
+          committedGtidSet = p.gtidSet
+          client.setBinlogFilename(p.filename)
+          client.setBinlogPosition(p.position)
+          if(!p.gtidSet.isEmpty) {
+            client.setGtidSet(p.gtidSet)
+          }
         })
+        generation += 1
         client.connect()
       }
       catch {
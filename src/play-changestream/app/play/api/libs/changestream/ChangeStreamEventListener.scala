@@ -16,35 +16,55 @@ import scala.util.Failure
 class ChangeStreamEventListener(val config: Config,val ds: Database,cs:ChangeStream,env:Environment) extends EventListener {
   protected val log = LoggerFactory.getLogger(getClass)
 
-  protected val systemDatabases = Seq("information_schema", "mysql", "performance_schema", "sys")
-  protected val whitelist: java.util.List[String] = new java.util.LinkedList[String]()
-  protected val blacklist: java.util.List[String] = new java.util.LinkedList[String]()
+  protected val systemDatabases = Set("information_schema", "mysql", "performance_schema", "sys")
+  @volatile
+  protected var whitelist: TableFilter = TableFilter("")
+  @volatile
+  protected var blacklist: TableFilter = TableFilter("")
 
   @volatile
   protected var emitterLoader:SyncActor = new StdoutActor()
 
   protected lazy val formatterActor = new MapFormatterActor(emitterLoader)
-  protected lazy val columnInfoActor = new ColumnInfoActor(formatterActor,ds)
+  protected lazy val columnInfoActor = new ColumnInfoActor(partitionedActor.getOrElse(formatterActor),ds)
   protected lazy val transactionActor = new TransactionActor(columnInfoActor)
   protected lazy val stateActor = new StateActor(cs)
 
   setConfig(config)
 
+  /** partition.lanes大于1时,格式化和emitter按表或主键分到多个lane上并行处理 **/
+  protected val partitionedActor: Option[PartitionedActor] = {
+    val lanes = if(config.hasPath("partition.lanes")) config.getInt("partition.lanes") else 1
+    if(lanes > 1) {
+      val byPrimaryKey = config.hasPath("partition.key") && config.getString("partition.key") == "primary-key"
+      val queueSize = if(config.hasPath("partition.queue-size")) config.getInt("partition.queue-size") else 1024
+      val actor = new PartitionedActor(formatterActor, cs, stateActor, lanes, byPrimaryKey, queueSize)
+      stateActor.setPartitioned(actor)
+      log.info(s"Using ${lanes} lanes partitioned by ${if(byPrimaryKey) "primary key" else "table"}")
+      Some(actor)
+    } else {
+      None
+    }
+  }
+
+  /** 停止并行处理的lane线程,断开复制时调用 **/
+  def stop(): Unit = partitionedActor.foreach(_.stop())
+
   /** Allows the configuration for the listener object to be set on startup.
     * The listener will look for whitelist, blacklist, and emitter settings.
     *
     * @param config
     */
   def setConfig(config: Config) = {
-    whitelist.clear()
-    blacklist.clear()
+    whitelist = TableFilter("")
+    blacklist = TableFilter("")
 
     if(config.hasPath("whitelist")) {
-      config.getString("whitelist").split(',').foreach(whitelist.add(_))
+      whitelist = TableFilter(config.getString("whitelist"))
       log.info(s"Using event whitelist: ${whitelist}")
     }
     else if(config.hasPath("blacklist")) {
-      config.getString("blacklist").split(',').foreach(blacklist.add(_))
+      blacklist = TableFilter(config.getString("blacklist"))
       log.info(s"Using event blacklist: ${blacklist}")
     }
 
@@ -81,9 +101,13 @@ class ChangeStreamEventListener(val config: Config,val ds: Database,cs:ChangeStr
 
     try{
       changeEvent match {
+        case Some(e@(CommitTransaction | RollbackTransaction)) =>
+          cs.commitGtidSet()
+          transactionActor.receive(e)
         case Some(e: TransactionEvent)  => transactionActor.receive(e)
-        case Some(e: MutationEvent)     => transactionActor.receive(MutationWithInfo(e))
+        case Some(e: MutationEvent)     => transactionActor.receive(MutationWithInfo(e, position = Some(cs.eventPosition)))
         case Some(e: AlterTableEvent)   => columnInfoActor.receive(e)
+        case Some(e: TableDdlEvent)     => columnInfoActor.receive(e)
         case None =>
           log.debug(s"Ignoring ${binaryLogEvent.getHeader[EventHeaderV4].getEventType} event.")
       }
@@ -155,83 +179,136 @@ class ChangeStreamEventListener(val config: Config,val ds: Database,cs:ChangeStr
   }
 
   /** Returns a ChangeEvent case class instance representing the change indicated by
-    * the given binlog QUERY event (either BEGIN, COMMIT, ROLLBACK, or ALTER...).
+    * the given binlog QUERY event (either BEGIN, COMMIT, ROLLBACK, ALTER, CREATE, DROP or RENAME...).
+    * Statements are recognised by their first keyword before any regex is applied,
+    * DDL on ignored tables is dropped so it never reaches the column info cache.
     *
     * @param queryData The QUERY event data
     * @return
     */
   protected def parseQueryEvent(queryData: QueryEventData): Option[ChangeEvent] = {
-    queryData.getSql match {
-      case sql if sql matches "(?i)^begin" =>
+    val sql = queryData.getSql
+    val start = skipSpaces(sql, 0)
+    keywordAt(sql, start) match {
+      case "begin" if isOnly(sql, start, "begin") =>
         Some(BeginTransaction)
 
-      case sql if sql matches "(?i)^commit" =>
+      case "commit" if isOnly(sql, start, "commit") =>
         Some(CommitTransaction)
 
-      case sql if sql matches "(?i)^rollback" =>
+      case "rollback" if isOnly(sql, start, "rollback") =>
         Some(RollbackTransaction)
 
-      case sql if sql matches "(?i)^alter.*" =>
-        /** Not(space, dot)+ OR backtick + Not(backtick, dot) + backtick OR "Not(", dot)" **/
-        /** Does not currently support spaces or backticks in table or db names **/
-        val dbOrTableName = "([^\\s\\.]+|`[^`\\.]+`|\"[^\"\\.]\")"
-        val identifierRegex = s"(?i)^alter\\s+(ignore\\s+)?table\\s+($dbOrTableName(\\.$dbOrTableName)?).*".r
-
-        var maybeIdentifier:Option[(String, String)] = None
-        for { p <- identifierRegex findAllIn sql } p match {
-          case identifierRegex(_, _, first, _, second) =>
-            maybeIdentifier = Some(second match {
-              case null => (queryData.getDatabase, unescapeIdentifier(first)) //scalastyle:ignore
-              case _ => (unescapeIdentifier(first), unescapeIdentifier(second))
-            })
-        }
-
-        maybeIdentifier.map({
-          case (db, table) => Some(AlterTableEvent(db.toLowerCase, table.toLowerCase, sql))
-        }).getOrElse(
-          None
-        )
-      case sql =>
+      case "alter" =>
+        alterTableRegex.findFirstMatchIn(sql).flatMap(m => {
+          val (db, table) = tableIdentifier(queryData, m.group(1))
+          if(shouldIgnore(db, table)) {
+            None
+          } else {
+            renameToRegex.findFirstMatchIn(m.group(2)) match {
+              case Some(rename) =>
+                Some(TableDdlEvent(Seq((db, table), tableIdentifier(queryData, rename.group(1))), sql))
+              case None =>
+                Some(AlterTableEvent(db, table, sql))
+            }
+          }
+        })
+
+      case "create" =>
+        createTableRegex.findFirstMatchIn(sql).flatMap(m => ddlEvent(Seq(tableIdentifier(queryData, m.group(1))), sql))
+
+      case "drop" =>
+        dropTableRegex.findFirstMatchIn(stripComments(sql)).flatMap(m =>
+          ddlEvent(splitIdentifiers(m.group(1)).map(tableIdentifier(queryData, _)), sql))
+
+      case "rename" =>
+        renameTableRegex.findFirstMatchIn(stripComments(sql)).flatMap(m =>
+          ddlEvent(splitIdentifiers(m.group(1)).flatMap(pair => renamePairRegex.findFirstMatchIn(pair).toSeq.flatMap(p =>
+            Seq(tableIdentifier(queryData, p.group(1)), tableIdentifier(queryData, p.group(2))))), sql))
+
+      case _ =>
         None
     }
   }
 
-  protected def unescapeIdentifier(escaped: String) = escaped.charAt(0) match {
-    case '`' => escaped.substring(1, escaped.length - 1).replace("``", "`")
-    case '"' => escaped.substring(1, escaped.length - 1).replace("\"\"", "\"")
-    case _ => escaped
+  /** Not(space, dot, comma)+ OR backtick + Not(backtick, dot) + backtick OR "Not(", dot)" **/
+  /** Does not currently support spaces or backticks in table or db names **/
+  protected val dbOrTableName = "(?:[^\\s\\.,`\"]+|`[^`\\.]+`|\"[^\"\\.]+\")"
+  protected val qualifiedName = s"(${dbOrTableName}(?:\\.${dbOrTableName})?)"
+  protected val alterTableRegex = s"(?is)^\\s*alter\\s+(?:online\\s+|offline\\s+)?(?:ignore\\s+)?table\\s+${qualifiedName}(.*)".r
+  protected val renameToRegex = s"(?is)\\brename\\s+(?:to\\s+|as\\s+)?${qualifiedName}".r
+  protected val createTableRegex = s"(?is)^\\s*create\\s+(?:temporary\\s+)?table\\s+(?:if\\s+not\\s+exists\\s+)?${qualifiedName}".r
+  protected val dropTableRegex = "(?is)^\\s*drop\\s+(?:temporary\\s+)?tables?\\s+(?:if\\s+exists\\s+)?(.+?)(?:\\s+(?:restrict|cascade))?\\s*;?\\s*$".r
+  protected val renameTableRegex = "(?is)^\\s*rename\\s+tables?\\s+(.+?)\\s*;?\\s*$".r
+  protected val renamePairRegex = s"(?is)^\\s*${qualifiedName}\\s+to\\s+${qualifiedName}\\s*$$".r
+  protected val commentRegex = "(?s)/\\*.*?\\*/".r
+
+  protected def ddlEvent(tables: Seq[(String, String)], sql: String): Option[ChangeEvent] = {
+    val affected = tables.filterNot({ case (db, table) => shouldIgnore(db, table) })
+    if(affected.isEmpty) None else Some(TableDdlEvent(affected, sql))
   }
 
-  private def shouldIgnore(info: MutationEvent) = {
-    if(systemDatabases.contains(info.database)) {
-      true
-    }
-    else if(!whitelist.isEmpty) {
-      tableMissingFromWhitelist(info.database, info.tableName)
+  protected def tableIdentifier(queryData: QueryEventData, name: String): (String, String) = {
+    splitQualified(name.trim) match {
+      case (None, table) => (queryData.getDatabase.toLowerCase, unescapeIdentifier(table).toLowerCase)
+      case (Some(db), table) => (unescapeIdentifier(db).toLowerCase, unescapeIdentifier(table).toLowerCase)
     }
-    else if(!blacklist.isEmpty) {
-      tableInBlacklist(info.database, info.tableName)
-    }
-    else {
-      false
+  }
+
+  /** 按不在引号中的点拆分库名和表名 **/
+  protected def splitQualified(name: String): (Option[String], String) = {
+    var quote: Char = 0
+    for(i <- 0 until name.length) {
+      val c = name.charAt(i)
+      if(quote != 0) {
+        if(c == quote) quote = 0
+      } else if(c == '`' || c == '"') {
+        quote = c
+      } else if(c == '.') {
+        return (Some(name.substring(0, i)), name.substring(i + 1))
+      }
     }
+    (None, name)
   }
 
-  private def tableInBlacklist(database: String, table: String) = {
-    tableInList(database, table, blacklist)
+  protected def splitIdentifiers(list: String): Seq[String] = list.split(',').map(_.trim).filter(_.nonEmpty)
+
+  protected def stripComments(sql: String): String = if(sql.indexOf("/*") < 0) sql else commentRegex.replaceAllIn(sql, " ")
+
+  protected def skipSpaces(sql: String, from: Int): Int = {
+    var i = from
+    while(i < sql.length && Character.isWhitespace(sql.charAt(i))) i += 1
+    i
   }
 
-  private def tableMissingFromWhitelist(database: String, table: String) = {
-    !tableInList(database, table, whitelist)
+  /** 语句的第一个关键字,小写 **/
+  protected def keywordAt(sql: String, start: Int): String = {
+    var end = start
+    while(end < sql.length && Character.isLetter(sql.charAt(end))) end += 1
+    if(end - start > 8) "" else sql.substring(start, end).toLowerCase
   }
 
-  private def tableInList(database: String, table: String, list: java.util.List[String]) = {
-    if(list.isEmpty) {
-      false
-    }
-    else if(list.contains(s"${database}.*") || list.contains(s"${database}.${table}")) {
+  /** 语句只有这一个关键字,与原来的 matches "(?i)^begin" 等价 **/
+  protected def isOnly(sql: String, start: Int, keyword: String): Boolean = start == 0 && sql.length == keyword.length
+
+  protected def unescapeIdentifier(escaped: String) = escaped.charAt(0) match {
+    case '`' => escaped.substring(1, escaped.length - 1).replace("``", "`")
+    case '"' => escaped.substring(1, escaped.length - 1).replace("\"\"", "\"")
+    case _ => escaped
+  }
+
+  private def shouldIgnore(info: MutationEvent): Boolean = shouldIgnore(info.database, info.tableName)
+
+  private def shouldIgnore(database: String, table: String): Boolean = {
+    if(systemDatabases.contains(database)) {
       true
     }
+    else if(!whitelist.isEmpty) {
+      !whitelist.matches(database, table)
+    }
+    else if(!blacklist.isEmpty) {
+      blacklist.matches(database, table)
+    }
     else {
       false
     }
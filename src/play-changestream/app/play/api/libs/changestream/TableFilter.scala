@@ -0,0 +1,75 @@
+package play.api.libs.changestream
+
+import java.util.concurrent.ConcurrentHashMap
+
+import scala.collection.mutable
+
+/**
+  * 启动时编译好的库表过滤规则,规则形如 db.table、db.*、db.prefix*,多个规则用逗号分隔:
+  * 不带*的规则放在HashSet中,以*结尾的规则放在前缀树中,每个库表的判断结果缓存起来
+  */
+class TableFilter(patterns: Seq[String]) {
+  private val exact = mutable.HashSet.empty[String]
+  private val prefixes = new TableFilter.Node
+  private val decisions = new ConcurrentHashMap[String, ConcurrentHashMap[String, java.lang.Boolean]]()
+
+  patterns.map(_.trim).filter(_.nonEmpty).foreach { pattern =>
+    val star = pattern.indexOf('*')
+    if (star < 0) exact += pattern else prefixes.add(pattern.substring(0, star))
+  }
+
+  val isEmpty: Boolean = exact.isEmpty && prefixes.isEmpty
+
+  def matches(database: String, table: String): Boolean = {
+    var tables = decisions.get(database)
+    if (tables == null) {
+      tables = new ConcurrentHashMap[String, java.lang.Boolean]()
+      val existing = decisions.putIfAbsent(database, tables)
+      if (existing != null) tables = existing
+    }
+    val cached = tables.get(table)
+    if (cached != null) {
+      cached.booleanValue()
+    } else {
+      val matched = exact.contains(database + "." + table) || prefixes.matches(database, table)
+      tables.put(table, matched)
+      matched
+    }
+  }
+
+  override def toString: String = patterns.mkString(",")
+}
+
+object TableFilter {
+  def apply(patterns: String): TableFilter = new TableFilter(patterns.split(','))
+
+  /**
+    * 前缀树,按字符匹配 database + "." + table,不需要拼接字符串
+    */
+  private class Node {
+    private val children = mutable.HashMap.empty[Char, Node]
+    private var terminal = false
+
+    def isEmpty: Boolean = !terminal && children.isEmpty
+
+    def add(prefix: String): Unit = {
+      var node = this
+      prefix.foreach(c => node = node.children.getOrElseUpdate(c, new Node))
+      node.terminal = true
+    }
+
+    def matches(database: String, table: String): Boolean = {
+      var node = this
+      var i = 0
+      val length = database.length + 1 + table.length
+      while (node != null) {
+        if (node.terminal) return true
+        if (i == length) return false
+        val c = if (i < database.length) database.charAt(i) else if (i == database.length) '.' else table.charAt(i - database.length - 1)
+        node = node.children.getOrElse(c, null)
+        i += 1
+      }
+      false
+    }
+  }
+}
@@ -30,14 +30,17 @@ class ColumnInfoActor (nextHop:SyncActor,pool: Database) extends SyncActor {
     _schemaSequence += 1
     _schemaSequence
   }
+  //只在binlog线程中访问,不需要同步
   protected val columnsInfoCache = mutable.HashMap.empty[(String, String), ColumnsInfo]
   protected val mutationBuffer = mutable.HashMap.empty[(String, String), List[PendingMutation]]
+  //binlog中的tableId在表结构变化前保持不变,先按tableId查找,避免每个事件都生成小写的库表名作为key
+  protected val tableIdCache = mutable.LongMap.empty[ColumnsInfo]
 
   def receive = {
     case event: MutationWithInfo =>
-      log.debug(s"Received mutation event on table ${event.mutation.cacheKey}")
+      log.debug(s"Received mutation event on table ${event.mutation.tableId}")
 
-      columnsInfoCache.get(event.mutation.cacheKey) match {
+      cachedColumnsInfo(event.mutation) match {
         case info: Some[ColumnsInfo] =>
           log.debug(s"Found column info for event on table ${event.mutation.cacheKey}")
           nextHop.receive(event.copy(columns = info))
@@ -70,8 +73,40 @@ class ColumnInfoActor (nextHop:SyncActor,pool: Database) extends SyncActor {
     case alter: AlterTableEvent =>
       log.debug(s"Refreshing the cache due to alter table (${alter.cacheKey}): ${alter.sql}")
 
-      columnsInfoCache.remove(alter.cacheKey)
-      requestColumnInfo(getNextSchemaSequence, alter.database, alter.tableName)
+      //只有已经缓存或正在等待的表才需要立即重新查询,其它表在第一次变更时再查询
+      val tracked = columnsInfoCache.contains(alter.cacheKey) || hasPending(alter.cacheKey)
+      invalidate(alter.cacheKey)
+      if(tracked) {
+        requestColumnInfo(getNextSchemaSequence, alter.database, alter.tableName)
+      }
+
+    case ddl: TableDdlEvent =>
+      log.debug(s"Invalidating the cache due to ddl (${ddl.tables}): ${ddl.sql}")
+
+      ddl.tables.foreach({ case key@(database, tableName) =>
+        invalidate(key)
+        if(hasPending(key)) {
+          requestColumnInfo(getNextSchemaSequence, database, tableName)
+        }
+      })
+  }
+
+  protected def cachedColumnsInfo(mutation: MutationEvent): Option[ColumnsInfo] = {
+    tableIdCache.get(mutation.tableId) match {
+      case hit@Some(info) if info.database.equalsIgnoreCase(mutation.database) && info.tableName.equalsIgnoreCase(mutation.tableName) =>
+        hit
+      case _ =>
+        val info = columnsInfoCache.get(mutation.cacheKey)
+        info.foreach(tableIdCache.put(mutation.tableId, _))
+        info
+    }
+  }
+
+  protected def hasPending(key: (String, String)): Boolean = mutationBuffer.get(key).exists(_.nonEmpty)
+
+  protected def invalidate(key: (String, String)): Unit = {
+    columnsInfoCache.remove(key)
+    tableIdCache.retain((_, info) => info.cacheKey != key)
   }
 
   protected def requestColumnInfo(schemaSequence: Long, database: String, tableName: String) = {
@@ -1,28 +1,42 @@
 package play.api.libs.changestream.actors
 
+import java.io.ByteArrayOutputStream
 import java.util
-import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.{Semaphore, ThreadLocalRandom, TimeUnit, TimeoutException}
 import java.util.{Date, TimeZone}
 
 import akka.actor.{ActorSystem, Cancellable}
-import com.fasterxml.jackson.databind.JsonNode
+import akka.util.ByteString
 import com.google.common.collect.Maps
-import com.typesafe.config.Config
-import org.apache.commons.lang3.time.{DateUtils, FastDateFormat}
+import com.typesafe.config.{Config, ConfigMemorySize}
+import org.apache.commons.lang3.time.FastDateFormat
 import org.slf4j.LoggerFactory
+import play.api.libs.changestream.BinlogPosition
 import play.api.libs.changestream.events.MutationWithInfo
 import play.api.libs.crypto.CookieSigner
 import play.api.{Configuration, Play}
 import play.libs.Json
-import play.libs.ws.WSClient
+import play.libs.ws.{InMemoryBodyWritable, WSClient, WSResponse}
 
 import scala.collection.immutable.ListMap
-import scala.collection.mutable.ListBuffer
+import scala.collection.mutable.ArrayBuffer
 import scala.compat.java8.FutureConverters
 import scala.concurrent.duration.{Duration, FiniteDuration}
-import scala.concurrent.{Await, ExecutionContext}
+import scala.concurrent.{Await, ExecutionContext, Future}
 import scala.util.{Failure, Success, Try}
 
+/**
+  * 把数据通过_bulk批量写入ES,请求异步发送:
+  * <ul>
+  *   <li>数据到达时直接序列化成bulk的两行字节,按条数(es.batch-size)、字节数(es.batch-bytes)或时间(es.batch-tick)发送</li>
+  *   <li>最多同时有es.concurrent-requests个bulk请求,都在进行中时binlog线程等待,反压到ChangeStream;
+  *   等待超过es.batch-timeout按失败处理</li>
+  *   <li>bulk响应中429/5xx的条目单独重试es.max-retries次,不重发整批</li>
+  *   <li>每条数据以所在binlog事件的位置作为外部版本号(version_type=external),并发的批次或重试乱序到达时,
+  *   旧的数据因版本冲突(409)被ES丢弃,同一个_id最终是binlog中最后一次修改的内容</li>
+  *   <li>前面的批次都写入成功后才保存该批次对应的binlog位置,重启后至少写入一次</li>
+  * </ul>
+  */
 class EsActor(conf:Config,sa: StateActor) extends SyncActor{
   protected val log = LoggerFactory.getLogger(getClass)
   lazy val ws:WSClient = Play.privateMaybeApplication.get.injector.instanceOf[WSClient]
@@ -31,11 +45,15 @@ class EsActor(conf:Config,sa: StateActor) extends SyncActor{
   implicit lazy val ec = Play.privateMaybeApplication.get.injector.instanceOf[ExecutionContext]
 
   var tickRun:Cancellable = null
-  var lastFlush = System.currentTimeMillis()
+  @volatile var lastFlush = System.currentTimeMillis()
   val cf = Configuration(conf)
   val timeout = cf.getOptional[Duration]("es.batch-timeout").getOrElse(Duration.apply("1m"))
   val tickeTime = cf.getOptional[Duration]("es.batch-tick").getOrElse(Duration.apply("10s"))
   val batchSize = cf.getOptional[Int]("es.batch-size").getOrElse(100)
+  val batchBytes = cf.getOptional[ConfigMemorySize]("es.batch-bytes").map(_.toBytes).getOrElse(5L * 1024 * 1024)
+  val concurrentRequests = cf.getOptional[Int]("es.concurrent-requests").getOrElse(2)
+  val maxRetries = cf.getOptional[Int]("es.max-retries").getOrElse(3)
+  val retryBackoff = cf.getOptional[FiniteDuration]("es.retry-backoff").getOrElse(Duration(1, TimeUnit.SECONDS))
   val timestamp = cf.getOptional[Configuration]("es.timestamp").getOrElse(Configuration.empty)
   val timestampField = cf.getOptional[String]("es.timestamp.field").getOrElse("@timestamp")
   val esUrl = conf.getString("es.host")
@@ -44,76 +62,194 @@ class EsActor(conf:Config,sa: StateActor) extends SyncActor{
   val idxPrefix = cf.getOptional[String]("es.index-prefix").getOrElse("")
   val needSign = cf.getOptional[String]("es.secret").isDefined
   val idxDatePattern = FastDateFormat.getInstance(cf.getOptional[String]("es.index-pattern").getOrElse("yyyy.MM"),timeZone)
-  val batchList = ListBuffer.empty[MutationWithInfo]
+
+  private val permits = new Semaphore(concurrentRequests)
+  private val writer = Json.mapper().writer()
+
+  //以下状态通过this加锁访问
+  private var pending = new ArrayBuffer[Array[Byte]](batchSize)
+  private var pendingBytes = 0L
+  private var nextSeq = 0L
+  //按发送顺序排列的进行中的批次,只有队首连续完成的批次才推进binlog位置
+  private val inflight = new util.ArrayDeque[EsBatch]()
 
   def receive = {
-    case m@MutationWithInfo(_, _, _, Some(message: AnyRef)) =>
-      batchList.synchronized{
-        batchList += m
+    case m@MutationWithInfo(_, _, _, Some(message: AnyRef), _) =>
+      val item = encode(m)
+      val full = this.synchronized {
+        pending += item
+        pendingBytes += item.length
+        pending.size >= batchSize || pendingBytes >= batchBytes
       }
-      if(batchList.size >= batchSize){
+      if (full) {
         flush()
       }
       ticked()
   }
 
-  def flush():Unit = {
-    if(batchList.isEmpty) return
-    val rowCount = batchList.size
-    val cur = System.currentTimeMillis()
-    if(cur - lastFlush >= tickeTime.toMillis || rowCount >= batchSize) {
-      val buf = ListBuffer.empty[JsonNode]
-      batchList.synchronized {
-        batchList.foreach { m =>
-          val data = m.message.get.asInstanceOf[ListMap[String, Any]]
-          val meta = getIndexName(data, m)
-          val node = Json.newObject()
-          val onode = Json.newObject()
-          onode.put("_index", meta._1);
-          onode.put("_type", meta._2);
-          onode.put("_id", meta._3);
-          node.set("index", onode)
-          buf += node
-          buf += Json.toJson(toMapRow(data,m.mutation.tableName))
-        }
-        batchList.clear()
-      }
-      bulkRow(buf)
-      lastFlush = System.currentTimeMillis()
-      log.info("success flush data rows:"+rowCount+",took:"+ (lastFlush - cur))
+  /**
+    * 把当前缓存的数据作为一个批次发出,没有空闲的请求名额时阻塞等待
+    */
+  def flush(): Unit = {
+    if (!permits.tryAcquire(timeout.toMillis, TimeUnit.MILLISECONDS)) {
+      val e = new TimeoutException("es bulk requests did not complete in " + timeout)
+      reset()
+      sa.receive(Failure(e))
+      return
     }
+    val batch = takeBatch(sa.position)
+    if (batch == null) permits.release() else send(batch, batch.items, 0)
+  }
+
+  /**
+    * 定时发送,只在有空闲的请求名额时发送,不阻塞调度线程
+    */
+  def flushIfIdle(): Unit = {
+    if (System.currentTimeMillis() - lastFlush < tickeTime.toMillis || !permits.tryAcquire()) return
+    val batch = takeBatch(sa.position)
+    if (batch == null) permits.release() else send(batch, batch.items, 0)
   }
 
-  def ticked(): Unit = {
+  def ticked(): Unit = if(tickRun == null) this.synchronized {
     if(tickRun == null) {
       val time = tickeTime.asInstanceOf[FiniteDuration]
-      tickRun = system.scheduler.schedule(time, time, () => flush())
+      tickRun = system.scheduler.schedule(time, time, () => flushIfIdle())
     }
   }
 
-  def bulkRow(rows:ListBuffer[JsonNode]): Unit ={
-    val url = esUrl + "/_bulk"
-    val data = rows.mkString("","\n","\n")
-    var p = ws.url(url)
-    if(needSign){
-      p = p.addHeader("X-HMAC-SIGN",cookieSigner.sign(data))
+  /**
+    * @param position 取出数据之前读取的binlog位置,不会超过批次中任何一条数据所在事件的开始位置
+    */
+  private def takeBatch(position: Option[BinlogPosition]): EsBatch = this.synchronized {
+    if (pending.isEmpty) return null
+    nextSeq += 1
+    val batch = new EsBatch(nextSeq, pending, position)
+    pending = new ArrayBuffer[Array[Byte]](batchSize)
+    pendingBytes = 0
+    inflight.addLast(batch)
+    lastFlush = System.currentTimeMillis()
+    batch
+  }
+
+  private def encode(m: MutationWithInfo): Array[Byte] = {
+    val data = m.message.get.asInstanceOf[ListMap[String, Any]]
+    val meta = getIndexName(data, m)
+    val node = Json.newObject()
+    val onode = Json.newObject()
+    onode.put("_index", meta._1)
+    onode.put("_type", meta._2)
+    onode.put("_id", meta._3)
+    m.position.foreach { p =>
+      onode.put("version", p.version)
+      onode.put("version_type", "external")
     }
-    p = p.addHeader("Content-Type","application/x-ndjson")
-    val r = p.post(data)
-    val f = FutureConverters.toScala(r).map(r => {
-      if(r.getStatus == 200){
-        sa.receive(Success(r.getStatus))
-      }else{
-        log.error("bulk failure:"+r.getBody)
-        sa.receive(Failure(new IllegalStateException(r.getStatusText)))
+    node.set("index", onode)
+    val out = new ByteArrayOutputStream(512) //多个lane并行调用,不共用缓冲区
+    writer.writeValue(out, node)
+    out.write('\n')
+    writer.writeValue(out, toMapRow(data, m.mutation.tableName))
+    out.write('\n')
+    out.toByteArray
+  }
+
+  private def send(batch: EsBatch, items: IndexedSeq[Array[Byte]], attempt: Int): Unit = {
+    val startAt = System.currentTimeMillis()
+    bulkRow(items).onComplete {
+      case Success(r) if r.getStatus == 200 =>
+        val retries = retryableItems(r, items)
+        if (retries.isEmpty) {
+          log.info("success flush data rows:" + items.size + ",took:" + (System.currentTimeMillis() - startAt))
+          complete(batch)
+        } else {
+          retry(batch, retries, attempt, new IllegalStateException("bulk items failure:" + retries.size))
+        }
+      case Success(r) if r.getStatus == 429 || r.getStatus >= 500 =>
+        retry(batch, items, attempt, new IllegalStateException(r.getStatusText))
+      case Success(r) =>
+        log.error("bulk failure:" + r.getBody)
+        fail(new IllegalStateException(r.getStatusText))
+      case Failure(t) =>
+        retry(batch, items, attempt, t)
+    }
+  }
+
+  private def retry(batch: EsBatch, items: IndexedSeq[Array[Byte]], attempt: Int, cause: Throwable): Unit = {
+    if (attempt >= maxRetries) {
+      fail(cause)
+    } else {
+      log.warn("bulk retry " + items.size + " rows, attempt:" + (attempt + 1) + ", cause:" + cause.getMessage)
+      system.scheduler.scheduleOnce(retryBackoff * (attempt + 1)) {
+        send(batch, items, attempt + 1)
       }
-    })
-    Try(Await.result(f,timeout)) match {
-      case Failure(t) => sa.receive(Failure(t))
-      case Success(_) =>
     }
   }
 
+  /**
+    * bulk请求整体成功时,逐条检查结果,返回需要重试的条目(429/5xx);
+    * 版本冲突(409)说明ES中已经是更新的数据,按成功处理;其它失败只记录日志
+    */
+  private def retryableItems(r: WSResponse, items: IndexedSeq[Array[Byte]]): IndexedSeq[Array[Byte]] = {
+    val json = r.asJson()
+    if (!json.path("errors").asBoolean(false)) return IndexedSeq.empty
+    val results = json.path("items")
+    val retries = new ArrayBuffer[Array[Byte]]()
+    for (i <- items.indices) {
+      val result = results.path(i).elements()
+      if (result.hasNext) {
+        val item = result.next()
+        val status = item.path("status").asInt(200)
+        if (status == 429 || status >= 500) {
+          retries += items(i)
+        } else if (status >= 300 && status != 409) {
+          log.error("bulk item failure:" + item.path("error"))
+        }
+      }
+    }
+    retries
+  }
+
+  /**
+    * 批次写入完成,释放请求名额;队首连续完成的批次出队,保存最后一个批次对应的binlog位置
+    */
+  private def complete(batch: EsBatch): Unit = {
+    permits.release()
+    val position = this.synchronized {
+      batch.done = true
+      var p: Option[BinlogPosition] = None
+      while (!inflight.isEmpty && inflight.peekFirst().done) {
+        val batchPosition = inflight.pollFirst().position
+        if (batchPosition.isDefined) p = batchPosition
+      }
+      p
+    }
+    position.foreach(p => sa.receive(Success(p)))
+  }
+
+  private def fail(cause: Throwable): Unit = {
+    permits.release()
+    reset()
+    sa.receive(Failure(cause))
+  }
+
+  /**
+   * 出错后停止复制,重新连接时从上次保存的位置重放,丢弃尚未确认的批次
+   */
+  private def reset(): Unit = this.synchronized {
+    inflight.clear()
+    pending = new ArrayBuffer[Array[Byte]](batchSize)
+    pendingBytes = 0
+  }
+
+  def bulkRow(items: IndexedSeq[Array[Byte]]): Future[WSResponse] = {
+    val url = esUrl + "/_bulk"
+    val data = items.foldLeft(ByteString.empty)((b, item) => b ++ ByteString.fromArrayUnsafe(item))
+    var p = ws.url(url).setRequestTimeout(java.time.Duration.ofMillis(timeout.toMillis))
+    if(needSign){
+      p = p.addHeader("X-HMAC-SIGN",cookieSigner.sign(data.utf8String))
+    }
+    FutureConverters.toScala(p.post(new InMemoryBodyWritable(data, "application/x-ndjson")))
+  }
+
   def putRow(row:ListMap[String,Any],message:MutationWithInfo): Unit ={
     val idxName = getIndexName(row,message)
     val url = esUrl + idxName
@@ -180,4 +316,13 @@ class EsActor(conf:Config,sa: StateActor) extends SyncActor{
     }
     (idxName,message.mutation.tableName,id)
   }
-}
\ No newline at end of file
+}
+
+/**
+  * 一次bulk请求的数据
+  *
+  * @param position 该批次及之前的批次都写入后保存的binlog位置
+  */
+private[actors] class EsBatch(val seq: Long, val items: IndexedSeq[Array[Byte]], val position: Option[BinlogPosition]) {
+  @volatile var done = false
+}
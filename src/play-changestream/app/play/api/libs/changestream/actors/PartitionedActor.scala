@@ -0,0 +1,163 @@
+package play.api.libs.changestream.actors
+
+import java.util
+import java.util.concurrent.{ArrayBlockingQueue, ConcurrentSkipListMap}
+
+import org.slf4j.LoggerFactory
+import play.api.libs.changestream.{BinlogPosition, ChangeStream}
+import play.api.libs.changestream.events._
+
+import scala.concurrent.Future
+import scala.util.Failure
+
+object PartitionedActor {
+  case class LaneTask(seq: Long, event: MutationWithInfo)
+}
+
+/**
+  * 把ColumnInfoActor之后的处理(格式化和emitter)分到多个有序的处理线程(lane)上并行执行:
+  * <ul>
+  *   <li>按库表hash,或按主键hash(byPrimaryKey,一个事件中的多行按主键拆开),同一个key始终在同一个lane中按binlog顺序处理</li>
+  *   <li>lane的队列满时binlog线程等待</li>
+  *   <li>每个事件分发时记录所在的binlog位置,{@link #checkpoint}是还没有处理完的最早的事件的位置,
+  *   所有lane都处理完该位置之前的事件后才会前进</li>
+  * </ul>
+  * 所有lane共用同一个emitter,emitter需要是线程安全的.
+  * 断开复制时{@link #stop}停止lane线程并丢弃还没有处理的事件,这些事件留在inflight中,checkpoint不会越过它们;
+  * 重新连接后第一个事件到来时重新启动lane线程
+  */
+class PartitionedActor(nextHop: SyncActor, cs: ChangeStream, sa: StateActor, lanes: Int, byPrimaryKey: Boolean, queueSize: Int) extends SyncActor {
+  import PartitionedActor._
+  protected val log = LoggerFactory.getLogger(getClass)
+
+  //以下状态只在binlog线程中修改
+  private var seq = 0L
+  private var generation = cs.generation
+  //分发了还没有处理完的事件,seq -> 所在的binlog位置
+  private val inflight = new ConcurrentSkipListMap[java.lang.Long, BinlogPosition]()
+  @volatile private var lastDispatched: Option[BinlogPosition] = None
+  private val workers = Array.tabulate(lanes)(i => new Lane(i))
+
+  def receive = {
+    case event: MutationWithInfo =>
+      if (generation != cs.generation) {
+        //重新连接后从保存的位置重放,之前未完成的事件不再影响checkpoint
+        generation = cs.generation
+        inflight.clear()
+        lastDispatched = None
+        workers.foreach(_.start())
+      }
+      val position = cs.binlogPosition
+      primaryKeyIndexes(event) match {
+        case Some(keys) if event.mutation.rows.size > 1 =>
+          val rows = event.mutation.rows.toIndexedSeq
+          rows.indices.groupBy(i => laneOf(tableHash(event.mutation) * 31 + rowHash(rows(i), keys))).foreach {
+            case (lane, indexes) => dispatch(lane, event.copy(mutation = withRows(event.mutation, indexes.sorted)), position)
+          }
+        case Some(keys) =>
+          dispatch(laneOf(tableHash(event.mutation) * 31 + rowHash(event.mutation.rows.head, keys)), event, position)
+        case None =>
+          dispatch(laneOf(tableHash(event.mutation)), event, position)
+      }
+  }
+
+  /**
+    * 所有lane都已处理完的位置,从该位置重新开始复制不会丢失数据;还没有分发过事件时为None
+    */
+  def checkpoint: Option[BinlogPosition] = {
+    val first = inflight.firstEntry()
+    if (first != null) Some(first.getValue) else lastDispatched
+  }
+
+  private def dispatch(lane: Int, event: MutationWithInfo, position: BinlogPosition): Unit = {
+    seq += 1
+    inflight.put(seq, position)
+    lastDispatched = Some(position)
+    workers(lane).put(LaneTask(seq, event))
+  }
+
+  /**
+    * 停止所有lane线程,正在执行的事件会被中断
+    */
+  def stop(): Unit = workers.foreach(_.stop())
+
+  private def laneOf(hash: Int): Int = Math.floorMod(hash ^ (hash >>> 16), lanes)
+
+  private def tableHash(m: MutationEvent): Int = m.database.hashCode * 31 + m.tableName.hashCode
+
+  private def primaryKeyIndexes(event: MutationWithInfo): Option[IndexedSeq[Int]] = {
+    if (!byPrimaryKey || event.columns.isEmpty || event.mutation.rows.isEmpty) return None
+    val columns = event.columns.get.columns
+    val keys = columns.indices.filter(i => columns(i).isPrimary && event.mutation.includedColumns.get(i))
+    if (keys.isEmpty) None else Some(keys)
+  }
+
+  private def rowHash(row: Array[java.io.Serializable], keys: IndexedSeq[Int]): Int = {
+    var h = 1
+    keys.foreach { i =>
+      h = 31 * h + (if (i >= row.length) 0 else row(i) match {
+        case null => 0
+        case b: Array[Byte] => util.Arrays.hashCode(b)
+        case v => v.hashCode
+      })
+    }
+    h
+  }
+
+  private def withRows(m: MutationEvent, indexes: Seq[Int]): MutationEvent = m match {
+    case insert: Insert =>
+      val rows = insert.rows.toIndexedSeq
+      insert.copy(rows = indexes.map(rows).toList)
+    case update: Update =>
+      val rows = update.rows.toIndexedSeq
+      val oldRows = update.oldRows.toIndexedSeq
+      update.copy(rows = indexes.map(rows).toList, oldRows = indexes.map(oldRows).toList)
+    case delete: Delete =>
+      val rows = delete.rows.toIndexedSeq
+      delete.copy(rows = indexes.map(rows).toList)
+  }
+
+  private class Lane(index: Int) extends Runnable {
+    private val queue = new ArrayBlockingQueue[LaneTask](queueSize)
+    /** 当前的lane线程,旧线程发现自己不是当前线程后退出,保证同一时刻只有一个线程处理这个队列 **/
+    @volatile private var current: Thread = null
+    start()
+
+    def start(): Unit = synchronized {
+      if (current == null) {
+        val thread = new Thread(this, "changestream-lane-" + index)
+        thread.setDaemon(true)
+        current = thread
+        thread.start()
+      }
+    }
+
+    def stop(): Unit = synchronized {
+      val thread = current
+      current = null
+      if (thread != null) thread.interrupt()
+      queue.clear() //binlog线程可能正等待队列的空位
+    }
+
+    /** 已经停止时直接丢弃,事件留在inflight中 **/
+    def put(task: LaneTask): Unit = if (current != null) queue.put(task)
+
+    override def run(): Unit = {
+      while (current eq Thread.currentThread()) {
+        val task = try queue.take() catch {
+          case _: InterruptedException => null //stop
+        }
+        if (task != null) {
+          try {
+            nextHop.receive(task.event)
+            inflight.remove(task.seq)
+          } catch {
+            //失败的事件留在inflight中,checkpoint不会越过它;已经停止时是被中断的,不再报告.
+            //停止复制需要等binlog线程退出,binlog线程可能正等待这个lane的队列,所以不能在lane线程中同步调用
+            case t: Throwable => if (current eq Thread.currentThread()) Future(sa.receive(Failure(t)))(cs.ec)
+          }
+        }
+      }
+    }
+  }
+}
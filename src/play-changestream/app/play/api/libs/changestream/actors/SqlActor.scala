@@ -11,22 +11,21 @@ import scala.collection.immutable.ListMap
 
 class SqlActor (conf:Config,sa: StateActor) extends SyncActor{
 
-  val buf = new StringBuilder
-
+  //分lane并行处理时会被多个线程同时调用,每次使用新的StringBuilder
   override def receive = {
     case m:MutationWithInfo => m.mutation match {
       case insert:Insert => if(matchRow(m)){
-        buf.clear()
+        val buf = new StringBuilder
         parseInsert(m,insert,buf)
         processRow(buf,sa)
       }
       case update:Update => if(matchRow(m)){
-        buf.clear()
+        val buf = new StringBuilder
         parseUpdate(m,update,buf)
         processRow(buf,sa)
       }
       case delete:Delete => if(matchRow(m)){
-        buf.clear()
+        val buf = new StringBuilder
         parseDelete(m,delete,buf)
         processRow(buf,sa)
       }
@@ -3,7 +3,7 @@ package play.api.libs.changestream.actors
 import java.util.concurrent.TimeUnit
 
 import org.slf4j.LoggerFactory
-import play.api.libs.changestream.ChangeStream
+import play.api.libs.changestream.{BinlogPosition, ChangeStream}
 
 import scala.concurrent.duration.{Duration, FiniteDuration}
 import scala.util.{Failure, Success}
@@ -18,9 +18,23 @@ class StateActor(cs:ChangeStream) extends SyncActor {
 
   val recoverTime = cs.conf.getOptional[Int]("mysql.recover").getOrElse(10000)
 
+  @volatile
+  protected var partitioned: PartitionedActor = null
+
+  def setPartitioned(p: PartitionedActor) = partitioned = p
+
+  /**
+    * 可以保存的位置:单线程处理时是当前读取到的位置,多个lane并行处理时是所有lane都已处理完的位置.
+    * 异步提交的emitter在数据写出成功后用Success(position)保存
+    */
+  def position: Option[BinlogPosition] = if (partitioned == null) Some(cs.binlogPosition) else partitioned.checkpoint
+
   def receive = {
+    case Success(p: BinlogPosition) => {
+      cs.saveBinlogPosition(p)
+    }
     case Success(_) => {
-      cs.saveBinlogPosition
+      position.foreach(cs.saveBinlogPosition)
     }
     case Failure(t) => {
       cs.disconnect() match {
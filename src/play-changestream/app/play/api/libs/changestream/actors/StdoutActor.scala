@@ -6,7 +6,7 @@ import scala.collection.immutable.ListMap
 
 class StdoutActor extends SyncActor {
   def receive = {
-    case MutationWithInfo(mutation, _, _, Some(message: AnyRef)) =>
+    case MutationWithInfo(mutation, _, _, Some(message: AnyRef), _) =>
       val data = message.asInstanceOf[ListMap[String,Any]]
   }
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import com.github.shyiko.mysql.binlog.event._
 
 import java.util
 
+import play.api.libs.changestream.BinlogPosition
+
 /** Parent trait for all change events. Change event are an
   * abstraction of mysql binlog events. They are named to be
   * easily understood in the context of changestream, and
@@ -38,6 +40,16 @@ case class AlterTableEvent(database: String,
   def cacheKey = (database.toLowerCase, tableName.toLowerCase)
 }
 
+/** Represents a CREATE, DROP or RENAME TABLE statement (or an ALTER TABLE ... RENAME),
+  * created from QUERY event in the binlog. The cached column info of every
+  * affected table is invalidated.
+  *
+  * @param tables lowercase (database, table) pairs touched by the statement
+  * @param sql
+  */
+case class TableDdlEvent(tables: Seq[(String, String)],
+                         sql: String) extends ChangeEvent
+
 /** Represents a mutation event (insert/update/delete) that can include
   * one or more row changes per event.
   *
@@ -149,10 +161,13 @@ case class Column(name: String, dataType: String, isPrimary: Boolean)
   * @param mutation
   * @param transaction
   * @param columns
+  * @param message
+  * @param position The binlog position where the mutation event starts
   */
 case class MutationWithInfo(
                              mutation: MutationEvent,
                              transaction: Option[TransactionInfo] = None,
                              columns: Option[ColumnsInfo] = None,
-                             message: Option[AnyRef] = None
+                             message: Option[AnyRef] = None,
+                             position: Option[BinlogPosition] = None
                            )
\ No newline at end of file
@@ -0,0 +1,167 @@
+package play.api.libs.changestream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BinlogCheckpointStoreTest {
+    private static final String BINLOG = "mysql-bin.000001";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCoalesceByCount() throws Exception {
+        File file = new File(folder.getRoot(), "slave.info");
+        BinlogCheckpointStore store = new BinlogCheckpointStore(file, 10, 60000);
+        for (int i = 1; i < 10; i++) {
+            assertFalse(store.update(new BinlogPosition(BINLOG, i * 100L, "")));
+        }
+        assertFalse(file.exists());
+        assertTrue(store.update(new BinlogPosition(BINLOG, 1000L, "")));
+        assertEquals(1000L, store.load().get().position());
+
+        store.update(new BinlogPosition(BINLOG, 1100L, ""));
+        assertEquals(1000L, store.load().get().position());
+        assertTrue(store.flush());
+        assertEquals(1100L, store.load().get().position());
+        assertFalse(store.flush());
+    }
+
+    @Test
+    public void testCoalesceByTime() throws Exception {
+        File file = new File(folder.getRoot(), "slave.info");
+        BinlogCheckpointStore store = new BinlogCheckpointStore(file, 1000, 50);
+        store.update(new BinlogPosition(BINLOG, 100L, ""));
+        assertFalse(store.flushIfDue());
+        Thread.sleep(60);
+        assertTrue(store.flushIfDue());
+        assertEquals(100L, store.load().get().position());
+    }
+
+    @Test
+    public void testGtidSetAndStalePosition() throws Exception {
+        File file = new File(folder.getRoot(), "slave.info");
+        BinlogCheckpointStore store = new BinlogCheckpointStore(file, 100, 60000);
+        String gtid = "3e11fa47-71ca-11e1-9e33-c80aa9429562:1-77";
+        store.update(new BinlogPosition(BINLOG, 500L, gtid));
+        store.update(new BinlogPosition(BINLOG, 400L, "")); //较早的位置后到
+        store.flush();
+        BinlogPosition p = store.load().get();
+        assertEquals(500L, p.position());
+        assertEquals(gtid, p.gtidSet());
+    }
+
+    /**
+     * 已经写入文件后较早的位置才到,包括前一个binlog文件中的位置
+     */
+    @Test
+    public void testStalePositionAfterFlushAndRotate() throws Exception {
+        File file = new File(folder.getRoot(), "slave.info");
+        BinlogCheckpointStore store = new BinlogCheckpointStore(file, 100, 60000);
+        store.update(new BinlogPosition("mysql-bin.000002", 200L, ""));
+        store.flush();
+        assertFalse(store.update(new BinlogPosition("mysql-bin.000002", 100L, "")));
+        assertFalse(store.update(new BinlogPosition(BINLOG, 900L, "")));
+        assertFalse(store.flush());
+        BinlogPosition p = store.load().get();
+        assertEquals("mysql-bin.000002", p.filename());
+        assertEquals(200L, p.position());
+
+        //重启后以文件中的位置为准
+        BinlogCheckpointStore restarted = new BinlogCheckpointStore(file, 100, 60000);
+        restarted.load();
+        assertFalse(restarted.update(new BinlogPosition(BINLOG, 900L, "")));
+        restarted.update(new BinlogPosition("mysql-bin.000003", 4L, ""));
+        assertTrue(restarted.flush());
+        assertEquals("mysql-bin.000003", restarted.load().get().filename());
+    }
+
+    /**
+     * 子进程不停地处理事件并更新位置,处理过程中直接kill -9:
+     * 位置文件必须完整可读,且不早于已经确认写入的位置,不晚于已经处理的位置
+     */
+    @Test
+    public void testResumeAfterKill() throws Exception {
+        File file = new File(folder.getRoot(), "slave.info");
+        Process process = new ProcessBuilder(javaBin(), "-cp", classpath(), Writer.class.getName(), file.getPath())
+                .redirectErrorStream(true)
+                .start();
+        long saved = -1;
+        long processed = -1;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+            int saves = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("processed ")) {
+                    processed = Long.parseLong(line.substring(10));
+                } else if (line.startsWith("saved ")) {
+                    saved = Long.parseLong(line.substring(6));
+                    if (++saves == 50) {
+                        process.destroyForcibly();
+                    }
+                } else {
+                    fail("unexpected output: " + line);
+                }
+            }
+        } finally {
+            process.destroyForcibly();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+        assertTrue("no checkpoint was saved", saved > 0);
+
+        BinlogPosition resume = new BinlogCheckpointStore(file, 100, 1000).load().get();
+        assertEquals(BINLOG, resume.filename());
+        assertTrue("lost a saved checkpoint: " + resume.position() + " < " + saved, resume.position() >= saved);
+        assertTrue("resume after unprocessed event: " + resume.position() + " > " + processed, resume.position() <= processed);
+    }
+
+    private static String javaBin() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    /**
+     * sbt在同一个进程中用独立的ClassLoader运行测试,java.class.path不包含测试类
+     */
+    private static String classpath() {
+        Set<String> paths = new LinkedHashSet<>();
+        for (ClassLoader cl = BinlogCheckpointStoreTest.class.getClassLoader(); cl != null; cl = cl.getParent()) {
+            if (cl instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) cl).getURLs()) {
+                    if ("file".equals(url.getProtocol())) {
+                        paths.add(new File(url.getPath()).getPath());
+                    }
+                }
+            }
+        }
+        paths.add(System.getProperty("java.class.path"));
+        return String.join(File.pathSeparator, paths);
+    }
+
+    /**
+     * 模拟binlog处理:每个事件处理完后更新位置,写入文件后输出saved
+     */
+    public static class Writer {
+        public static void main(String[] args) throws Exception {
+            BinlogCheckpointStore store = new BinlogCheckpointStore(new File(args[0]), 20, 1000);
+            for (long position = 4; ; position += 100) {
+                System.out.println("processed " + position);
+                if (store.update(new BinlogPosition(BINLOG, position, ""))) {
+                    System.out.println("saved " + position);
+                }
+                System.out.flush();
+            }
+        }
+    }
+}
@@ -38,6 +38,7 @@ package play.api.deadbolt
 import play.api.deadbolt.authz.AuthenticationToken
 import play.api.deadbolt.session.Session
 
+import scala.concurrent.Future
 
 trait Authz {
 
@@ -45,6 +46,13 @@ trait Authz {
 
   def getSession(request:play.mvc.Http.Session): Session
 
+  /**
+    * 异步获取当前用户,读取远程session时不阻塞请求线程
+    */
+  def getSubjectAsync[A >:Subject](request:play.mvc.Http.Session): Future[A] = Future.fromTry(scala.util.Try(getSubject[A](request)))
+
+  def getSessionAsync(request:play.mvc.Http.Session): Future[Session] = Future.fromTry(scala.util.Try(getSession(request)))
+
   def touch(session:Session): Unit
 
   def login[A >:Subject](token:AuthenticationToken,request:play.mvc.Http.Session):Either[A,String]
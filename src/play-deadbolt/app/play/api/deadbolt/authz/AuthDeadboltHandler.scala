@@ -44,11 +44,8 @@ class AuthDeadboltHandler @Inject()(authz: Authz, errorHandler: HttpErrorHandler
     */
   override def getSubject[A](request: AuthenticatedRequest[A]): Future[Option[Subject]] = {
     val session:Session= request.session.asJava
-    val subject:ASubject = authz.getSubject(session)
-    if(subject == null || !subject.isAuthenticated){
-      Future(None)
-    }else{
-      Future(Some(subject.toDelegate[Subject]))
+    authz.getSubjectAsync[ASubject](session).map{ subject =>
+      if(subject == null || !subject.isAuthenticated) None else Some(subject.toDelegate[Subject])
     }
   }
 
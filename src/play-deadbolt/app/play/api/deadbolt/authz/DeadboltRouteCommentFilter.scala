@@ -15,10 +15,12 @@
  */
 package play.api.deadbolt.authz;
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.regex.{Pattern, PatternSyntaxException}
 import javax.inject.{Inject, Singleton}
 
 import akka.stream.Materializer
-import be.objectify.deadbolt.scala.AuthenticatedRequest
+import be.objectify.deadbolt.scala.{AuthenticatedRequest, DeadboltHandler}
 import be.objectify.deadbolt.scala.cache.{CompositeCache, HandlerCache}
 import be.objectify.deadbolt.scala.filters.{FilterConstraints, SimpleHandlerKey}
 import be.objectify.deadbolt.scala.models.PatternType
@@ -26,6 +28,7 @@ import play.api.mvc._
 import play.api.routing.Router
 import play.api.{Configuration, Logger}
 
+import scala.collection.mutable
 import scala.concurrent.Future
 
 /**
@@ -142,63 +145,121 @@ class DeadboltRouteCommentFilter @Inject()(materializer: Materializer,
     }).filter(_._2.length > 0)
   }
 
+  private val unconstrained: DeadboltRouteCommentFilter.Constraint = (requestHeader, next) => next(requestHeader)
+
+  /**
+    * 注释编译后的约束,同一个路由的HandlerDef注释是同一个字符串,每个请求只查一次map
+    */
+  private val compiled = new ConcurrentHashMap[String, DeadboltRouteCommentFilter.Constraint]()
+
+  /**
+    * play.routes.enabled中的路径前缀编译成前缀树,多个前缀匹配时取配置中靠前的一个,与原来的find一致
+    */
+  private lazy val routePaths: DeadboltRouteCommentFilter.PathIndex = {
+    val index = new DeadboltRouteCommentFilter.PathIndex(unconstrained)
+    parseRoutePath.zipWithIndex.foreach{case ((path, comment), i) => index.add(path, i, constraintOf(comment))}
+    index
+  }
+
   override def apply(next: (RequestHeader) => Future[Result])(requestHeader: RequestHeader): Future[Result] = {
-    val comment: String = requestHeader.attrs.get(Router.Attrs.HandlerDef).filter(!_.modifiers.isEmpty).map(_.modifiers.head).getOrElse({
-      val pathAt = parseRoutePath.find(f => requestHeader.path.startsWith(f._1))
-      if(pathAt.isDefined) pathAt.get._2 else ""
-    })
-    if (comment startsWith "deadbolt:") {
-      val authenticatedRequest = new AuthenticatedRequest[AnyContent](Request[AnyContent](requestHeader, AnyContentAsEmpty), None)
-      comment match {
-        case subjectPresentComment(constraintName, handlerName) => constraints.subjectPresent(requestHeader,
-                                                                                              authenticatedRequest,
-                                                                                              Option(handlerCache(SimpleHandlerKey(handlerName))).getOrElse(
-                                                                                                handler),
-                                                                                              next)
-        case subjectNotPresentComment(constraintName, handlerName) => next(requestHeader) /**constraints.subjectNotPresent(requestHeader,
-                                                                                                    authenticatedRequest,
-                                                                                                    Option(handlerCache(SimpleHandlerKey(handlerName))).getOrElse(
-                                                                                                      handler),
-                                                                                                    next)**/
-        case dynamicComment(constraintName, name, handlerName) => constraints.dynamic(name,
-                                                                                      Option.empty)(requestHeader,
-                                                                                                    authenticatedRequest,
-                                                                                                    Option(handlerCache(SimpleHandlerKey(handlerName))).getOrElse(
-                                                                                                      handler),
-                                                                                                    next)
-        case patternComment(constraintName, value, patternType, invert, handlerName) => constraints.pattern(value,
-                                                                                                            PatternType.byName(patternType),
-                                                                                                            meta = None,
-                                                                                                            invert = if (invert == null) false
-                                                                                                            else "true".equalsIgnoreCase(invert))(requestHeader,
-                                                                                                                                                  authenticatedRequest,
-                                                                                                                                                  Option(
-                                                                                                                                                    handlerCache(
-                                                                                                                                                      SimpleHandlerKey(
-                                                                                                                                                        handlerName))).getOrElse(
-                                                                                                                                                    handler),
-                                                                                                                                                  next)
-        case compositeComment(constraintName, name, handlerName) => constraints.composite(compositeCache(name))(requestHeader,
-                                                                                                                authenticatedRequest,
-                                                                                                                Option(handlerCache(SimpleHandlerKey(handlerName))).getOrElse(
-                                                                                                                  handler),
-                                                                                                                next)
-        case restrictComment(constraintName, name, handlerName) => constraints.composite(compositeCache(name))(requestHeader,
-                                                                                                               authenticatedRequest,
-                                                                                                               Option(handlerCache(SimpleHandlerKey(handlerName))).getOrElse(
-                                                                                                                 handler),
-                                                                                                               next)
-        case roleBasedPermissionsComment(constraintName, name, handlerName) => constraints.roleBasedPermissions(name)(requestHeader,
-                                                                                                                      authenticatedRequest,
-                                                                                                                      Option(handlerCache(SimpleHandlerKey(handlerName))).getOrElse(
-                                                                                                                        handler),
-                                                                                                                      next)
-        case _ =>
-          logger.error(s"Unknown Deadbolt route comment [$comment], denying access with default handler")
-          handler.onAuthFailure(authenticatedRequest)
-      }
+    val constraint = requestHeader.attrs.get(Router.Attrs.HandlerDef) match {
+      case Some(handlerDef) if handlerDef.modifiers.nonEmpty => constraintOf(handlerDef.modifiers.head)
+      case _ => routePaths.find(requestHeader.path)
+    }
+    constraint(requestHeader, next)
+  }
+
+  private def constraintOf(comment: String): DeadboltRouteCommentFilter.Constraint = {
+    val constraint = compiled.get(comment)
+    if (constraint != null) {
+      constraint
     } else {
-      next(requestHeader)
+      val created = compile(comment)
+      val existing = compiled.putIfAbsent(comment, created)
+      if (existing != null) existing else created
     }
   }
-}
\ No newline at end of file
+
+  private def handlerOf(handlerName: String): DeadboltHandler = Option(handlerCache(SimpleHandlerKey(handlerName))).getOrElse(handler)
+
+  private def authenticated(requestHeader: RequestHeader) = new AuthenticatedRequest[AnyContent](Request[AnyContent](requestHeader, AnyContentAsEmpty), None)
+
+  private def deny(comment: String): DeadboltRouteCommentFilter.Constraint = (requestHeader, next) => {
+    logger.error(s"Unknown Deadbolt route comment [$comment], denying access with default handler")
+    handler.onAuthFailure(authenticated(requestHeader))
+  }
+
+  /**
+    * 解析注释,正则匹配和handler查找只在第一次遇到这个注释时执行
+    */
+  private def compile(comment: String): DeadboltRouteCommentFilter.Constraint = {
+    if (!comment.startsWith("deadbolt:")) return unconstrained
+    comment match {
+      case subjectPresentComment(constraintName, handlerName) =>
+        val h = handlerOf(handlerName)
+        (requestHeader, next) => constraints.subjectPresent(requestHeader, authenticated(requestHeader), h, next)
+      case subjectNotPresentComment(constraintName, handlerName) => unconstrained
+      case dynamicComment(constraintName, name, handlerName) =>
+        val h = handlerOf(handlerName)
+        (requestHeader, next) => constraints.dynamic(name, Option.empty)(requestHeader, authenticated(requestHeader), h, next)
+      case patternComment(constraintName, value, patternType, invert, handlerName) =>
+        val h = handlerOf(handlerName)
+        val pType = PatternType.byName(patternType)
+        val inverted = if (invert == null) false else "true".equalsIgnoreCase(invert)
+        if (pType == PatternType.REGEX) {
+          //提前校验,匹配时deadbolt从PatternCache中取编译好的Pattern
+          try Pattern.compile(value) catch {
+            case e: PatternSyntaxException =>
+              logger.error(s"Invalid regex in Deadbolt route comment [$comment]", e)
+              return deny(comment)
+          }
+        }
+        (requestHeader, next) => constraints.pattern(value, pType, meta = None, invert = inverted)(requestHeader, authenticated(requestHeader), h, next)
+      case compositeComment(constraintName, name, handlerName) =>
+        val h = handlerOf(handlerName)
+        (requestHeader, next) => constraints.composite(compositeCache(name))(requestHeader, authenticated(requestHeader), h, next)
+      case restrictComment(constraintName, name, handlerName) =>
+        val h = handlerOf(handlerName)
+        (requestHeader, next) => constraints.composite(compositeCache(name))(requestHeader, authenticated(requestHeader), h, next)
+      case roleBasedPermissionsComment(constraintName, name, handlerName) =>
+        val h = handlerOf(handlerName)
+        (requestHeader, next) => constraints.roleBasedPermissions(name)(requestHeader, authenticated(requestHeader), h, next)
+      case _ => deny(comment)
+    }
+  }
+}
+
+object DeadboltRouteCommentFilter {
+  private type Constraint = (RequestHeader, RequestHeader => Future[Result]) => Future[Result]
+
+  private class PathIndex(default: Constraint) {
+    private val root = new PathNode
+
+    def add(path: String, order: Int, constraint: Constraint): Unit = {
+      var node = root
+      path.foreach(c => node = node.children.getOrElseUpdate(c, new PathNode))
+      if (node.order < 0) {
+        node.order = order
+        node.constraint = constraint
+      }
+    }
+
+    def find(path: String): Constraint = {
+      var best: PathNode = null
+      var node = root
+      var i = 0
+      while (node != null) {
+        if (node.order >= 0 && (best == null || node.order < best.order)) best = node
+        node = if (i < path.length) node.children.getOrElse(path.charAt(i), null) else null
+        i += 1
+      }
+      if (best == null) default else best.constraint
+    }
+  }
+
+  private class PathNode {
+    val children = mutable.HashMap.empty[Char, PathNode]
+    var order = -1
+    var constraint: Constraint = _
+  }
+}
@@ -7,19 +7,22 @@ import play.api.deadbolt.session.Session
 import play.api.deadbolt.session.mgt.{DefaultSessionKey, MapSession, SessionContext, SessionManager}
 import play.api.deadbolt.{Authz, Subject}
 import play.api.http.SessionConfiguration
+import play.api.libs.streams.Execution.trampoline
 import play.mvc.Http
 
+import scala.concurrent.Future
+
 @Singleton
 class DefaultAuthz @Inject() (securityManager: SecurityManager,sessionManager: SessionManager,sessionCfg: SessionConfiguration) extends Authz{
   private val anonymous:Subject = new SimpleSubject("anonymous","anonymous","<anonymous>",false)
 
-  override def getSubject[A >:Subject](request: Http.Session):A = {
-    val session = getSession(request)
-    var subject:Subject = securityManager.getSubject(session)
-    if(subject == null){
-      subject = anonymous
-    }
-    subject
+  override def getSubject[A >:Subject](request: Http.Session):A = toSubject(getSession(request))
+
+  override def getSubjectAsync[A >:Subject](request: Http.Session):Future[A] = getSessionAsync(request).map(s => toSubject(s): A)(trampoline)
+
+  private def toSubject(session: Session):Subject = {
+    val subject:Subject = securityManager.getSubject(session)
+    if(subject == null) anonymous else subject
   }
 
   override def getSession(request: Http.Session):Session = {
@@ -34,6 +37,16 @@ class DefaultAuthz @Inject() (securityManager: SecurityManager,sessionManager: S
     session
   }
 
+  override def getSessionAsync(request: Http.Session):Future[Session] = {
+    val sessionId = request.get(sessionCfg.cookieName)
+    if(StringUtils.isNoneEmpty(sessionId)){
+      sessionManager.getSessionAsync(new DefaultSessionKey(sessionId))
+        .map(session => if(session == null) toMapSession(request) else session)(trampoline)
+    }else{
+      Future.successful(toMapSession(request))
+    }
+  }
+
   def toMapSession(request: Http.Session):Session = new MapSession(request)
 
   def login[A >:Subject](token:AuthenticationToken,request:play.mvc.Http.Session):Either[A,String] = {
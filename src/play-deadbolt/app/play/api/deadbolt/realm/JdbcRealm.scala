@@ -1,9 +1,14 @@
 package play.api.deadbolt.realm
 
-import java.sql.ResultSet
+import java.sql.{Connection, PreparedStatement}
+import java.util.concurrent.{Callable, ExecutionException, TimeUnit}
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.{Inject, Singleton}
 
-import play.api.Configuration
+import com.google.common.cache.{Cache, CacheBuilder}
+import com.google.common.util.concurrent.{ExecutionError, UncheckedExecutionException}
+
+import play.api.{Configuration, Logger}
 import play.api.db.{DBApi, Database}
 import play.api.deadbolt.{Permission, Role, Subject}
 import play.api.deadbolt.authz._
@@ -12,16 +17,28 @@ import play.api.inject.bind
 import play.db.NamedDatabaseImpl
 
 import scala.collection.mutable
+import scala.concurrent.duration.Duration
 
 
 /**
   * play.deadbolt.authz.realm.class = "jdbc"
   * play.deadbolt.authz.realm.jdbc.database = "default"
+  * play.deadbolt.authz.realm.jdbc.authorizationSql = ""   //可选,一次查出角色和权限,见authorizationSql
+  * play.deadbolt.authz.realm.jdbc.cache{
+  *   maxSize = 10000         //0表示不缓存
+  *   ttl = 5m
+  *   versionSql = ""         //可选,返回授权数据的版本号,例如 select max(updated_at) from roles_permissions
+  *   versionInterval = 10s   //versionSql的检查间隔
+  * }
+  *
+  * 角色和权限按用户缓存,管理后台修改授权后调用invalidate或invalidateAll,
+  * 多个节点时配置versionSql,版本号变化后所有缓存失效
   */
 
 @Singleton
 class JdbcRealm @Inject() (inject:Injector,conf:Configuration,defaultDatabase:Database) extends Realm {
   private val confPrefix = "play.deadbolt.authz.realm.jdbc"
+  private val logger = Logger(classOf[JdbcRealm])
   override def getName = classOf[JdbcRealm].getSimpleName
 
   lazy val database:Database = conf.getOptional[String](confPrefix+".database").map{name =>
@@ -33,6 +50,23 @@ class JdbcRealm @Inject() (inject:Injector,conf:Configuration,defaultDatabase:Da
   lazy val findRolesSql = conf.getOptional[String](confPrefix+".rolesSql").getOrElse("select id,name,value from user_roles where user_id = ?")
   lazy val findPermissionsSql = conf.getOptional[String](confPrefix+".permissionsSql").getOrElse("select id,name,value from roles_permissions where role_id in (?)")
 
+  /**
+    * 一次查出用户的角色和权限,参数为用户id,每行依次为角色的id,name,value和权限的id,name,value,
+    * 例如 select r.id,r.name,r.value,p.id,p.name,p.value from user_roles r left join roles_permissions p on p.role_id = r.id where r.user_id = ?
+    */
+  lazy val authorizationSql = conf.getOptional[String](confPrefix+".authorizationSql").filter(_.trim.nonEmpty)
+
+  private lazy val versionSql = conf.getOptional[String](confPrefix+".cache.versionSql").filter(_.trim.nonEmpty)
+  private lazy val versionInterval = conf.getOptional[Duration](confPrefix+".cache.versionInterval").getOrElse(Duration(10,TimeUnit.SECONDS)).toMillis
+  private val versionCheckedAt = new AtomicLong()
+  @volatile private var versionValue: String = null
+  private val version = new AtomicLong()
+
+  private lazy val cache: Cache[String,JdbcRealm.Authorization] = CacheBuilder.newBuilder()
+    .maximumSize(conf.getOptional[Long](confPrefix+".cache.maxSize").getOrElse(10000L))
+    .expireAfterWrite(conf.getOptional[Duration](confPrefix+".cache.ttl").getOrElse(Duration(5,TimeUnit.MINUTES)).toMillis,TimeUnit.MILLISECONDS)
+    .build[String,JdbcRealm.Authorization]()
+
   override def getAuthenticationInfo(token: AuthenticationToken, passwordService: PasswordService) = {
     if(token.getPrincipal == null || token.getCredentials == null){
       Right("Null username are not allowed by this realm.")
@@ -71,41 +105,156 @@ class JdbcRealm @Inject() (inject:Injector,conf:Configuration,defaultDatabase:Da
     }
   }
 
-  override def getRoles(subject: Subject):Seq[Role] = {
-    database.withConnection{conn =>
-      val st = conn.prepareStatement(findRolesSql)
-      st.setString(1,subject.id.trim)
+  override def getRoles(subject: Subject):Seq[Role] = authorizationOf(subject).roles
 
-      val rs = st.executeQuery()
-      val roles = mutable.ArrayBuffer.empty[Role]
+  /**
+    * 用户角色对应的权限,角色从数据库中查询,不依赖subject.roles是否已经填充
+    */
+  override def getPermissions(subject: Subject):Seq[Permission] = authorizationOf(subject).permissions
+
+  /**
+    * 管理后台修改了用户的授权后调用
+    */
+  def invalidate(subjectId: String): Unit = cache.invalidate(subjectId.trim)
 
-      while(rs.next()){
-        roles += new SimpleRole(rs.getString(1),rs.getString(2),rs.getString(3))
+  /**
+    * 修改了角色的权限后调用,所有用户的缓存失效
+    */
+  def invalidateAll(): Unit = {
+    version.incrementAndGet()
+    cache.invalidateAll()
+  }
+
+  private def authorizationOf(subject: Subject): JdbcRealm.Authorization = {
+    val subjectId = subject.id.trim
+    checkVersion()
+    val current = version.get()
+    val cached = cache.getIfPresent(subjectId)
+    if (cached != null && cached.version == current) {
+      cached
+    } else {
+      if (cached != null) cache.invalidate(subjectId)
+      //同一个用户并发请求时只查询一次,查询抛出的异常原样抛给调用方
+      try {
+        cache.get(subjectId, new Callable[JdbcRealm.Authorization] {
+          override def call() = loadAuthorization(subjectId, current)
+        })
+      } catch {
+        case e @ (_: ExecutionException | _: UncheckedExecutionException | _: ExecutionError) if e.getCause != null => throw e.getCause
       }
+    }
+  }
 
-      rs.close()
-      st.close()
-      roles
+  /**
+    * 每隔versionInterval查询一次版本号,变化后所有缓存失效;
+    * 同一时间只有CAS成功的一个请求去查询,其它请求继续使用当前的缓存.
+    * 查询失败时保留原来的版本号,下一个间隔再查
+    */
+  private def checkVersion(): Unit = versionSql.foreach{sql =>
+    val now = System.currentTimeMillis()
+    val checkedAt = versionCheckedAt.get()
+    if (now - checkedAt >= versionInterval && versionCheckedAt.compareAndSet(checkedAt, now)) {
+      try {
+        val value = database.withConnection{conn =>
+          val st = conn.prepareStatement(sql)
+          try {
+            val rs = st.executeQuery()
+            if (rs.next()) String.valueOf(rs.getObject(1)) else null
+          } finally {
+            st.close()
+          }
+        }
+        if (versionValue != null && value != versionValue) invalidateAll()
+        versionValue = value
+      } catch {
+        case e: Exception => logger.warn("query authorization version failed: " + sql, e)
+      }
     }
   }
 
-  override def getPermissions(subject: Subject):Seq[Permission] = {
+  private def loadAuthorization(subjectId: String, version: Long): JdbcRealm.Authorization = {
     database.withConnection{conn =>
-      val st = conn.prepareStatement(findPermissionsSql)
-
-      val queryParam:String = subject.roles.map(_.id).mkString(",")
-      st.setString(1,queryParam)
+      authorizationSql.map(sql => queryAuthorization(conn, sql, subjectId, version)).getOrElse{
+        val roles = queryRoles(conn, subjectId)
+        JdbcRealm.Authorization(roles, queryPermissions(conn, roles), version)
+      }
+    }
+  }
 
+  private def queryAuthorization(conn: Connection, sql: String, subjectId: String, version: Long) = {
+    val st = conn.prepareStatement(sql)
+    try {
+      st.setString(1, subjectId)
       val rs = st.executeQuery()
-      val permissions = mutable.ArrayBuffer.empty[Permission]
+      val roles = mutable.LinkedHashMap.empty[String, Role]
+      val permissions = mutable.LinkedHashMap.empty[String, Permission]
+      while (rs.next()) {
+        val roleId = rs.getString(1)
+        if (roleId != null && !roles.contains(roleId)) {
+          roles.put(roleId, new SimpleRole(roleId, rs.getString(2), rs.getString(3)))
+        }
+        val permissionId = rs.getString(4)
+        if (permissionId != null && !permissions.contains(permissionId)) {
+          permissions.put(permissionId, new SimplePermission(permissionId, rs.getString(5), rs.getString(6)))
+        }
+      }
+      rs.close()
+      JdbcRealm.Authorization(roles.values.toVector, permissions.values.toVector, version)
+    } finally {
+      st.close()
+    }
+  }
 
-      while(rs.next()){
-        permissions += new SimplePermission(rs.getString(1),rs.getString(2),rs.getString(3))
+  private def queryRoles(conn: Connection, subjectId: String): Seq[Role] = {
+    val st = conn.prepareStatement(findRolesSql)
+    try {
+      st.setString(1, subjectId)
+      val rs = st.executeQuery()
+      val roles = mutable.ArrayBuffer.empty[Role]
+      while (rs.next()) {
+        roles += new SimpleRole(rs.getString(1), rs.getString(2), rs.getString(3))
       }
+      rs.close()
+      roles.toVector
+    } finally {
+      st.close()
+    }
+  }
 
+  /**
+    * in (?)展开成与角色数量相同的参数,每个角色id单独绑定
+    */
+  private def queryPermissions(conn: Connection, roles: Seq[Role]): Seq[Permission] = {
+    if (roles.isEmpty) return Seq.empty
+    val st: PreparedStatement = conn.prepareStatement(JdbcRealm.expandIn(findPermissionsSql, roles.size))
+    try {
+      var i = 1
+      roles.foreach{role =>
+        st.setString(i, role.id)
+        i += 1
+      }
+      val rs = st.executeQuery()
+      val permissions = mutable.LinkedHashMap.empty[String, Permission]
+      while (rs.next()) {
+        val id = rs.getString(1)
+        if (!permissions.contains(id)) {
+          permissions.put(id, new SimplePermission(id, rs.getString(2), rs.getString(3)))
+        }
+      }
       rs.close()
+      permissions.values.toVector
+    } finally {
       st.close()
-      permissions
     }
   }
 }
+
+object JdbcRealm {
+  private val InParam = "(?i)in\\s*\\(\\s*\\?\\s*\\)".r
+
+  private case class Authorization(roles: Seq[Role], permissions: Seq[Permission], version: Long)
+
+  private[realm] def expandIn(sql: String, size: Int): String = {
+    InParam.replaceFirstIn(sql, Iterator.fill(size)("?").mkString("in (", ",", ")"))
+  }
+}
@@ -3,15 +3,17 @@ package play.api.deadbolt.session
 import java.util.concurrent.TimeUnit
 import javax.inject.{Inject, Provider, Singleton}
 
+import akka.actor.ActorSystem
 import play.api.cache.AsyncCacheApi
-import play.api.deadbolt.session.backend.{CacheApiDao, MemorySessionDAO}
+import play.api.deadbolt.session.backend.{CacheApiDao, MemorySessionDAO, TieredSessionDAO}
 import play.api.deadbolt.session.mgt._
 import play.api.inject.{ApplicationLifecycle, Injector}
 import play.api.{Configuration, Environment}
 import play.cache.NamedCacheImpl
 import play.utils.Reflect
 
-import scala.concurrent.duration.Duration
+import scala.concurrent.Future
+import scala.concurrent.duration.{Duration, FiniteDuration}
 
 
 /**
@@ -20,6 +22,12 @@ import scala.concurrent.duration.Duration
   *   factory=""
   *   timeout=""
   *   prefix=""
+  *   near{                //可选,配置后在远程缓存前加一层本地缓存,见TieredSessionDAO
+  *     maxSize=10000
+  *     ttl=10s
+  *     writeBehind=30s    //只有访问时间变化的session合并写入远程的间隔
+  *     maxLifetime=1d     //远程保存session的时间,超过后属性没有变化的session也会失效
+  *   }
   * }
   */
 @Singleton
@@ -36,7 +44,7 @@ class CacheManagerProvider @Inject() (injector: Injector,env: Environment, conf:
         val namedCache = new NamedCacheImpl(name)
         val cacheApiKey = play.api.inject.bind[AsyncCacheApi].qualifiedWith(namedCache)
         val cachedApi = injector.instanceOf(cacheApiKey)
-        new CacheApiDao(configs, cachedApi)
+        cfg.getOptional[Configuration]("near").map(near => tiered(configs, cachedApi, near)).getOrElse(new CacheApiDao(configs, cachedApi))
       }
     }.getOrElse(new MemorySessionDAO())
 
@@ -49,5 +57,20 @@ class CacheManagerProvider @Inject() (injector: Injector,env: Environment, conf:
     val sessionManager = new DefaultSessionManager(configs,backend,factory,idGenerator)
     sessionManager
   }
+
+  private def tiered(configs: Configs, cacheApi: AsyncCacheApi, near: Configuration): SessionDAO = {
+    val dao = new TieredSessionDAO(configs, cacheApi,
+      near.getOptional[Long]("maxSize").getOrElse(10000L),
+      near.getOptional[Duration]("ttl").getOrElse(Duration(10, TimeUnit.SECONDS)),
+      near.getOptional[Duration]("maxLifetime").getOrElse(Duration(1, TimeUnit.DAYS)))
+    val writeBehind = near.getOptional[FiniteDuration]("writeBehind").getOrElse(Duration(30, TimeUnit.SECONDS))
+    val system = injector.instanceOf[ActorSystem]
+    val flushTask = system.scheduler.schedule(writeBehind, writeBehind)(dao.flush())(system.dispatcher)
+    lifecycle.addStopHook(() => {
+      flushTask.cancel()
+      Future.successful(dao.flush())
+    })
+    dao
+  }
 }
 
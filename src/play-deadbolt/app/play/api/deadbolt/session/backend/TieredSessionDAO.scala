@@ -0,0 +1,169 @@
+package play.api.deadbolt.session.backend
+
+import java.io.Serializable
+import java.util
+import java.util.Date
+import java.util.concurrent.TimeUnit
+
+import com.google.common.cache.{Cache, CacheBuilder, RemovalListener, RemovalNotification}
+import org.slf4j.LoggerFactory
+import play.api.cache.AsyncCacheApi
+import play.api.deadbolt.session.mgt.{AsyncSessionDAO, SimpleSession}
+import play.api.deadbolt.session.{Configs, Session, UnknownSessionException}
+import play.api.libs.streams.Execution.trampoline
+
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, Future}
+
+/**
+  * 两级session存储,本地有界的near cache在前,远程的{@link AsyncCacheApi}在后:
+  * <ul>
+  *   <li>先查near cache,未命中时读取远程并放入near cache;near cache中的session在nearTtl后重新从远程读取,
+  *   其它节点的修改最多延迟这么久可见</li>
+  *   <li>更新时与上次写入时的属性、超时时间和状态比较,其它变化立即写入整个session;
+  *   只有访问时间变化(touch)时由{@link #flush}定时写入单独的访问时间key,不会覆盖其它节点写入的属性,
+  *   session已经被删除(登出)时也不会重新创建</li>
+  *   <li>near cache淘汰session时,还没有写入的访问时间先写入远程</li>
+  *   <li>读取远程时取session和访问时间key中较晚的访问时间</li>
+  * </ul>
+  * session本身在远程保存maxLifetime(不小于超时时间),访问时间key保存超时时间,
+  * 超过maxLifetime属性都没有变化的session即使一直在访问也会失效.
+  * 属性值按equals比较,直接修改属性对象内部的状态不会被当作变化,需要setAttribute一个新的对象
+  */
+class TieredSessionDAO(configs: Configs, cacheApi: AsyncCacheApi, maxSize: Long, nearTtl: Duration, maxLifetime: Duration) extends AsyncSessionDAO {
+  import TieredSessionDAO._
+  private val log = LoggerFactory.getLogger(classOf[TieredSessionDAO])
+  val awaitTimeout: Duration = Duration(5,TimeUnit.SECONDS)
+
+  private val near: Cache[Serializable, Entry] = CacheBuilder.newBuilder()
+    .maximumSize(maxSize)
+    .expireAfterWrite(nearTtl.toMillis, TimeUnit.MILLISECONDS)
+    .removalListener(new RemovalListener[Serializable, Entry] {
+      override def onRemoval(n: RemovalNotification[Serializable, Entry]): Unit = {
+        if (n.wasEvicted() && n.getValue.touched) touch(n.getValue.session)
+      }
+    })
+    .build[Serializable, Entry]()
+
+  private def storeKey(sessionId: Serializable) = configs.sessionPrefix + sessionId
+
+  private def touchKey(sessionId: Serializable) = configs.sessionPrefix + sessionId + ".touch"
+
+  override def create(session: Session): Session = {
+    near.put(session.getId, new Entry(session, stateOf(session)))
+    write(session)
+    session
+  }
+
+  /**
+    * 同步读取,near cache未命中时阻塞等待远程读取;请求线程上应使用{@link #readSessionAsync}
+    */
+  @throws[UnknownSessionException]
+  override def readSession(sessionId: Serializable): Session = {
+    val entry = near.getIfPresent(sessionId)
+    if (entry != null) entry.session else Await.result(readRemote(sessionId), awaitTimeout)
+  }
+
+  /**
+    * near cache命中时返回已完成的Future,未命中时不阻塞调用线程
+    */
+  override def readSessionAsync(sessionId: Serializable): Future[Session] = {
+    val entry = near.getIfPresent(sessionId)
+    if (entry != null) Future.successful(entry.session) else readRemote(sessionId)
+  }
+
+  private def readRemote(sessionId: Serializable): Future[Session] = {
+    val sessionFuture = cacheApi.get[Session](storeKey(sessionId))
+    val touchFuture = cacheApi.get[java.lang.Long](touchKey(sessionId))
+    sessionFuture.zip(touchFuture).map {
+      case (Some(session), lastTouch) =>
+        lastTouch.foreach(t => mergeLastAccess(session, t))
+        cache(sessionId, session)
+      case _ => null
+    }(trampoline)
+  }
+
+  private def mergeLastAccess(session: Session, lastTouch: Long): Unit = session match {
+    case s: SimpleSession if s.getLastAccessTime == null || s.getLastAccessTime.getTime < lastTouch =>
+      s.setLastAccessTime(new Date(lastTouch))
+    case _ =>
+  }
+
+  /**
+    * 同一个session并发读取时只保留第一个放入near cache的对象,保证后续的修改都作用在同一个对象上
+    */
+  private def cache(sessionId: Serializable, session: Session): Session = {
+    val existing = near.asMap().putIfAbsent(sessionId, new Entry(session, stateOf(session)))
+    if (existing != null) existing.session else session
+  }
+
+  override def update(session: Session): Unit = {
+    val state = stateOf(session)
+    val entry = near.getIfPresent(session.getId)
+    if (entry != null && (entry.session eq session) && entry.state == state) {
+      entry.touched = true //只有访问时间变化,由flush合并写入
+    } else {
+      near.put(session.getId, new Entry(session, state))
+      write(session)
+    }
+  }
+
+  override def delete(session: Session): Unit = {
+    near.invalidate(session.getId) //主动删除不会触发写入
+    cacheApi.remove(storeKey(session.getId))
+    cacheApi.remove(touchKey(session.getId))
+  }
+
+  /**
+    * 写入所有只有访问时间变化的session的访问时间,并处理near cache中已过期的session
+    */
+  def flush(): Unit = {
+    near.cleanUp()
+    val it = near.asMap().values().iterator()
+    while (it.hasNext) {
+      val entry = it.next()
+      if (entry.touched) {
+        entry.touched = false
+        touch(entry.session)
+      }
+    }
+  }
+
+  private def write(session: Session): Unit = {
+    val ttl = Duration(Math.max(session.getTimeout, maxLifetime.toMillis), TimeUnit.MILLISECONDS)
+    cacheApi.set(storeKey(session.getId), session, ttl)
+      .failed.foreach(e => log.warn("write session [" + session.getId + "] failed", e))(trampoline)
+  }
+
+  /**
+    * 只写访问时间key;session已经不存在时这个key没有作用,在超时后自动过期
+    */
+  private def touch(session: Session): Unit = {
+    val lastAccess = session.getLastAccessTime
+    if (lastAccess != null) {
+      cacheApi.set(touchKey(session.getId), java.lang.Long.valueOf(lastAccess.getTime), Duration(session.getTimeout, TimeUnit.MILLISECONDS))
+        .failed.foreach(e => log.warn("touch session [" + session.getId + "] failed", e))(trampoline)
+    }
+  }
+
+  private def stateOf(session: Session): SessionState = {
+    val keys = session.getAttributeKeys
+    val attributes = new util.HashMap[String, AnyRef](keys.size * 2)
+    val it = keys.iterator()
+    while (it.hasNext) {
+      val key = it.next()
+      attributes.put(key, session.getAttribute(key))
+    }
+    SessionState(session.getTimeout, session.isValid, attributes)
+  }
+}
+
+object TieredSessionDAO {
+
+  /** 上次写入远程时session的状态,不包括访问时间 **/
+  private case class SessionState(timeout: Long, valid: Boolean, attributes: util.Map[String, AnyRef])
+
+  private class Entry(val session: Session, val state: SessionState) {
+    @volatile var touched = false
+  }
+}
@@ -43,6 +43,8 @@ import play.api.deadbolt.session._
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable
+import scala.concurrent.Future
+import scala.util.Try
 /**
   * Abstract implementation supporting the {@link NativeSessionManager NativeSessionManager} interface, supporting
   * {@link SessionListener SessionListener}s and application of the
@@ -93,6 +95,16 @@ abstract class AbstractNativeSessionManager extends NativeSessionManager {
     session
   }
 
+  /**
+    * 异步获取session,SessionDAO支持异步读取时不阻塞调用线程
+    */
+  override def getSessionAsync(key: SessionKey): Future[Session] = {
+    if (key == null) return Future.failed(new NullPointerException("SessionKey argument cannot be null."))
+    doGetSessionAsync(key)
+  }
+
+  protected def doGetSessionAsync(key: SessionKey): Future[Session] = Future.fromTry(Try(doGetSession(key)))
+
   @throws[SessionException]
   private def lookupSession(key: SessionKey) = {
     if (key == null) throw new NullPointerException("SessionKey argument cannot be null.")
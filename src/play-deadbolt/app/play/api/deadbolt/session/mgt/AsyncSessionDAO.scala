@@ -0,0 +1,18 @@
+package play.api.deadbolt.session.mgt
+
+import java.io.Serializable
+
+import play.api.deadbolt.session.Session
+
+import scala.concurrent.Future
+
+/**
+  * 支持异步读取的{@link SessionDAO},读取远程存储时不阻塞请求线程
+  */
+trait AsyncSessionDAO extends SessionDAO {
+
+  /**
+    * 异步读取session,不存在时返回null
+    */
+  def readSessionAsync(sessionId: Serializable): Future[Session]
+}
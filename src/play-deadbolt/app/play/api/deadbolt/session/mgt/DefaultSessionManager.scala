@@ -41,6 +41,9 @@ import org.apache.commons.lang3.StringUtils
 import org.slf4j.LoggerFactory
 import play.api.deadbolt.session._
 import play.api.deadbolt.session.backend.MemorySessionDAO
+import play.api.libs.streams.Execution.trampoline
+
+import scala.concurrent.Future
 
 /**
   * Default business-tier implementation of a {@link ValidatingSessionManager}.  All session CRUD operations are
@@ -153,6 +156,17 @@ class DefaultSessionManager(var configs: Configs, var sessionDAO: SessionDAO, va
     }
   }
 
+  override protected def doGetSessionAsync(key: SessionKey): Future[Session] = sessionDAO match {
+    case dao: AsyncSessionDAO =>
+      val sessionId = getSessionId(key)
+      if (sessionId == null) {
+        Future.successful(null)
+      } else {
+        dao.readSessionAsync(sessionId).map(s => if (s != null && validate(s, key)) s else null)(trampoline)
+      }
+    case _ => super.doGetSessionAsync(key)
+  }
+
   @throws[InvalidSessionException]
   protected def validate(session: Session, key: SessionKey): Boolean = try{
     doValidate(session)
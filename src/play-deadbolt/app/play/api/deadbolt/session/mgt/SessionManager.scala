@@ -37,6 +37,9 @@ package play.api.deadbolt.session.mgt
 
 import play.api.deadbolt.session.{InvalidSessionException, Session, SessionException}
 
+import scala.concurrent.Future
+import scala.util.Try
+
 trait SessionManager {
   /**
     * Starts a new session based on the specified contextual initialization data, which can be used by the underlying
@@ -69,6 +72,12 @@ trait SessionManager {
   @throws[SessionException]
   def getSession(key: SessionKey): Session
 
+  /**
+    * Asynchronous variant of {@link #getSession(SessionKey)}, the default implementation
+    * simply completes with the result of the blocking lookup.
+    */
+  def getSessionAsync(key: SessionKey): Future[Session] = Future.fromTry(Try(getSession(key)))
+
   def destroy(session: Session):Unit
 
   @throws[InvalidSessionException]
@@ -0,0 +1,175 @@
+package play.api.deadbolt.realm
+
+import java.lang.reflect.{InvocationHandler, Method, Proxy}
+import java.sql.{Connection, PreparedStatement, ResultSet, SQLException}
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.junit.Assert._
+import org.junit.{Before, Test}
+import play.api.Configuration
+import play.api.db.Database
+import play.api.deadbolt.authz.SimpleSubject
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+/**
+  * 用动态代理模拟Database,按sql返回预先设置的行并记录每个sql的查询次数
+  */
+class JdbcRealmTest {
+  import JdbcRealmTest._
+
+  private val subject = new SimpleSubject("u1", "jack", "Jack", Nil, Nil, true)
+  private var db: FakeDatabase = _
+
+  @Before
+  def setup(): Unit = {
+    db = new FakeDatabase
+    db.rows(RolesSql) = Seq(Seq("r1", "admin", "admin"), Seq("r2", "user", "user"))
+    db.rows(PermissionsSql) = Seq(Seq("p1", "read", "read"), Seq("p2", "write", "write"), Seq("p1", "read", "read"))
+    db.rows(VersionSql) = Seq(Seq("1"))
+  }
+
+  private def realm(settings: (String, Any)*): JdbcRealm = {
+    val conf = Configuration.from(Map(
+      "play.deadbolt.authz.realm.jdbc.rolesSql" -> RolesSql,
+      "play.deadbolt.authz.realm.jdbc.permissionsSql" -> PermissionsSql) ++ settings)
+    new JdbcRealm(null, conf, db.proxy)
+  }
+
+  @Test
+  def testCacheHit(): Unit = {
+    val jdbc = realm()
+    assertEquals(Seq("r1", "r2"), jdbc.getRoles(subject).map(_.id))
+    assertEquals(Seq("p1", "p2"), jdbc.getPermissions(subject).map(_.id))
+    assertEquals(Seq("r1", "r2"), jdbc.getRoles(new SimpleSubject(" u1 ", "jack", "Jack", Nil, Nil, true)).map(_.id))
+    assertEquals(1, db.queries(RolesSql))
+    assertEquals(1, db.queries(PermissionsSql))
+
+    //缓存的角色不能被调用方修改
+    assertFalse(jdbc.getRoles(subject).isInstanceOf[mutable.Seq[_]])
+  }
+
+  @Test
+  def testInvalidate(): Unit = {
+    val jdbc = realm()
+    jdbc.getRoles(subject)
+    db.rows(RolesSql) = Seq(Seq("r3", "guest", "guest"))
+    assertEquals(Seq("r1", "r2"), jdbc.getRoles(subject).map(_.id))
+
+    jdbc.invalidate("u1")
+    assertEquals(Seq("r3"), jdbc.getRoles(subject).map(_.id))
+    assertEquals(2, db.queries(RolesSql))
+
+    db.rows(RolesSql) = Nil
+    jdbc.invalidateAll()
+    assertTrue(jdbc.getRoles(subject).isEmpty)
+    assertTrue(jdbc.getPermissions(subject).isEmpty)
+    assertEquals(3, db.queries(RolesSql))
+  }
+
+  /**
+    * 版本号变化后所有缓存失效;查询版本号失败时继续使用缓存
+    */
+  @Test
+  def testVersionBump(): Unit = {
+    val jdbc = realm(
+      "play.deadbolt.authz.realm.jdbc.cache.versionSql" -> VersionSql,
+      "play.deadbolt.authz.realm.jdbc.cache.versionInterval" -> "0s")
+    jdbc.getRoles(subject)
+    jdbc.getRoles(subject)
+    assertEquals(1, db.queries(RolesSql))
+    assertEquals(2, db.queries(VersionSql))
+
+    db.rows(VersionSql) = Seq(Seq("2"))
+    db.rows(RolesSql) = Seq(Seq("r3", "guest", "guest"))
+    assertEquals(Seq("r3"), jdbc.getRoles(subject).map(_.id))
+    assertEquals(2, db.queries(RolesSql))
+
+    db.failures(VersionSql) = new SQLException("version table missing")
+    assertEquals(Seq("r3"), jdbc.getRoles(subject).map(_.id))
+    assertEquals(2, db.queries(RolesSql))
+  }
+
+  /**
+    * 查询失败时抛出原来的异常,而不是缓存包装后的异常,失败的结果不缓存
+    */
+  @Test
+  def testLoadFailure(): Unit = {
+    val jdbc = realm()
+    val cause = new SQLException("connection refused")
+    db.failures(RolesSql) = cause
+    try {
+      jdbc.getRoles(subject)
+      fail("roles loaded")
+    } catch {
+      case e: SQLException => assertSame(cause, e)
+    }
+
+    db.failures.remove(RolesSql)
+    assertEquals(Seq("r1", "r2"), jdbc.getRoles(subject).map(_.id))
+  }
+}
+
+object JdbcRealmTest {
+  val RolesSql = "select id,name,value from user_roles where user_id = ?"
+  val PermissionsSql = "select id,name,value from roles_permissions where role_id in (?)"
+  val VersionSql = "select max(version) from authz_version"
+
+  class FakeDatabase {
+    val rows: mutable.Map[String, Seq[Seq[String]]] = new ConcurrentHashMap[String, Seq[Seq[String]]]().asScala
+    val failures: mutable.Map[String, SQLException] = new ConcurrentHashMap[String, SQLException]().asScala
+    private val counts = new ConcurrentHashMap[String, AtomicInteger]()
+
+    def queries(sql: String): Int = Option(counts.get(sql)).map(_.get).getOrElse(0)
+
+    /** in (?)展开后的sql按展开前的sql统计 */
+    private def normalize(sql: String): String = sql.replaceAll("in \\(\\?(,\\?)*\\)", "in (?)")
+
+    private def proxyOf[T](clazz: Class[T])(handler: (Method, Array[AnyRef]) => AnyRef): T =
+      Proxy.newProxyInstance(getClass.getClassLoader, Array[Class[_]](clazz), new InvocationHandler {
+        override def invoke(proxy: Any, method: Method, args: Array[AnyRef]): AnyRef = handler(method, args)
+      }).asInstanceOf[T]
+
+    private def resultSet(data: Seq[Seq[String]]): ResultSet = {
+      var row = -1
+      proxyOf(classOf[ResultSet]) { (method, args) =>
+        method.getName match {
+          case "next" => row += 1; java.lang.Boolean.valueOf(row < data.size)
+          case "getString" | "getObject" => data(row)(args(0).asInstanceOf[Integer] - 1)
+          case _ => null
+        }
+      }
+    }
+
+    private def statement(sql: String): PreparedStatement = proxyOf(classOf[PreparedStatement]) { (method, _) =>
+      method.getName match {
+        case "executeQuery" =>
+          val key = normalize(sql)
+          counts.computeIfAbsent(key, new java.util.function.Function[String, AtomicInteger] {
+            override def apply(t: String) = new AtomicInteger()
+          }).incrementAndGet()
+          failures.get(key).foreach(e => throw e)
+          resultSet(rows.getOrElse(key, Nil))
+        case _ => null
+      }
+    }
+
+    private val connection: Connection = proxyOf(classOf[Connection]) { (method, args) =>
+      method.getName match {
+        case "prepareStatement" => statement(args(0).asInstanceOf[String])
+        case _ => null
+      }
+    }
+
+    val proxy: Database = proxyOf(classOf[Database]) { (method, args) =>
+      method.getName match {
+        case "withConnection" | "withTransaction" => args.last.asInstanceOf[Connection => AnyRef].apply(connection)
+        case "getConnection" => connection
+        case "name" => "fake"
+        case _ => null
+      }
+    }
+  }
+}
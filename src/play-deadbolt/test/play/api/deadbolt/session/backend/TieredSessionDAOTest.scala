@@ -0,0 +1,167 @@
+package play.api.deadbolt.session.backend
+
+import java.util.Date
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+import java.util.concurrent.atomic.AtomicInteger
+
+import akka.Done
+import org.junit.Assert._
+import org.junit.{Before, Test}
+import play.api.cache.AsyncCacheApi
+import play.api.deadbolt.session.mgt.SimpleSession
+import play.api.deadbolt.session.Configs
+
+import scala.collection.mutable
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Future, Promise}
+import scala.reflect.ClassTag
+
+/**
+  * 用内存中的{@link AsyncCacheApi}代替远程缓存,hold时远程读取在release之前不会完成
+  */
+class TieredSessionDAOTest {
+  private val configs = new Configs
+  private var remote: MemoryCacheApi = _
+  private var dao: TieredSessionDAO = _
+
+  @Before
+  def setup(): Unit = {
+    remote = new MemoryCacheApi
+    dao = new TieredSessionDAO(configs, remote, 100, Duration(1, TimeUnit.MINUTES), Duration(1, TimeUnit.HOURS))
+  }
+
+  private def newSession(id: String): SimpleSession = {
+    val session = new SimpleSession("127.0.0.1")
+    session.setId(id)
+    session.setTimeout(configs.globalSessionTimeout)
+    session
+  }
+
+  @Test
+  def testNearHit(): Unit = {
+    val session = newSession("s1")
+    dao.create(session)
+    assertTrue(remote.contains(configs.sessionPrefix + "s1"))
+
+    //near cache命中时不读取远程,返回同一个对象
+    val future = dao.readSessionAsync("s1")
+    assertTrue(future.isCompleted)
+    assertSame(session, future.value.get.get)
+    assertSame(session, dao.readSession("s1"))
+    assertEquals(0, remote.gets.get())
+  }
+
+  @Test
+  def testNearMiss(): Unit = {
+    val session = newSession("s1")
+    session.setLastAccessTime(new Date(1000L))
+    remote.set(configs.sessionPrefix + "s1", session)
+    remote.set(configs.sessionPrefix + "s1.touch", java.lang.Long.valueOf(123456789L))
+
+    //未命中时不阻塞调用线程,远程读取完成后放入near cache
+    remote.hold()
+    val future = dao.readSessionAsync("s1")
+    assertFalse(future.isCompleted)
+    remote.release()
+    assertTrue(future.isCompleted)
+    val loaded = future.value.get.get
+    assertSame(session, loaded)
+    assertEquals(123456789L, loaded.getLastAccessTime.getTime)
+    assertEquals(2, remote.gets.get())
+
+    assertSame(loaded, dao.readSessionAsync("s1").value.get.get)
+    assertEquals(2, remote.gets.get())
+
+    //远程不存在时返回null,不放入near cache
+    assertNull(dao.readSessionAsync("unknown").value.get.get)
+    assertNull(dao.readSession("unknown"))
+  }
+
+  @Test
+  def testInvalidation(): Unit = {
+    val session = newSession("s1")
+    dao.create(session)
+    dao.delete(session)
+    assertFalse(remote.contains(configs.sessionPrefix + "s1"))
+    assertNull(dao.readSessionAsync("s1").value.get.get)
+
+    //登出后的flush不会重新写入session
+    dao.flush()
+    assertFalse(remote.contains(configs.sessionPrefix + "s1"))
+  }
+
+  @Test
+  def testTouchOnlyWritesAccessTime(): Unit = {
+    val session = newSession("s1")
+    dao.create(session)
+    val sets = remote.sets.get()
+
+    session.setLastAccessTime(new Date(987654321L))
+    dao.update(session)
+    assertEquals(sets, remote.sets.get())
+    dao.flush()
+    assertEquals(sets + 1, remote.sets.get())
+    assertEquals(java.lang.Long.valueOf(987654321L), remote.peek(configs.sessionPrefix + "s1.touch"))
+
+    //属性变化立即写入整个session
+    session.setAttribute("user", "u1")
+    dao.update(session)
+    assertEquals(sets + 2, remote.sets.get())
+  }
+}
+
+class MemoryCacheApi extends AsyncCacheApi {
+  private val map = new ConcurrentHashMap[String, Any]()
+  private val held = mutable.Buffer[() => Unit]()
+  @volatile private var holding = false
+  val gets = new AtomicInteger()
+  val sets = new AtomicInteger()
+
+  def contains(key: String): Boolean = map.containsKey(key)
+
+  def peek(key: String): Any = map.get(key)
+
+  def hold(): Unit = holding = true
+
+  def release(): Unit = {
+    holding = false
+    held.synchronized {
+      held.foreach(_.apply())
+      held.clear()
+    }
+  }
+
+  override def set(key: String, value: Any, expiration: Duration): Future[Done] = {
+    sets.incrementAndGet()
+    map.put(key, value)
+    Future.successful(Done)
+  }
+
+  override def remove(key: String): Future[Done] = {
+    map.remove(key)
+    Future.successful(Done)
+  }
+
+  override def getOrElseUpdate[A: ClassTag](key: String, expiration: Duration)(orElse: => Future[A]): Future[A] =
+    get[A](key).flatMap {
+      case Some(value) => Future.successful(value)
+      case None => orElse.map { value => map.put(key, value); value }(play.api.libs.streams.Execution.trampoline)
+    }(play.api.libs.streams.Execution.trampoline)
+
+  override def get[T: ClassTag](key: String): Future[Option[T]] = {
+    gets.incrementAndGet()
+    val value = Option(map.get(key)).map(_.asInstanceOf[T])
+    if (holding) {
+      val promise = Promise[Option[T]]()
+      held.synchronized(held += (() => promise.success(value)))
+      promise.future
+    } else {
+      Future.successful(value)
+    }
+  }
+
+  override def removeAll(): Future[Done] = {
+    map.clear()
+    Future.successful(Done)
+  }
+}
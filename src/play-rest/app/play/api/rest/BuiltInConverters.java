@@ -20,19 +20,32 @@ import org.apache.http.HttpResponse;
 import play.api.rest.converter.StringConverterFactory;
 import play.api.rest.http.Streaming;
 import play.libs.transport.http.HTTPUtils;
+import play.libs.transport.http.client.BufferedBytesEntity;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 
 final class BuiltInConverters extends Converter.Factory {
   @Override
   public Converter<HttpResponse, ?> responseBodyConverter(Type type, Annotation[] annotations, Rest retrofit) {
+    boolean streaming = Utils.isAnnotationPresent(annotations, Streaming.class);
     if (type == HttpResponse.class) {
-      return Utils.isAnnotationPresent(annotations, Streaming.class)
+      return streaming
           ? StreamingResponseBodyConverter.INSTANCE
           : BufferingResponseBodyConverter.INSTANCE;
     }
+    if (type == HttpEntity.class) {
+      return streaming
+          ? StreamingEntityConverter.INSTANCE
+          : BufferingEntityConverter.INSTANCE;
+    }
+    if (type == InputStream.class) {
+      return streaming
+          ? StreamingInputStreamConverter.INSTANCE
+          : BufferingInputStreamConverter.INSTANCE;
+    }
     if (type == Void.class) {
       return VoidResponseBodyConverter.INSTANCE;
     }
@@ -98,9 +111,64 @@ final class BuiltInConverters extends Converter.Factory {
 
     @Override
     public HttpResponse convert(HttpResponse value) throws IOException {
+      value.setEntity(buffer(value));
       return value;
     }
   }
+
+  /** 没有{@link Streaming}时把响应内容读到内存并释放连接,调用方可以随意多次读取 */
+  static HttpEntity buffer(HttpResponse value) throws IOException {
+    HttpEntity entity = value.getEntity();
+    if (entity == null || entity instanceof BufferedBytesEntity) {
+      return entity;
+    }
+    try {
+      byte[] bytes = HTTPUtils.toByteArray(entity);
+      BufferedBytesEntity buffered = new BufferedBytesEntity(bytes, bytes.length);
+      buffered.setContentType(entity.getContentType());
+      buffered.setContentEncoding(entity.getContentEncoding());
+      return buffered;
+    } finally {
+      HTTPUtils.closeQuietly(value);
+    }
+  }
+
+  /** 有{@link Streaming}时直接返回响应流,调用方读取完后负责关闭 */
+  static final class StreamingEntityConverter implements Converter<HttpResponse, HttpEntity> {
+    static final StreamingEntityConverter INSTANCE = new StreamingEntityConverter();
+
+    @Override
+    public HttpEntity convert(HttpResponse value) {
+      return value.getEntity();
+    }
+  }
+
+  static final class BufferingEntityConverter implements Converter<HttpResponse, HttpEntity> {
+    static final BufferingEntityConverter INSTANCE = new BufferingEntityConverter();
+
+    @Override
+    public HttpEntity convert(HttpResponse value) throws IOException {
+      return buffer(value);
+    }
+  }
+
+  static final class StreamingInputStreamConverter implements Converter<HttpResponse, InputStream> {
+    static final StreamingInputStreamConverter INSTANCE = new StreamingInputStreamConverter();
+
+    @Override
+    public InputStream convert(HttpResponse value) throws IOException {
+      return value.getEntity().getContent();
+    }
+  }
+
+  static final class BufferingInputStreamConverter implements Converter<HttpResponse, InputStream> {
+    static final BufferingInputStreamConverter INSTANCE = new BufferingInputStreamConverter();
+
+    @Override
+    public InputStream convert(HttpResponse value) throws IOException {
+      return buffer(value).getContent();
+    }
+  }
   static final class ToStringConverter implements Converter<Object, String> {
     static final ToStringConverter INSTANCE = new ToStringConverter();
 
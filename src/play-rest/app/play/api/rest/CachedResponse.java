@@ -0,0 +1,191 @@
+package play.api.rest;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import play.libs.transport.http.HTTPUtils;
+import play.libs.transport.http.client.BufferedBytesEntity;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * 读到内存中的响应,合并请求的多个调用方和缓存共用,每次通过{@link #toResponse()}生成一个新的HttpResponse
+ */
+final class CachedResponse {
+    private final StatusLine statusLine;
+    private final Header[] headers;
+    private final byte[] body;
+    private final Header contentType;
+    private final Header contentEncoding;
+    private final long expiresAt;
+    private final boolean storable;
+
+    private CachedResponse(StatusLine statusLine, Header[] headers, byte[] body, Header contentType,
+                           Header contentEncoding, long expiresAt, boolean storable) {
+        this.statusLine = statusLine;
+        this.headers = headers;
+        this.body = body;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.expiresAt = expiresAt;
+        this.storable = storable;
+    }
+
+    /**
+     * 读取完整的响应内容并释放连接
+     *
+     * @param defaultTtl 响应没有给出缓存时间时使用的缓存时间,毫秒
+     */
+    static CachedResponse of(HttpResponse resp, long defaultTtl, long now) throws IOException {
+        try {
+            HttpEntity entity = resp.getEntity();
+            byte[] body = entity == null ? new byte[0] : HTTPUtils.toByteArray(entity);
+            long freshness = freshnessOf(resp, defaultTtl, now);
+            boolean storable = resp.getStatusLine().getStatusCode() == HttpStatus.SC_OK && !varyAll(resp)
+                    && freshness >= 0 && (freshness > 0 || hasValidators(resp));
+            return new CachedResponse(resp.getStatusLine(), resp.getAllHeaders(), body,
+                    entity == null ? null : entity.getContentType(),
+                    entity == null ? null : entity.getContentEncoding(),
+                    now + Math.max(freshness, 0), storable);
+        } finally {
+            HTTPUtils.closeQuietly(resp);
+        }
+    }
+
+    /**
+     * 304响应:内容不变,使用新的响应头重新计算缓存时间
+     */
+    CachedResponse revalidate(HttpResponse notModified, long defaultTtl, long now) {
+        HttpResponse merged = new BasicHttpResponse(statusLine);
+        merged.setHeaders(headers);
+        for (Header header : notModified.getAllHeaders()) {
+            merged.setHeader(header);
+        }
+        HTTPUtils.closeQuietly(notModified);
+        long freshness = freshnessOf(merged, defaultTtl, now);
+        return new CachedResponse(statusLine, merged.getAllHeaders(), body, contentType, contentEncoding,
+                now + Math.max(freshness, 0), freshness >= 0 && !varyAll(merged));
+    }
+
+    /**
+     * 缓存占用的大致字节数,字符按两个字节计算
+     */
+    int weight() {
+        int weight = body.length;
+        for (Header header : headers) {
+            weight += (header.getName().length() + header.getValue().length()) * 2;
+        }
+        return weight;
+    }
+
+    HttpResponse toResponse() {
+        BasicHttpResponse resp = new BasicHttpResponse(statusLine);
+        resp.setHeaders(headers);
+        BufferedBytesEntity entity = new BufferedBytesEntity(body, body.length);
+        entity.setContentType(contentType);
+        entity.setContentEncoding(contentEncoding);
+        resp.setEntity(entity);
+        return resp;
+    }
+
+    boolean isFresh(long now) {
+        return now < expiresAt;
+    }
+
+    boolean isStorable() {
+        return storable;
+    }
+
+    /**
+     * 过期后重新验证,服务端内容没有变化时返回304
+     */
+    void addConditionalHeaders(HttpUriRequest req) {
+        Header etag = first(HttpHeaders.ETAG);
+        if (etag != null) {
+            req.setHeader(HttpHeaders.IF_NONE_MATCH, etag.getValue());
+        }
+        Header lastModified = first(HttpHeaders.LAST_MODIFIED);
+        if (lastModified != null) {
+            req.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified.getValue());
+        }
+    }
+
+    private Header first(String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasValidators(HttpResponse resp) {
+        return resp.containsHeader(HttpHeaders.ETAG) || resp.containsHeader(HttpHeaders.LAST_MODIFIED);
+    }
+
+    /**
+     * Vary: *表示响应还取决于请求头以外的因素,不能复用
+     */
+    private static boolean varyAll(HttpResponse resp) {
+        for (Header header : resp.getHeaders(HttpHeaders.VARY)) {
+            for (HeaderElement element : header.getElements()) {
+                if ("*".equals(element.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 计算响应可以直接使用的时间,毫秒:no-store和private返回-1(缓存在所有调用方之间共用),no-cache返回0,
+     * 否则依次使用max-age、Expires和默认缓存时间,并扣除Age
+     */
+    static long freshnessOf(HttpResponse resp, long defaultTtl, long now) {
+        long freshness = -2;
+        for (Header header : resp.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+            for (HeaderElement element : header.getElements()) {
+                String name = element.getName();
+                if ("no-store".equalsIgnoreCase(name) || "private".equalsIgnoreCase(name)) {
+                    return -1;
+                } else if ("no-cache".equalsIgnoreCase(name)) {
+                    freshness = 0;
+                } else if ("max-age".equalsIgnoreCase(name) && freshness != 0) {
+                    freshness = parseSeconds(element.getValue()) * 1000;
+                }
+            }
+        }
+        if (freshness == -2) {
+            Header expires = resp.getFirstHeader(HttpHeaders.EXPIRES);
+            Date expiresAt = expires == null ? null : DateUtils.parseDate(expires.getValue());
+            if (expires != null) {
+                Header date = resp.getFirstHeader(HttpHeaders.DATE);
+                Date dateAt = date == null ? null : DateUtils.parseDate(date.getValue());
+                freshness = expiresAt == null ? 0 : expiresAt.getTime() - (dateAt == null ? now : dateAt.getTime());
+            } else {
+                freshness = defaultTtl;
+            }
+        }
+        Header age = resp.getFirstHeader(HttpHeaders.AGE);
+        if (age != null) {
+            freshness -= parseSeconds(age.getValue()) * 1000;
+        }
+        return Math.max(freshness, 0);
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return value == null ? 0 : Math.max(Long.parseLong(value.trim()), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -25,32 +25,64 @@ public class HttpCallable<T> implements Callable<Promise<T>> {
     @Override
     public Promise<T> call() throws Exception {
         HttpUriRequest req = serviceMethod.toCall(args);
+        if (!serviceMethod.isCoalesce()) {
+            return execute(req).map(this::toResponse);
+        }
+        //合并相同的请求,可缓存的方法先查缓存,过期的缓存带上ETag/Last-Modified重新验证
+        ResponseCache cache = rest.getResponseCache();
+        String key = ResponseCache.keyOf(req);
+        CachedResponse cached = serviceMethod.isCacheable() ? cache.get(key) : null;
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            return Promise.pure(cached).map(c -> toResponse(c.toResponse()));
+        }
+        Promise<CachedResponse> shared = cache.coalesce(key, () -> {
+            if (cached != null) {
+                cached.addConditionalHeaders(req);
+            }
+            return execute(req).map(resp -> {
+                try {
+                    return cache.complete(key, cached, resp, serviceMethod.isCacheable(), serviceMethod.getCacheTtl());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        });
+        return shared.map(c -> toResponse(c.toResponse()));
+    }
+
+    private Promise<HttpResponse> execute(HttpUriRequest req) {
         HTTPInvokerContext context = new HTTPInvokerContext(rest.callFactory());
         context.setExecutionContext(rest.getCallbackExecutor());
         context.setLoadBalancer(rest.getLoadBalancer());
-        Promise<HttpResponse> result = HTTP.makeHTTP(rest.tracer(),req,new RawBodyHandler(),context);
-        return result.map((resp) -> {
-            int code = resp.getStatusLine().getStatusCode();
-            if (code < 200 || code >= 300) {
-                try {
-                    // Buffer the entire body to avoid future I/O.
-                    //ResponseBody bufferedBody = Utils.buffer(rawBody);
-                    throw new HttpResponseException(code,HTTPUtils.toString(resp.getEntity()));
-                } finally {
-                    HTTPUtils.closeQuietly(resp);
-                }
-            }
+        context.setHedgePolicy(rest.getHedgePolicy());
+        return HTTP.makeHTTP(rest.tracer(),req,new RawBodyHandler(),context);
+    }
+
+    private T toResponse(HttpResponse resp) {
+        int code = resp.getStatusLine().getStatusCode();
+        if (code < 200 || code >= 300) {
             try {
-                if (code == 204 || code == 205) {
-                    HTTPUtils.closeQuietly(resp);
-                    return null;
-                }
-                return serviceMethod.toResponse(resp);
-            } catch (IOException e) {
+                // Buffer the entire body to avoid future I/O.
+                //ResponseBody bufferedBody = Utils.buffer(rawBody);
+                throw new HttpResponseException(code,HTTPUtils.toString(resp.getEntity()));
+            } finally {
                 HTTPUtils.closeQuietly(resp);
-                throw new RuntimeException(e);
             }
-        });
+        }
+        try {
+            if (code == 204 || code == 205) {
+                HTTPUtils.closeQuietly(resp);
+                return null;
+            }
+            //@Streaming方法直接返回未缓冲的响应流,由调用方关闭;其它方法在转换器中读完并释放连接
+            return serviceMethod.toResponse(resp);
+        } catch (IOException e) {
+            HTTPUtils.closeQuietly(resp);
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            HTTPUtils.closeQuietly(resp);
+            throw e;
+        }
     }
 
 }
@@ -1,6 +1,7 @@
 package play.api.rest;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -15,6 +16,23 @@ public class ReqBuilder {
     private String contentType;
     private RequestBuilder requestBuilder;
     private boolean hasBody;
+    private RequestTemplate template;
+    private String[] pathValues;
+
+    /**
+     * 使用{@link ServiceMethod}预编译的模板,路径参数只记录参数值,build时一次拼接
+     */
+    ReqBuilder(RequestTemplate template) {
+        this.template = template;
+        this.baseUrl = template.baseUri;
+        this.contentType = template.contentType;
+        this.requestBuilder = RequestBuilder.create(template.method);
+        this.hasBody = template.hasBody;
+        this.pathValues = new String[template.paramNames.length];
+        for (Header header : template.headers) {
+            requestBuilder.addHeader(header);
+        }
+    }
 
     public ReqBuilder(String method, String baseUrl, String relativeUrl, String contentType, Map<String,String> headers, boolean hasBody) {
         this.baseUrl = URI.create(baseUrl);
@@ -65,6 +83,10 @@ public class ReqBuilder {
     }
 
     public HttpUriRequest build(){
+        if (template != null && template.hasUrl()) {
+            requestBuilder.setUri(template.expand(pathValues));
+            return requestBuilder.build();
+        }
         URI relativeUrl = URI.create(this.relativeUrl);
         URI url = null;
         if(StringUtils.isNotBlank(relativeUrl.getScheme())){
@@ -82,6 +104,14 @@ public class ReqBuilder {
 
 
     public void addPathParam(String name, String value) {
+        if (template != null && template.hasUrl()) {
+            int index = template.indexOf(name);
+            if (index < 0) {
+                throw new AssertionError();
+            }
+            pathValues[index] = value;
+            return;
+        }
         if (relativeUrl == null) {
             // The relative URL is cleared when the first query parameter is set.
             throw new AssertionError();
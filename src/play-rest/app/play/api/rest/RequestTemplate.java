@@ -0,0 +1,201 @@
+package play.api.rest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * 一个{@link ServiceMethod}预编译好的请求模板,创建ServiceMethod时生成一次:
+ * <ul>
+ *     <li>相对路径和baseUrl提前拼接成绝对地址,按路径参数切分成若干固定片段,每次调用只把参数值填到对应位置</li>
+ *     <li>固定的请求头提前生成{@link Header}对象,每次调用直接复用</li>
+ * </ul>
+ * 原来每次调用都要String.replace替换路径参数,再URI.create并resolve baseUrl
+ */
+final class RequestTemplate {
+    //路径参数占位符,解析baseUrl时{}不是合法的URI字符,先替换成编码后的形式
+    private static final String MARKER_START = "%7B";
+    private static final String MARKER_END = "%7D";
+
+    final String method;
+    final URI baseUri;
+    final String contentType;
+    final boolean hasBody;
+    final Header[] headers;
+    /** 路径参数名,去重后的顺序 */
+    final String[] paramNames;
+    /** 绝对地址中的固定片段,比slots多一个;相对路径为空(使用@Url)时为null */
+    private final String[] literals;
+    /** 每个占位符对应paramNames中的下标 */
+    private final int[] slots;
+    private final int literalLength;
+    /** 没有路径参数时地址固定不变,直接复用 */
+    private final URI fixedUri;
+    /** scheme部分含有路径参数(如@GET("{url}")),填入参数后才能判断是否需要相对baseUrl解析 */
+    private final boolean resolveLate;
+
+    RequestTemplate(String method, String baseUrl, String relativeUrl, String contentType,
+                    Map<String, String> headers, boolean hasBody) {
+        this.method = method;
+        this.baseUri = URI.create(baseUrl);
+        this.contentType = contentType;
+        this.hasBody = hasBody;
+        this.headers = compileHeaders(headers);
+
+        if (relativeUrl == null) {
+            this.paramNames = new String[0];
+            this.literals = null;
+            this.slots = new int[0];
+            this.literalLength = 0;
+            this.fixedUri = null;
+            this.resolveLate = false;
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+        Matcher m = ServiceMethod.PARAM_URL_REGEX.matcher(relativeUrl);
+        StringBuffer marked = new StringBuffer(relativeUrl.length());
+        while (m.find()) {
+            if (!names.contains(m.group(1))) {
+                names.add(m.group(1));
+            }
+            m.appendReplacement(marked, MARKER_START + m.group(1) + MARKER_END);
+        }
+        m.appendTail(marked);
+        this.paramNames = names.toArray(new String[names.size()]);
+
+        //与ReqBuilder.build相同的规则: 带scheme的相对路径直接使用,否则相对baseUrl解析
+        this.resolveLate = paramInScheme(relativeUrl);
+        String absolute;
+        if (resolveLate) {
+            absolute = marked.toString();
+        } else {
+            URI relative = URI.create(marked.toString());
+            absolute = StringUtils.isNotBlank(relative.getScheme())
+                    ? relative.toString() : baseUri.resolve(relative).toString();
+        }
+
+        List<String> literalList = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        int from = 0;
+        int length = 0;
+        while (true) {
+            int start = nextMarker(absolute, from);
+            if (start < 0) {
+                break;
+            }
+            int end = absolute.indexOf(MARKER_END, start + MARKER_START.length());
+            String literal = absolute.substring(from, start);
+            literalList.add(literal);
+            length += literal.length();
+            slotList.add(names.indexOf(absolute.substring(start + MARKER_START.length(), end)));
+            from = end + MARKER_END.length();
+        }
+        String tail = absolute.substring(from);
+        literalList.add(tail);
+        length += tail.length();
+
+        this.literals = literalList.toArray(new String[literalList.size()]);
+        this.slots = new int[slotList.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = slotList.get(i);
+        }
+        this.literalLength = length;
+        this.fixedUri = slots.length == 0 ? URI.create(literals[0]) : null;
+    }
+
+    /**
+     * 第一个':','/','?','#'之前出现路径参数时,参数值可能带有scheme
+     */
+    private static boolean paramInScheme(String relativeUrl) {
+        int brace = relativeUrl.indexOf('{');
+        if (brace < 0) {
+            return false;
+        }
+        for (int i = 0; i < brace; i++) {
+            char c = relativeUrl.charAt(i);
+            if (c == ':' || c == '/' || c == '?' || c == '#') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查找下一个由构造函数插入的占位符,只认可已知的参数名,避免误伤url中原本就有的%7B
+     */
+    private int nextMarker(String url, int from) {
+        int start = url.indexOf(MARKER_START, from);
+        while (start >= 0) {
+            int end = url.indexOf(MARKER_END, start + MARKER_START.length());
+            if (end < 0) {
+                return -1;
+            }
+            String name = url.substring(start + MARKER_START.length(), end);
+            for (String paramName : paramNames) {
+                if (paramName.equals(name)) {
+                    return start;
+                }
+            }
+            start = url.indexOf(MARKER_START, start + 1);
+        }
+        return -1;
+    }
+
+    private static Header[] compileHeaders(Map<String, String> headers) {
+        if (headers == null) {
+            return new Header[0];
+        }
+        Header[] compiled = new Header[headers.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            compiled[i++] = new BasicHeader(entry.getKey(), entry.getValue());
+        }
+        return compiled;
+    }
+
+    boolean hasUrl() {
+        return literals != null;
+    }
+
+    int indexOf(String paramName) {
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramNames[i].equals(paramName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把路径参数值填入固定片段,生成最终地址;没有值的参数保留原来的{name},与原来的行为一致
+     */
+    URI expand(String[] values) {
+        if (fixedUri != null) {
+            return fixedUri;
+        }
+        int capacity = literalLength;
+        for (String value : values) {
+            capacity += value == null ? 0 : value.length();
+        }
+        StringBuilder url = new StringBuilder(capacity + 16);
+        for (int i = 0; i < slots.length; i++) {
+            url.append(literals[i]);
+            String value = values[slots[i]];
+            if (value == null) {
+                url.append('{').append(paramNames[slots[i]]).append('}');
+            } else {
+                url.append(value);
+            }
+        }
+        url.append(literals[slots.length]);
+        URI uri = URI.create(url.toString());
+        return resolveLate && StringUtils.isBlank(uri.getScheme()) ? baseUri.resolve(uri) : uri;
+    }
+}
@@ -0,0 +1,133 @@
+package play.api.rest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import play.Configuration;
+import play.libs.concurrent.Promise;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * {@link play.api.rest.http.Cacheable}和{@link play.api.rest.http.Coalesce}方法使用的响应缓存,
+ * 同一个{@link Rest}实例下的所有接口共用,按请求方法、地址和请求头区分.
+ * key包含了全部请求头,Vary指定的请求头不同时自然是不同的缓存;Vary: *的响应不缓存
+ * <ul>
+ *     <li>缓存: 按最近使用淘汰,响应内容和响应头合计最多占用maxBytes字节</li>
+ *     <li>合并: 相同的请求在返回前只发出一次,后来的调用方等待同一个结果</li>
+ * </ul>
+ */
+public class ResponseCache {
+    private static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+    private final Cache<String, CachedResponse> cache;
+    private final ConcurrentHashMap<String, Promise<CachedResponse>> inflight = new ConcurrentHashMap<>();
+
+    public ResponseCache(long maxBytes) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResponse resp) -> key.length() * 2 + resp.weight())
+                .build();
+    }
+
+    public ResponseCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * play.rest.cache.maxBytes: 缓存最多占用的字节数
+     */
+    public ResponseCache(Configuration conf) {
+        this(conf.getLong("play.rest.cache.maxBytes", DEFAULT_MAX_BYTES));
+    }
+
+    static String keyOf(HttpUriRequest req) {
+        Header[] headers = req.getAllHeaders();
+        String uri = req.getURI().toString();
+        StringBuilder key = new StringBuilder(req.getMethod().length() + uri.length() + 1 + headers.length * 32);
+        key.append(req.getMethod()).append(' ').append(uri);
+        for (Header header : headers) {
+            key.append('\n').append(header.getName()).append(':').append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    CachedResponse get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * 相同key的请求正在进行时直接返回它的结果,否则通过call发出请求
+     */
+    Promise<CachedResponse> coalesce(String key, Supplier<Promise<CachedResponse>> call) {
+        Promise<CachedResponse> existing = inflight.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<CachedResponse> future = new CompletableFuture<>();
+        Promise<CachedResponse> promise = Promise.wrap(future);
+        existing = inflight.putIfAbsent(key, promise);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            call.get().whenComplete((resp, e) -> {
+                inflight.remove(key, promise); //先移除再完成,之后的调用方会看到已经更新的缓存
+                if (e == null) {
+                    future.complete(resp);
+                } else {
+                    future.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        } catch (Throwable e) {
+            inflight.remove(key, promise);
+            future.completeExceptionally(e);
+        }
+        return promise;
+    }
+
+    /**
+     * 处理上游响应并更新缓存:304时沿用之前的内容,不能缓存的响应会清除旧的缓存
+     *
+     * @param previous   发出请求时已过期的缓存,没有时为null
+     * @param store      是否缓存,只合并请求的方法为false
+     * @param defaultTtl 响应没有给出缓存时间时的缓存时间,毫秒
+     */
+    CachedResponse complete(String key, CachedResponse previous, HttpResponse resp, boolean store, long defaultTtl)
+            throws IOException {
+        long now = System.currentTimeMillis();
+        if (previous != null && resp.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            CachedResponse revalidated = previous.revalidate(resp, defaultTtl, now);
+            if (store && revalidated.isStorable()) {
+                cache.put(key, revalidated);
+            } else {
+                cache.invalidate(key);
+            }
+            return revalidated;
+        }
+        CachedResponse response = CachedResponse.of(resp, defaultTtl, now);
+        if (store) {
+            if (response.isStorable()) {
+                cache.put(key, response);
+            } else {
+                cache.invalidate(key);
+            }
+        }
+        return response;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
@@ -15,6 +15,7 @@ import org.slf4j.LoggerFactory;
 import play.Configuration;
 import play.api.rest.converter.jackson.JacksonConverterFactory;
 import play.libs.concurrent.Promise;
+import play.libs.transport.http.HedgePolicy;
 import play.libs.transport.http.PromiseHttpClient;
 import play.libs.transport.http.client.HttpClientFactory;
 import play.libs.transport.http.client.IOType;
@@ -44,6 +45,8 @@ public class Rest {
     private PromiseHttpClient callFactory;
     private ExecutionContext callbackExecutor;
     private ILoadBalancer loadBalancer;
+    private HedgePolicy hedgePolicy;
+    private ResponseCache responseCache;
     private RequestConfig requestConfig;
     private String baseUrl;
     private boolean validateEagerly;
@@ -65,10 +68,16 @@ public class Rest {
         converterFactories.add(JacksonConverterFactory.create()); //默认使用Json进行转换
 
         createRest(tracer,callFactory,baseUrl,converterFactories,null,false,null);
+        Configuration hedge = conf.getConfig("play.rest.hedge");
+        if(hedge != null && hedge.getBoolean("enabled",false)){ //对冲请求,默认关闭
+            this.hedgePolicy = new HedgePolicy(hedge);
+        }
+        this.responseCache = new ResponseCache(conf);
     }
 
     public Rest(Tracer tracer,PromiseHttpClient callFactory, String baseUrl, List<Converter.Factory> converterFactories,ExecutionContext callbackExecutor, boolean validateEagerly,RequestConfig requestConfig) {
         createRest(tracer,callFactory,baseUrl,converterFactories,callbackExecutor,validateEagerly,requestConfig);
+        this.responseCache = new ResponseCache();
     }
 
     private void createRest(Tracer tracer,PromiseHttpClient callFactory, String baseUrl, List<Converter.Factory> converterFactories,ExecutionContext callbackExecutor, boolean validateEagerly,RequestConfig requestConfig) {
@@ -309,6 +318,8 @@ public class Rest {
         private final List<Converter.Factory> converterFactories = new ArrayList<>();
         private ExecutionContext callbackExecutor;
         private ILoadBalancer loadBalancer;
+        private HedgePolicy hedgePolicy;
+        private ResponseCache responseCache;
         private boolean validateEagerly;
 
         public Builder() {}
@@ -376,6 +387,22 @@ public class Rest {
             return this;
         }
 
+        /**
+         * {@link play.api.rest.http.Cacheable}和{@link play.api.rest.http.Coalesce}方法使用的缓存,不设置时使用默认大小
+         */
+        public Builder responseCache(ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        /**
+         * 第一次请求超过对冲延迟没有返回时,向另一台机器再发一次,取先返回的结果
+         */
+        public Builder hedgePolicy(HedgePolicy hedgePolicy) {
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+
         /** Returns a modifiable list of converter factories. */
         public List<Converter.Factory> converterFactories() {
             return this.converterFactories;
@@ -411,6 +438,10 @@ public class Rest {
 
             Rest rest = new Rest(tracer,callFactory, baseUrl, unmodifiableList(converterFactories),callbackExecutor, validateEagerly,config);
             rest.setLoadBalancer(loadBalancer);
+            rest.setHedgePolicy(hedgePolicy);
+            if (responseCache != null) {
+                rest.setResponseCache(responseCache);
+            }
             return rest;
         }
     }
@@ -430,4 +461,20 @@ public class Rest {
     public ILoadBalancer getLoadBalancer() {
         return loadBalancer;
     }
+
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
 }
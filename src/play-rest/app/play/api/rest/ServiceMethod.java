@@ -25,6 +25,7 @@ import play.libs.concurrent.Promise;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
@@ -53,8 +54,12 @@ final class ServiceMethod<R, T> {
   private final boolean hasBody;
   private final boolean isFormEncoded;
   private final boolean isMultipart;
+  private final boolean isCoalesce;
+  private final boolean isCacheable;
+  private final long cacheTtl;
   private final ParameterHandler<?>[] parameterHandlers;
   private final RequestConfig requestConfig;
+  private final RequestTemplate template;
 
   ServiceMethod(Builder<R, T> builder) {
     this.baseUrl = builder.retrofit.baseUrl();
@@ -66,13 +71,17 @@ final class ServiceMethod<R, T> {
     this.hasBody = builder.hasBody;
     this.isFormEncoded = builder.isFormEncoded;
     this.isMultipart = builder.isMultipart;
+    this.isCoalesce = builder.isCoalesce;
+    this.isCacheable = builder.isCacheable;
+    this.cacheTtl = builder.cacheTtl;
     this.parameterHandlers = builder.parameterHandlers;
     this.requestConfig = builder.requestConfig;
+    this.template = new RequestTemplate(httpMethod, baseUrl, relativeUrl, contentType, headers, hasBody);
   }
 
   /** Builds an HTTP request from method arguments. */
   HttpUriRequest toCall(@Nullable Object... args) throws IOException {
-    ReqBuilder requestBuilder = new ReqBuilder(httpMethod, baseUrl, relativeUrl,contentType, headers, hasBody);
+    ReqBuilder requestBuilder = new ReqBuilder(template);
     if(this.requestConfig != null){
       requestBuilder.setDefaultConfig(this.requestConfig);
     }
@@ -97,6 +106,20 @@ final class ServiceMethod<R, T> {
     return call.call();
   }
 
+  /** 相同的请求合并为一次上游请求,{@link Cacheable}方法同时也合并 */
+  boolean isCoalesce() {
+    return isCoalesce;
+  }
+
+  boolean isCacheable() {
+    return isCacheable;
+  }
+
+  /** 响应没有给出缓存时间时的缓存时间,毫秒 */
+  long getCacheTtl() {
+    return cacheTtl;
+  }
+
   /** Builds a method return value from an HTTP response body. */
   R toResponse(HttpResponse body) throws IOException {
     return responseConverter.convert(body);
@@ -125,6 +148,10 @@ final class ServiceMethod<R, T> {
     boolean hasBody;
     boolean isFormEncoded;
     boolean isMultipart;
+    boolean isStreaming;
+    boolean isCoalesce;
+    boolean isCacheable;
+    long cacheTtl;
     String relativeUrl;
     Map<String,String> headers;
     String contentType;
@@ -195,6 +222,22 @@ final class ServiceMethod<R, T> {
       if (isMultipart && !gotPart) {
         throw methodError("Multipart method must contain at least one @Part.");
       }
+      isStreaming = Utils.isAnnotationPresent(methodAnnotations, Streaming.class);
+      if (isStreaming && responseType != HttpResponse.class && responseType != HttpEntity.class
+          && responseType != InputStream.class) {
+        throw methodError("@Streaming can only be used with HttpResponse, HttpEntity or InputStream"
+            + " as response type.");
+      }
+      Cacheable cacheable = method.getAnnotation(Cacheable.class);
+      isCacheable = cacheable != null;
+      isCoalesce = isCacheable || Utils.isAnnotationPresent(methodAnnotations, Coalesce.class);
+      cacheTtl = isCacheable ? cacheable.unit().toMillis(cacheable.ttl()) : 0;
+      if (isCoalesce && !"GET".equals(httpMethod)) {
+        throw methodError("@Cacheable and @Coalesce can only be used with GET.");
+      }
+      if (isCoalesce && isStreaming) {
+        throw methodError("@Cacheable and @Coalesce cannot be used with @Streaming.");
+      }
 
       return new ServiceMethod<>(this);
     }
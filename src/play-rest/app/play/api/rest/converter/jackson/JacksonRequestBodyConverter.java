@@ -19,11 +19,11 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import org.apache.http.HttpEntity;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import play.api.rest.Converter;
 import play.api.rest.Rest;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 final class JacksonRequestBodyConverter<T> implements Converter<T, HttpEntity> {
   private final ObjectWriter adapter;
@@ -32,12 +32,16 @@ final class JacksonRequestBodyConverter<T> implements Converter<T, HttpEntity> {
     this.adapter = adapter;
   }
 
+  /**
+   * 直接序列化成UTF-8字节数组,不生成中间的String;请求带Content-Length,不使用chunked编码,
+   * 重试和对冲请求复用同一个字节数组
+   */
   @Override
   public HttpEntity convert(T value) throws IOException {
-    String bytes = adapter.writeValueAsString(value);
+    byte[] bytes = adapter.writeValueAsBytes(value);
     if(Rest.LOGGER.isDebugEnabled()){
-      Rest.LOGGER.debug("request body:{}",bytes);
+      Rest.LOGGER.debug("request body:{}",new String(bytes, StandardCharsets.UTF_8));
     }
-    return new StringEntity(bytes,ContentType.APPLICATION_JSON);
+    return new ByteArrayEntity(bytes, ContentType.APPLICATION_JSON);
   }
-}
\ No newline at end of file
+}
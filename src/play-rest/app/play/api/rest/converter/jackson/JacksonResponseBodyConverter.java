@@ -16,12 +16,17 @@
 package play.api.rest.converter.jackson;
 
 import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
 import play.api.rest.Converter;
 import play.api.rest.Rest;
 import play.libs.transport.http.HTTPUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 
 final class JacksonResponseBodyConverter<T> implements Converter<HttpResponse, T> {
   private final ObjectReader adapter;
@@ -33,13 +38,39 @@ final class JacksonResponseBodyConverter<T> implements Converter<HttpResponse, T
   @Override
   public T convert(HttpResponse value) throws IOException {
     try {
-      String body = HTTPUtils.toString(value.getEntity(),"UTF-8");
+      HttpEntity entity = value.getEntity();
       if(Rest.LOGGER.isDebugEnabled()){
+        String body = HTTPUtils.toString(entity,"UTF-8");
         Rest.LOGGER.debug("response body:{}",body);
+        return adapter.readValue(body);
+      }
+      //直接从响应流解析,不先读成String
+      Charset charset = charsetOf(entity);
+      try (InputStream in = entity.getContent()) {
+        if (charset == null) {
+          return adapter.readValue(in); //Jackson自动识别UTF-8/16/32
+        }
+        return adapter.readValue(new InputStreamReader(in, charset));
       }
-      return adapter.readValue(body);
     } finally {
       HTTPUtils.closeQuietly(value);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * 响应声明了非UTF编码时返回该编码,否则返回null
+   */
+  private static Charset charsetOf(HttpEntity entity) {
+    ContentType contentType;
+    try {
+      contentType = ContentType.get(entity);
+    } catch (RuntimeException e) {
+      return null; //无法识别的Content-Type按UTF-8处理
+    }
+    Charset charset = contentType == null ? null : contentType.getCharset();
+    if (charset == null || charset.name().startsWith("UTF-")) {
+      return null;
+    }
+    return charset;
+  }
+}
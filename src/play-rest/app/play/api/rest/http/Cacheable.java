@@ -0,0 +1,29 @@
+package play.api.rest.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 把GET请求的响应缓存在内存中,同时具有{@link Coalesce}的效果.
+ * 缓存时间优先使用响应的Cache-Control(max-age/no-cache/no-store)和Expires,
+ * 响应中没有时使用{@link #ttl()};过期后带ETag/Last-Modified的响应通过If-None-Match/If-Modified-Since重新验证
+ * <pre>
+ * &#64;GET("/config/{app}")
+ * &#64;Cacheable(ttl = 30)
+ * Promise&lt;AppConfig&gt; config(@Path("app") String app);
+ * </pre>
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Cacheable {
+  /** 响应没有给出缓存时间时的默认缓存时间,0表示只按响应头缓存 */
+  long ttl() default 0;
+
+  TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,18 @@
+package play.api.rest.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * 合并相同的GET请求:请求地址和请求头都相同的调用在上一个请求返回前共用同一个上游请求,
+ * 响应内容会读到内存中,每个调用方各自转换,不能和{@link Streaming}一起使用
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Coalesce {
+}
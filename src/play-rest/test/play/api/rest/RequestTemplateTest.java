@@ -0,0 +1,39 @@
+package play.api.rest;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+public class RequestTemplateTest {
+    private static final String BASE_URL = "https://api.test/v1/";
+
+    private static RequestTemplate template(String relativeUrl) {
+        return new RequestTemplate("GET", BASE_URL, relativeUrl, null, null, false);
+    }
+
+    @Test
+    public void testRelative() {
+        RequestTemplate template = template("users/{id}/orders/{orderId}");
+        assertArrayEquals(new String[]{"id", "orderId"}, template.paramNames);
+        assertEquals(URI.create("https://api.test/v1/users/7/orders/9"), template.expand(new String[]{"7", "9"}));
+
+        assertEquals(URI.create("https://api.test/v1/ping"), template("ping").expand(new String[0]));
+        assertEquals(URI.create("http://other.test/users/7"), template("http://other.test/users/{id}").expand(new String[]{"7"}));
+    }
+
+    /**
+     * scheme由路径参数提供时,按填入参数后的地址判断是否相对baseUrl解析
+     */
+    @Test
+    public void testParamInScheme() {
+        RequestTemplate template = template("{url}");
+        assertEquals(URI.create("http://other.test/callback?a=1"), template.expand(new String[]{"http://other.test/callback?a=1"}));
+        assertEquals(URI.create("https://api.test/v1/users/7"), template.expand(new String[]{"users/7"}));
+
+        template = template("{host}/users/{id}");
+        assertEquals(URI.create("http://other.test/users/7"), template.expand(new String[]{"http://other.test", "7"}));
+        assertEquals(URI.create("https://api.test/v1/v2/users/7"), template.expand(new String[]{"v2", "7"}));
+    }
+}
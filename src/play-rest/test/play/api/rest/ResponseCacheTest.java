@@ -0,0 +1,149 @@
+package play.api.rest;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+    private static final String KEY = "GET http://api.test/users/1";
+
+    private static HttpResponse response(int code, String body, String... headers) {
+        HttpResponse resp = new BasicHttpResponse(HttpVersion.HTTP_1_1, code, null);
+        for (int i = 0; i < headers.length; i += 2) {
+            resp.addHeader(headers[i], headers[i + 1]);
+        }
+        if (body != null) {
+            resp.setEntity(new ByteArrayEntity(body.getBytes()));
+        }
+        return resp;
+    }
+
+    private static String body(CachedResponse cached) throws Exception {
+        return EntityUtils.toString(cached.toResponse().getEntity());
+    }
+
+    @Test
+    public void testFreshness() throws Exception {
+        long now = System.currentTimeMillis();
+        CachedResponse cached = CachedResponse.of(response(200, "a", HttpHeaders.CACHE_CONTROL, "max-age=60"), 0, now);
+        assertTrue(cached.isStorable());
+        assertTrue(cached.isFresh(now + 59999));
+        assertFalse(cached.isFresh(now + 60000));
+
+        //扣除Age
+        cached = CachedResponse.of(response(200, "a", HttpHeaders.CACHE_CONTROL, "max-age=60", HttpHeaders.AGE, "50"), 0, now);
+        assertFalse(cached.isFresh(now + 10000));
+
+        //没有max-age时使用Expires - Date
+        cached = CachedResponse.of(response(200, "a",
+                HttpHeaders.DATE, DateUtils.formatDate(new Date(now)),
+                HttpHeaders.EXPIRES, DateUtils.formatDate(new Date(now + 30000))), 0, now);
+        assertTrue(cached.isFresh(now + 29000));
+        assertFalse(cached.isFresh(now + 31000));
+
+        //都没有时使用默认缓存时间,没有默认时间也没有ETag/Last-Modified的响应不缓存
+        assertTrue(CachedResponse.of(response(200, "a"), 5000, now).isFresh(now + 4999));
+        assertFalse(CachedResponse.of(response(200, "a"), 0, now).isStorable());
+        assertFalse(CachedResponse.of(response(500, "a", HttpHeaders.CACHE_CONTROL, "max-age=60"), 0, now).isStorable());
+    }
+
+    @Test
+    public void testRevalidation() throws Exception {
+        ResponseCache cache = new ResponseCache();
+        CachedResponse first = cache.complete(KEY, null,
+                response(200, "v1", HttpHeaders.CACHE_CONTROL, "no-cache", HttpHeaders.ETAG, "\"1\""), true, 0);
+        assertSame(first, cache.get(KEY));
+        assertFalse(first.isFresh(System.currentTimeMillis()));
+
+        HttpGet req = new HttpGet("http://api.test/users/1");
+        first.addConditionalHeaders(req);
+        assertEquals("\"1\"", req.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+
+        //304沿用之前的内容,按新的响应头计算缓存时间
+        CachedResponse revalidated = cache.complete(KEY, first,
+                response(HttpStatus.SC_NOT_MODIFIED, null, HttpHeaders.CACHE_CONTROL, "max-age=60"), true, 0);
+        assertEquals("v1", body(revalidated));
+        assertEquals(200, revalidated.toResponse().getStatusLine().getStatusCode());
+        assertTrue(revalidated.isFresh(System.currentTimeMillis()));
+        assertSame(revalidated, cache.get(KEY));
+
+        //内容变化时替换
+        CachedResponse changed = cache.complete(KEY, revalidated,
+                response(200, "v2", HttpHeaders.CACHE_CONTROL, "max-age=60"), true, 0);
+        assertEquals("v2", body(cache.get(KEY)));
+        assertSame(changed, cache.get(KEY));
+    }
+
+    @Test
+    public void testNoStore() throws Exception {
+        ResponseCache cache = new ResponseCache();
+        cache.complete(KEY, null, response(200, "v1", HttpHeaders.CACHE_CONTROL, "max-age=60"), true, 0);
+        assertNotNull(cache.get(KEY));
+
+        //不能缓存的响应清除旧的缓存,本次调用仍然返回内容
+        CachedResponse resp = cache.complete(KEY, null,
+                response(200, "v2", HttpHeaders.CACHE_CONTROL, "no-store, max-age=60"), true, 0);
+        assertEquals("v2", body(resp));
+        assertNull(cache.get(KEY));
+
+        //只合并请求的方法不缓存
+        cache.complete(KEY, null, response(200, "v3", HttpHeaders.CACHE_CONTROL, "max-age=60"), false, 0);
+        assertNull(cache.get(KEY));
+    }
+
+    /**
+     * 缓存在所有调用方之间共用,private的响应不缓存
+     */
+    @Test
+    public void testPrivate() throws Exception {
+        ResponseCache cache = new ResponseCache();
+        CachedResponse resp = cache.complete(KEY, null,
+                response(200, "mine", HttpHeaders.CACHE_CONTROL, "private, max-age=60"), true, 60000);
+        assertEquals("mine", body(resp));
+        assertFalse(resp.isStorable());
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void testVary() throws Exception {
+        ResponseCache cache = new ResponseCache();
+        cache.complete(KEY, null,
+                response(200, "a", HttpHeaders.CACHE_CONTROL, "max-age=60", HttpHeaders.VARY, "Accept-Encoding"), true, 0);
+        assertNotNull(cache.get(KEY));
+
+        cache.complete(KEY, null, response(200, "a", HttpHeaders.CACHE_CONTROL, "max-age=60", HttpHeaders.VARY, "*"), true, 0);
+        assertNull(cache.get(KEY));
+
+        //key包含请求头,Vary指定的请求头不同时是不同的缓存
+        HttpGet gzip = new HttpGet("http://api.test/users/1");
+        gzip.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        HttpGet plain = new HttpGet("http://api.test/users/1");
+        assertNotEquals(ResponseCache.keyOf(gzip), ResponseCache.keyOf(plain));
+    }
+
+    /**
+     * 按响应大小计算占用,超过上限的响应不会留在缓存中
+     */
+    @Test
+    public void testMaxBytes() throws Exception {
+        ResponseCache cache = new ResponseCache(64 * 1024);
+        cache.complete(KEY, null, response(200, "small", HttpHeaders.CACHE_CONTROL, "max-age=60"), true, 0);
+        assertEquals(1, cache.size());
+
+        cache.complete(KEY + "/large", null,
+                response(200, new String(new char[128 * 1024]), HttpHeaders.CACHE_CONTROL, "max-age=60"), true, 0);
+        assertNull(cache.get(KEY + "/large"));
+        assertNotNull(cache.get(KEY));
+    }
+}
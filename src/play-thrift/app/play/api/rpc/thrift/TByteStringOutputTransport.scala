@@ -0,0 +1,89 @@
+package play.api.rpc.thrift
+
+import java.util
+
+import akka.util.ByteString
+import org.apache.thrift.transport.TTransport
+
+/**
+  * 编码响应用的输出transport,写入当前线程复用的缓冲区,编码完成后通过result生成ByteString:
+  * 缓冲区用到一半以上时直接交给ByteString,不再拷贝,线程换一块同样大小的新缓冲区;
+  * 否则按实际长度拷贝一次,缓冲区留给下一次编码使用
+  */
+final class TByteStringOutputTransport private(private var arr: Array[Byte]) extends TTransport {
+  private var pos = 0
+
+  override def write(src: Array[Byte], off: Int, len: Int): Unit = {
+    val newPos = pos + len
+    if (newPos > arr.length) {
+      arr = util.Arrays.copyOf(arr, math.max(newPos, arr.length << 1))
+    }
+    System.arraycopy(src, off, arr, pos, len)
+    pos = newPos
+  }
+
+  def length: Int = pos
+
+  /**
+    * 生成编码结果,调用后不能再写入
+    */
+  def result(): ByteString = {
+    val bytes = arr
+    val len = pos
+    arr = null
+    if (len >= bytes.length / 2) {
+      if (bytes.length <= TByteStringOutputTransport.MaxRetainedSize) {
+        TByteStringOutputTransport.release(new Array[Byte](bytes.length))
+      }
+      ByteString.fromArrayUnsafe(bytes, 0, len)
+    } else {
+      val copy = util.Arrays.copyOf(bytes, len)
+      TByteStringOutputTransport.release(bytes)
+      ByteString.fromArrayUnsafe(copy)
+    }
+  }
+
+  /**
+    * 编码失败时调用,缓冲区清空后放回当前线程;已经调用过result时什么都不做
+    */
+  def discard(): Unit = {
+    val bytes = arr
+    if (bytes != null) {
+      arr = null
+      pos = 0
+      TByteStringOutputTransport.release(bytes)
+    }
+  }
+
+  override def isOpen = true
+
+  override def open() = {}
+
+  override def close() = {}
+
+  override def read(buf: Array[Byte], off: Int, len: Int): Int = throw new UnsupportedOperationException("write-only transport")
+}
+
+object TByteStringOutputTransport {
+  val InitialSize = 256
+  val MaxRetainedSize = 64 * 1024 //超过这个大小的缓冲区不保留,避免偶尔的大响应一直占用内存
+
+  private val cached = new ThreadLocal[Array[Byte]]
+
+  /**
+    * 取出当前线程的缓冲区,编码期间不放回,嵌套编码时会使用新的缓冲区
+    */
+  def apply(): TByteStringOutputTransport = {
+    val arr = cached.get()
+    if (arr != null) {
+      cached.set(null)
+      new TByteStringOutputTransport(arr)
+    } else {
+      new TByteStringOutputTransport(new Array[Byte](InitialSize))
+    }
+  }
+
+  private def release(arr: Array[Byte]): Unit = {
+    if (arr.length <= MaxRetainedSize) cached.set(arr)
+  }
+}
@@ -3,38 +3,37 @@ package play.api.rpc.thrift
 import akka.util.ByteString
 import org.apache.thrift.transport.{TTransport, TTransportException}
 
+/**
+  * 直接在ByteString的各个分段上顺序读取,不把请求内容先拷贝成一个完整的数组
+  */
 class TByteStringTransport(val buf:ByteString) extends TTransport{
+  private val it = buf.iterator
 
-  override def read(buf: Array[Byte], off: Int, len: Int):Int = {
-    val bytesRemaining: Int = this.buf.length - off
-    val amtToRead: Int = if (len > bytesRemaining) {
-      bytesRemaining
-    }else {
-      len
-    }
+  override def read(dst: Array[Byte], off: Int, len: Int):Int = {
+    val amtToRead = math.min(len, it.len)
     if (amtToRead > 0) {
-      this.buf.copyToArray(buf, off, amtToRead)
+      it.getBytes(dst, off, amtToRead)
     }
     amtToRead
   }
 
+  @throws[TTransportException]
+  override def readAll(dst: Array[Byte], off: Int, len: Int): Int = {
+    if (len > it.len) throw new TTransportException(TTransportException.END_OF_FILE, "unexpected end of frame")
+    it.getBytes(dst, off, len)
+    len
+  }
+
+  /**
+    * 还没有读取的字节数
+    */
+  def remaining: Int = it.len
+
   override def isOpen = true
 
   override def close() = {}
 
-  override def write(buf: Array[Byte], off: Int, len: Int) = {
-    this.buf ++ (buf.slice(off,len))
-  }
+  override def write(buf: Array[Byte], off: Int, len: Int) = throw new UnsupportedOperationException("read-only transport")
 
   override def open() = {}
-
-  @throws[TTransportException]
-  override def readAll(buf: Array[Byte], off: Int, len: Int): Int = {
-    val bytesRemaining = this.buf.length - off
-    if (len > bytesRemaining) throw new TTransportException("unexpected end of frame")
-    this.buf.copyToArray(buf, off, len)
-    len
-  }
-
-  override def getBuffer: Array[Byte] = buf.toArray
 }
@@ -72,4 +72,9 @@ trait THttpClient {
   def executeMultiplexed(path: String, serviceType: Class[_], serviceName: String, method: String, args: Any*): Future[Any]
 
   def getDefaultDuration:Duration
+
+  /**
+    * Releases the connections held by this client.
+    */
+  def close(): Unit = {}
 }
\ No newline at end of file
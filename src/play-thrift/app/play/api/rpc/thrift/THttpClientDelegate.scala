@@ -9,7 +9,7 @@ import org.apache.thrift.protocol.{TMessage, TMessageType, TProtocol}
 import org.apache.thrift.transport.{TMemoryBuffer, TMemoryInputTransport}
 import play.api.rpc.thrift.ThriftProtocolFactories.Format
 import play.libs.transport.http.handler.BytesBodyHandler
-import play.libs.transport.thrift.ThriftClient
+import play.libs.transport.thrift.{ThriftClient, ThriftTransport}
 
 import scala.concurrent.duration.Duration
 import scala.concurrent.{Future, Promise}
@@ -22,6 +22,12 @@ class THttpClientDelegate(val httpClient:ThriftClient,val format:Format.Type) ex
   private val metadataMap = CacheBuilder.newBuilder().build[Class[_],ThriftServiceMetadata](new CacheLoader[Class[_],ThriftServiceMetadata] {
     override def load(k: Class[_]) = new ThriftServiceMetadata(k)
   })
+  //transport=TCP时通过长连接发送,服务端使用ThriftTcpServer,path不再使用
+  private val tcpClient = if (httpClient.getTransport == ThriftTransport.TCP) new TTcpMuxClient(httpClient, readSeqId) else null
+
+  private def readSeqId(content: Array[Byte]): Int =
+    ThriftProtocolFactories.createTProtocol(format, new TMemoryInputTransport(content)).readMessageBegin.seqid
+
   /**
     * Executes the specified Thrift call.
     *
@@ -61,7 +67,12 @@ class THttpClientDelegate(val httpClient:ThriftClient,val format:Format.Type) ex
           tProtocol.writeMessageEnd
           val reqBody = transport.getArray
 
-          httpClient.execute(path,reqBody,new BytesBodyHandler()).future.onComplete{
+          val response = if (tcpClient != null) {
+            tcpClient.execute(seqId, reqBody, transport.length, func.isOneWay)
+          } else {
+            httpClient.execute(path,reqBody,new BytesBodyHandler()).future
+          }
+          response.onComplete{
             case Failure(t) => reply.failure(t)
             case Success(r) => handle(seqId,reply,func,r)
           }
@@ -135,4 +146,9 @@ class THttpClientDelegate(val httpClient:ThriftClient,val format:Format.Type) ex
   }
 
   override def getDefaultDuration = Duration.apply(60,TimeUnit.SECONDS)
+
+  /**
+    * transport=TCP时关闭长连接,应用停止时调用(如ApplicationLifecycle.addStopHook)
+    */
+  override def close(): Unit = if (tcpClient != null) tcpClient.close()
 }
@@ -0,0 +1,333 @@
+package play.api.rpc.thrift
+
+import java.io._
+import java.net.{InetSocketAddress, Socket, SocketTimeoutException, URI}
+import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger, AtomicReferenceArray}
+
+import org.slf4j.LoggerFactory
+import play.libs.transport.thrift.ThriftClient
+
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.{ExecutionContext, Future, Promise}
+import scala.util.{Failure, Success, Try}
+
+/**
+  * Thrift的TCP客户端,对应服务端的{@link ThriftTcpServer}:
+  * 每台机器保持tcpConnections个长连接,请求按帧(4字节长度+消息)写出后不等待响应,
+  * 同一个连接上可以同时有多个请求,每个连接有一个读线程按seqId把响应交给对应的请求.
+  * 机器从ThriftClient的负载均衡中选择,没有负载均衡时使用host;配置了tcpPort时替换端口.
+  * <ul>
+  *   <li>建立连接和写出都在thrift-tcp-io线程中进行,调用线程只把请求放入连接的写队列</li>
+  *   <li>连接建立失败时请求还没有发出,换一台机器重试,最多retryCount次;
+  *   已经发出的请求不重试,也不经过HTTP方式的对冲、熔断和负载均衡的服务器统计</li>
+  *   <li>负载均衡中已经移除的机器的连接每30秒清理一次</li>
+  *   <li>不再使用时需要调用{@link #close},见{@link THttpClientDelegate#close}</li>
+  * </ul>
+  *
+  * @param seqIdOf 从响应消息中读取seqId
+  * @param maxFrameLength 响应帧的最大长度,超过时关闭连接
+  */
+class TTcpMuxClient(val client: ThriftClient, seqIdOf: Array[Byte] => Int,
+                    maxFrameLength: Int = ThriftTcpServer.DefaultMaxFrameLength) {
+  private val connections = new ConcurrentHashMap[InetSocketAddress, AtomicReferenceArray[Future[TTcpConnection]]]()
+  private val counter = new AtomicInteger
+  @volatile private var closed = false
+
+  private val evictTask = if (client.getLoadBalancer == null) null else {
+    TTcpConnection.timer.scheduleWithFixedDelay(new Runnable {
+      override def run(): Unit = evictRemoved()
+    }, 30, 30, TimeUnit.SECONDS)
+  }
+
+  /**
+    * 发送一个Thrift消息,返回响应消息;单向调用写出后返回空数组
+    */
+  def execute(seqId: Int, message: Array[Byte], length: Int, oneway: Boolean): Future[Array[Byte]] = {
+    val promise = Promise[Array[Byte]]()
+    send(seqId, message, length, oneway, promise, math.max(client.getRetryCount, 0))
+    promise.future
+  }
+
+  private def send(seqId: Int, message: Array[Byte], length: Int, oneway: Boolean,
+                   promise: Promise[Array[Byte]], retries: Int): Unit = {
+    try {
+      connectionFor(chooseAddress()).onComplete {
+        case Success(conn) => conn.send(seqId, message, length, promise, oneway)
+        case Failure(_) if retries > 0 && !closed => send(seqId, message, length, oneway, promise, retries - 1)
+        case Failure(e) => promise.tryFailure(e)
+      }(TTcpConnection.sameThread)
+    } catch {
+      case e: Throwable => promise.tryFailure(e)
+    }
+  }
+
+  private def chooseAddress(): InetSocketAddress = {
+    if (closed) throw new IllegalStateException("thrift tcp client closed")
+    val loadBalancer = client.getLoadBalancer
+    if (loadBalancer != null) {
+      val server = loadBalancer.chooseServer(null)
+      if (server == null) throw new IllegalStateException("no available thrift server")
+      addressOf(server.getHost, server.getPort)
+    } else {
+      val uri = URI.create(client.getHost)
+      addressOf(uri.getHost, uri.getPort)
+    }
+  }
+
+  private def addressOf(host: String, port: Int): InetSocketAddress = {
+    //只作为连接池的key,建立连接时才解析
+    InetSocketAddress.createUnresolved(host, if (client.getTcpPort > 0) client.getTcpPort else port)
+  }
+
+  /**
+    * 不加锁,槽中的连接不可用时用CAS换成一个新的建立中的连接,建立连接在io线程中进行
+    */
+  private def connectionFor(address: InetSocketAddress): Future[TTcpConnection] = {
+    var slots = connections.get(address)
+    if (slots == null) {
+      slots = connections.computeIfAbsent(address, new java.util.function.Function[InetSocketAddress, AtomicReferenceArray[Future[TTcpConnection]]] {
+        override def apply(t: InetSocketAddress) = new AtomicReferenceArray[Future[TTcpConnection]](math.max(client.getTcpConnections, 1))
+      })
+    }
+    val i = Math.floorMod(counter.getAndIncrement, slots.length)
+    while (true) {
+      val current = slots.get(i)
+      if (isUsable(current)) return current
+      val opening = Promise[TTcpConnection]()
+      if (slots.compareAndSet(i, current, opening.future)) {
+        TTcpConnection.io.execute(new Runnable {
+          override def run(): Unit = {
+            opening.complete(Try(TTcpConnection.open(address, client.getDialTimeout, client.getReadTimeout, maxFrameLength, seqIdOf)))
+            //建立连接期间客户端被关闭或者机器被移除
+            if (closed || (connections.get(address) ne slots)) {
+              opening.future.foreach(_.close(new IOException("thrift tcp client closed")))(TTcpConnection.sameThread)
+            }
+          }
+        })
+        return opening.future
+      }
+    }
+    null
+  }
+
+  private def isUsable(f: Future[TTcpConnection]): Boolean = f != null && (f.value match {
+    case None => true //正在建立
+    case Some(Success(conn)) => conn.isOpen
+    case Some(Failure(_)) => false
+  })
+
+  /**
+    * 关闭负载均衡中已经不存在的机器的连接
+    */
+  private def evictRemoved(): Unit = {
+    val loadBalancer = client.getLoadBalancer
+    val servers = loadBalancer.getAllServers
+    if (servers == null) return
+    val live = new java.util.HashSet[InetSocketAddress]()
+    servers.forEach(new java.util.function.Consumer[com.netflix.loadbalancer.Server] {
+      override def accept(s: com.netflix.loadbalancer.Server): Unit = live.add(addressOf(s.getHost, s.getPort))
+    })
+    val it = connections.entrySet().iterator()
+    while (it.hasNext) {
+      val entry = it.next()
+      if (!live.contains(entry.getKey)) {
+        it.remove()
+        closeAll(entry.getValue, new IOException("thrift server removed: " + entry.getKey))
+      }
+    }
+  }
+
+  private def closeAll(slots: AtomicReferenceArray[Future[TTcpConnection]], cause: IOException): Unit = {
+    var i = 0
+    while (i < slots.length) {
+      val f = slots.get(i)
+      if (f != null) f.foreach(_.close(cause))(TTcpConnection.sameThread)
+      i += 1
+    }
+  }
+
+  def close(): Unit = {
+    closed = true
+    if (evictTask != null) evictTask.cancel(false)
+    connections.values().forEach(new java.util.function.Consumer[AtomicReferenceArray[Future[TTcpConnection]]] {
+      override def accept(slots: AtomicReferenceArray[Future[TTcpConnection]]): Unit = closeAll(slots, new IOException("thrift tcp client closed"))
+    })
+    connections.clear()
+  }
+}
+
+/**
+  * 一个TCP长连接,请求放入写队列后由io线程依次写出,读线程负责接收响应;
+  * 连接出错时所有未完成的请求都以该异常失败
+  */
+class TTcpConnection private(val address: InetSocketAddress, socket: Socket, readTimeout: Int, maxFrameLength: Int,
+                             seqIdOf: Array[Byte] => Int) {
+  import TTcpConnection.Frame
+
+  private val out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream, 8 * 1024))
+  private val in = new DataInputStream(new BufferedInputStream(socket.getInputStream, 8 * 1024))
+  private val pending = new ConcurrentHashMap[Integer, Promise[Array[Byte]]]()
+  private val writeQueue = new ConcurrentLinkedQueue[Frame]()
+  //同一时间只有一个io线程在写
+  private val writing = new AtomicBoolean()
+  @volatile private var closed = false
+
+  private val reader = new Thread(new Runnable {
+    override def run(): Unit = readLoop()
+  }, "thrift-tcp-" + address)
+  reader.setDaemon(true)
+  reader.start()
+
+  private val writer = new Runnable {
+    override def run(): Unit = writeLoop()
+  }
+
+  def isOpen: Boolean = !closed
+
+  /**
+    * 放入写队列后立即返回;单向调用写出后以空数组完成
+    */
+  def send(seqId: Int, message: Array[Byte], length: Int, promise: Promise[Array[Byte]], oneway: Boolean): Unit = {
+    if (closed) {
+      promise.tryFailure(new IOException("connection closed: " + address))
+      return
+    }
+    if (!oneway) {
+      pending.put(seqId, promise)
+      scheduleTimeout(seqId, promise)
+    }
+    writeQueue.add(Frame(message, length, if (oneway) promise else null))
+    if (closed) { //与close并发时,close可能已经处理过写队列
+      failQueued(new IOException("connection closed: " + address))
+    } else if (writing.compareAndSet(false, true)) {
+      TTcpConnection.io.execute(writer)
+    }
+  }
+
+  private def writeLoop(): Unit = {
+    val written = new ArrayBuffer[Promise[Array[Byte]]]()
+    try {
+      var frame = writeQueue.poll()
+      while (frame != null) {
+        out.writeInt(frame.length)
+        out.write(frame.message, 0, frame.length)
+        if (frame.oneway != null) written += frame.oneway
+        frame = writeQueue.poll()
+      }
+      out.flush()
+      written.foreach(_.trySuccess(Array.emptyByteArray))
+    } catch {
+      case e: IOException =>
+        written.foreach(_.tryFailure(e))
+        close(e)
+    } finally {
+      writing.set(false)
+      //释放写标记之前放入的请求
+      if (!writeQueue.isEmpty && !closed && writing.compareAndSet(false, true)) TTcpConnection.io.execute(writer)
+    }
+  }
+
+  private def scheduleTimeout(seqId: Int, promise: Promise[Array[Byte]]): Unit = {
+    if (readTimeout <= 0) return
+    val task = TTcpConnection.timer.schedule(new Runnable {
+      override def run(): Unit = {
+        if (pending.remove(seqId, promise)) {
+          promise.tryFailure(new SocketTimeoutException("thrift tcp read timeout " + readTimeout + "ms: " + address))
+        }
+      }
+    }, readTimeout, TimeUnit.MILLISECONDS)
+    promise.future.onComplete(_ => task.cancel(false))(TTcpConnection.sameThread)
+  }
+
+  private def readLoop(): Unit = {
+    try {
+      while (!closed) {
+        val length = in.readInt()
+        if (length < 0 || length > maxFrameLength) {
+          throw new IOException("invalid thrift frame length " + length + " from " + address)
+        }
+        val message = new Array[Byte](length)
+        in.readFully(message)
+        val promise = pending.remove(seqIdOf(message))
+        if (promise != null) { //超时后才到的响应直接丢弃
+          promise.trySuccess(message)
+        }
+      }
+    } catch {
+      case e: Throwable => close(e)
+    }
+  }
+
+  def close(cause: Throwable): Unit = {
+    if (closed) return
+    closed = true
+    try socket.close() catch {
+      case _: IOException =>
+    }
+    if (TTcpConnection.logger.isDebugEnabled) TTcpConnection.logger.debug("thrift tcp connection closed: " + address, cause)
+    failQueued(cause)
+    val it = pending.values().iterator()
+    while (it.hasNext) {
+      it.next().tryFailure(cause)
+      it.remove()
+    }
+  }
+
+  private def failQueued(cause: Throwable): Unit = {
+    var frame = writeQueue.poll()
+    while (frame != null) {
+      if (frame.oneway != null) frame.oneway.tryFailure(cause)
+      frame = writeQueue.poll()
+    }
+  }
+}
+
+object TTcpConnection {
+  private val logger = LoggerFactory.getLogger(classOf[TTcpConnection])
+
+  /**
+    * @param oneway 单向调用时写出后完成的promise,否则为null
+    */
+  private case class Frame(message: Array[Byte], length: Int, oneway: Promise[Array[Byte]])
+
+  private[thrift] val timer = {
+    val executor = new ScheduledThreadPoolExecutor(1, daemon("thrift-tcp-timer"))
+    executor.setRemoveOnCancelPolicy(true)
+    executor
+  }
+
+  /**
+    * 建立连接和写出
+    */
+  private[thrift] val io = Executors.newCachedThreadPool(daemon("thrift-tcp-io"))
+
+  private[thrift] val sameThread = ExecutionContext.fromExecutor(new Executor {
+    override def execute(command: Runnable): Unit = command.run()
+  })
+
+  private def daemon(name: String) = new ThreadFactory {
+    override def newThread(r: Runnable): Thread = {
+      val t = new Thread(r, name)
+      t.setDaemon(true)
+      t
+    }
+  }
+
+  def open(address: InetSocketAddress, dialTimeout: Int, readTimeout: Int, maxFrameLength: Int,
+           seqIdOf: Array[Byte] => Int): TTcpConnection = {
+    val socket = new Socket()
+    try {
+      socket.setTcpNoDelay(true)
+      socket.setKeepAlive(true)
+      socket.connect(new InetSocketAddress(address.getHostString, address.getPort), dialTimeout)
+      new TTcpConnection(address, socket, readTimeout, maxFrameLength, seqIdOf)
+    } catch {
+      case e: Throwable =>
+        try socket.close() catch {
+          case _: IOException =>
+        }
+        throw e
+    }
+  }
+}
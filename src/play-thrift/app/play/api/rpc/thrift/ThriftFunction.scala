@@ -1,7 +1,9 @@
 
 package play.api.rpc.thrift
 
+import java.lang.invoke.{LambdaMetafactory, MethodHandles, MethodType}
 import java.util.Objects.requireNonNull
+import java.util.function.Supplier
 
 import com.google.common.collect.ImmutableMap
 import org.apache.thrift.{AsyncProcessFunction, ProcessFunction, TApplicationException, TBase, TBaseAsyncProcessor, TBaseProcessor, TException, TFieldIdEnum}
@@ -110,7 +112,7 @@ object ThriftHelper {
     var successField:TFieldIdEnum = null
     if (result != null) { // if not oneway
       val resultType= result.getClass
-      val metaDataMap = FieldMetaData.getStructMetaDataMap(resultType.asInstanceOf[Nothing])
+      val metaDataMap = FieldMetaData.getStructMetaDataMap(resultType.asInstanceOf[Class[TBase[_, _]]])
       for (e <- metaDataMap.entrySet().asScala) {
         val key = e.getKey
         val fieldName = key.getFieldName
@@ -126,7 +128,7 @@ object ThriftHelper {
     val exceptionFieldsBuilder = ImmutableMap.builder[Class[Throwable], TFieldIdEnum]
     if (result != null) { // if not oneway
       val resultType = result.getClass
-      val metaDataMap = FieldMetaData.getStructMetaDataMap(resultType.asInstanceOf[Nothing])
+      val metaDataMap = FieldMetaData.getStructMetaDataMap(resultType.asInstanceOf[Class[TBase[_, _]]])
       for (e <- metaDataMap.entrySet().asScala) {
         val key = e.getKey
         val fieldName = key.getFieldName
@@ -179,15 +181,40 @@ object ThriftHelper {
   def checkDuplicateMethodName(methodNames: mutable.Set[String], name: String):Unit = if (methodNames.contains(name)) throw new IllegalArgumentException("duplicate Thrift method name: " + name)
 
   def getAllInterfaces(clazz:Class[_]):Set[Class[_]] = {
-    val result = mutable.Set.empty
+    val result = mutable.Set.empty[Class[_]]
     var cls = clazz
     while(cls != null && cls != classOf[Object]){
-      result ++ cls.getInterfaces
+      result ++= cls.getInterfaces
       cls = cls.getSuperclass
     }
     result.toSet
   }
 
+  /**
+    * 注册时为result结构体生成构造器,调用时直接new,代替原来对模板实例的deepCopy.
+    * 优先用LambdaMetafactory生成Supplier;结构体所在的ClassLoader看不到本类时(如开发模式)退回到MethodHandle
+    */
+  def constructorOf(clazz: Class[_]): Supplier[TBase[_, _]] = {
+    val lookup = MethodHandles.lookup()
+    val constructor = lookup.findConstructor(clazz, MethodType.methodType(Void.TYPE))
+    try {
+      val site = LambdaMetafactory.metafactory(lookup, "get",
+        MethodType.methodType(classOf[Supplier[_]]),
+        MethodType.methodType(classOf[Object]),
+        constructor,
+        MethodType.methodType(clazz))
+      val supplier = site.getTarget.invokeWithArguments().asInstanceOf[Supplier[TBase[_, _]]]
+      supplier.get() //确认生成的类可以访问结构体
+      supplier
+    } catch {
+      case e: Throwable =>
+        logger.debug("Failed to create a lambda constructor for " + clazz.getName + ", fallback to MethodHandle", e)
+        new Supplier[TBase[_, _]] {
+          override def get(): TBase[_, _] = constructor.invokeWithArguments().asInstanceOf[TBase[_, _]]
+        }
+    }
+  }
+
   def invokeSynchronously(impl: AnyRef, func: ThriftFunction, args: TBase[_,_], reply: Promise[Any]): Unit = {
     val f = func.syncFunc
     try {
@@ -333,10 +360,12 @@ class ThriftFunction(val serviceType:Class[_],
     newArgs
   }
 
+  private val resultFactory: Supplier[TBase[_,_]] = if (result == null) null else ThriftHelper.constructorOf(result.getClass)
+
   /**
     * Returns a new empty result instance.
     */
-  def newResult: TBase[_,_] = result.deepCopy().asInstanceOf[TBase[_,_]]
+  def newResult: TBase[_,_] = resultFactory.get()
 
   /**
     * Sets the success field of the specified {@code result} to the specified {@code value}.
@@ -374,6 +403,35 @@ class ThriftFunction(val serviceType:Class[_],
     false
   }
 
+  /**
+    * 调用服务实现,返回可以直接编码的result结构体,单向方法返回null.
+    * 同步方法直接使用ProcessFunction生成的result,声明的异常已经设置在其中,不再取出返回值后重新包装
+    */
+  def invokeResult(impl: AnyRef, tArgs: TBase[_,_]): Future[TBase[_,_]] = {
+    val reply = Promise[TBase[_,_]]()
+    try {
+      if (isAsync) {
+        asyncFunc.start(impl, tArgs, new AsyncMethodCallback[AnyRef]() {
+          override def onComplete(response: AnyRef): Unit = {
+            if (isOneWay) reply.success(null)
+            else {
+              val r = newResult
+              setSuccess(r, response)
+              reply.success(r)
+            }
+          }
+          override def onError(e: Exception): Unit = reply.failure(e)
+        })
+      } else {
+        reply.success(syncFunc.getResult(impl, tArgs))
+      }
+    } catch {
+      case t: Throwable =>
+        reply.failure(t)
+    }
+    reply.future
+  }
+
   def invoke(impl: AnyRef,tArgs: TBase[_,_]): Future[Any] = {
     val func = this
     val reply = Promise[Any]()
@@ -444,7 +502,7 @@ class ThriftServiceMetadata {
 
   private def registerFunction(methodNames: mutable.Set[String], iface: Class[_], name: String, func: Any) = {
     ThriftHelper.checkDuplicateMethodName(methodNames, name)
-    methodNames ++ name
+    methodNames += name
     try {
       var f:ThriftFunction = null
       if (func.isInstanceOf[ProcessFunction[_, _ <: TBase[_, _ <: TFieldIdEnum]]]) f = new ThriftFunction(iface, func.asInstanceOf[ProcessFunction[_,_]])
@@ -468,6 +526,8 @@ class ThriftServiceMetadata {
     */
   def getFunction(method: String): Option[ThriftFunction] = functions.get(method)
 
+  def getFunctions: Map[String, ThriftFunction] = functions.toMap
+
 
 }
 
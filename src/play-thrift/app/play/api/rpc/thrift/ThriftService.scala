@@ -3,7 +3,6 @@ package play.api.rpc.thrift
 import akka.util.ByteString
 import com.google.common.base.Throwables
 import org.apache.thrift.protocol.{TMessage, TMessageType, TProtocol}
-import org.apache.thrift.transport.TMemoryBuffer
 import org.apache.thrift.{TApplicationException, TBase, TException}
 import org.slf4j.LoggerFactory
 import play.api.http.{HeaderNames, MediaType}
@@ -33,53 +32,62 @@ import scala.util.{Failure, Success, Try}
 trait ThriftService {
   val logger = LoggerFactory.getLogger(classOf[ThriftService])
   val entries = mutable.Map.empty[String,ThriftServiceEntry]
+  /**
+    * 注册时生成的分发表,key为请求头中完整的方法名(service:method或method),每次调用只查一次
+    */
+  @volatile private var dispatch = Map.empty[String,(ThriftServiceEntry,ThriftFunction)]
 
   def apply(request: Request[RawBuffer]):Future[Result] = {
-    val transport = request.body.asBytes().map(new TByteStringTransport((_)))
-    if(transport.isEmpty){
+    val body = request.body.asBytes()
+    if(body.isEmpty){
       if(logger.isDebugEnabled()) logger.debug("Failed to decode Thrift header,request body is empty")
       return Future.successful(Results.BadRequest("Failed to decode Thrift header,request body is empty"))
 
     }
     val (mediaType,format) = ThriftProtocolFactories.toSerializationFormat(request.headers.get(HeaderNames.CONTENT_TYPE))
-    val inProto:TProtocol = ThriftProtocolFactories.createTProtocol(format,transport.get)
+    process(body.get,format) match {
+      case Left(message) => Future.successful(Results.BadRequest(message))
+      case Right(reply) => reply.map(toResult(_,mediaType))(executionContext)
+    }
+  }
+
+  /**
+    * 处理一个完整的Thrift消息,与传输方式无关,HTTP和TCP共用
+    *
+    * @return 无法解析消息头时返回Left(错误信息),否则返回编码后的响应,单向调用的响应为空
+    */
+  def process(body: ByteString, format: Format.Type): Either[String, Future[ByteString]] = {
+    val inProto:TProtocol = ThriftProtocolFactories.createTProtocol(format,new TByteStringTransport(body))
 
     Try(inProto.readMessageBegin()) match {
       case Failure(t) => {
         if(logger.isDebugEnabled()) logger.debug("Failed to decode Thrift header:",t)
-         return Future.successful(Results.BadRequest("Failed to decode Thrift header: " +Throwables.getStackTraceAsString(t)))
+        Left("Failed to decode Thrift header: " +Throwables.getStackTraceAsString(t))
       }
       case Success(header) => {
         val seqId = header.seqid
         val typeValue = header.`type`
-        val colonIdx = header.name.indexOf(':')
-        var serviceName:String = null
-        var methodName:String = null
-        if (colonIdx < 0) {
-          serviceName = ""
-          methodName = header.name
-        } else {
-          serviceName = header.name.substring(0, colonIdx)
-          methodName = header.name.substring(colonIdx + 1)
+        val target = dispatch.get(header.name)
+        val methodName = target.map(_._2.name).getOrElse{
+          val colonIdx = header.name.indexOf(':')
+          if (colonIdx < 0) header.name else header.name.substring(colonIdx + 1)
         }
 
         // Basic sanity check. We usually should never fail here.// Basic sanity check. We usually should never fail here.
 
         if ((typeValue != TMessageType.CALL) && (typeValue != TMessageType.ONEWAY)) {
           val cause = new TApplicationException(TApplicationException.INVALID_MESSAGE_TYPE, "unexpected TMessageType: " + ThriftHelper.typeString(typeValue))
-          val result = handlePreDecodeException(methodName,seqId,format,cause)
-          return Future.successful(toResult(result,mediaType))
+          return Right(Future.successful(handlePreDecodeException(methodName,seqId,format,cause)))
         }
 
         // Ensure that such a method exists.// Ensure that such a method exists.
 
-        val entry:Option[ThriftServiceEntry] = entries.get(serviceName)
-        val func:Option[ThriftFunction] = entry.flatMap(_.metadata.getFunction(methodName))
+        val entry:Option[ThriftServiceEntry] = target.map(_._1)
+        val func:Option[ThriftFunction] = target.map(_._2)
 
         if (func.isEmpty) {
           val cause = new TApplicationException(TApplicationException.UNKNOWN_METHOD, "unknown method: " + header.name)
-          val result = handlePreDecodeException(methodName,seqId,format,cause)
-          return Future.successful(toResult(result,mediaType))
+          return Right(Future.successful(handlePreDecodeException(methodName,seqId,format,cause)))
         }
         Try{
           val args = func.get.newArgs
@@ -90,14 +98,13 @@ trait ThriftService {
           case Failure(t) => {
             if(logger.isDebugEnabled()) logger.debug("Failed to decode Thrift arguments:",t)
             val cause = new TApplicationException(TApplicationException.PROTOCOL_ERROR, "failed to decode arguments: " + t)
-            val result = handlePreDecodeException(methodName,seqId,format,cause)
-            return Future.successful(toResult(result,mediaType))
+            Right(Future.successful(handlePreDecodeException(methodName,seqId,format,cause)))
           }
           case Success(args) => {
             implicit val ex = executionContext
-            invoke(methodName,seqId,func.get,entry.get,args,format).recover{
+            Right(invoke(methodName,seqId,func.get,entry.get,args,format).recover{
               case t:Throwable => handleException(methodName,seqId,func.get,format,t)
-            }.map(toResult(_,mediaType))
+            })
           }
         }
       }
@@ -117,15 +124,15 @@ trait ThriftService {
   def encodeSuccess(name: String, seqId: Int,format:Format.Type,result: TBase[_,_]):ByteString = {
     //val buf:ByteBuffer = null;//ctx.alloc.buffer(128)
     var success = false
+    val transport = TByteStringOutputTransport()
     try {
-      val transport = new TMemoryBuffer(128)
       val outProto:TProtocol = ThriftProtocolFactories.createTProtocol(format,transport)
       val header = new TMessage(name, TMessageType.REPLY, seqId)
       outProto.writeMessageBegin(header)
       result.write(outProto)
       outProto.writeMessageEnd()
 
-      val encoded = ByteString(transport.getArray)
+      val encoded = transport.result()
       success = true
       encoded
     } catch {
@@ -133,7 +140,7 @@ trait ThriftService {
         throw new RuntimeException(e) // Should never reach here.
 
     } finally{
-      //if (!success) buf.release
+      if (!success) transport.discard()
     }
   }
 
@@ -145,14 +152,14 @@ trait ThriftService {
       appException = new TApplicationException(TApplicationException.INTERNAL_ERROR, "internal server error:" + System.lineSeparator + "---- BEGIN server-side trace ----" + System.lineSeparator + Throwables.getStackTraceAsString(cause) + "---- END server-side trace ----")
     }
     var success = false
+    val transport = TByteStringOutputTransport()
     try {
-      val transport = new TMemoryBuffer(128)
       val outProto:TProtocol = ThriftProtocolFactories.createTProtocol(format,transport)
       val header = new TMessage(name, TMessageType.EXCEPTION, seqId)
       outProto.writeMessageBegin(header)
       appException.write(outProto)
       outProto.writeMessageEnd()
-      val encoded = ByteString(transport.getArray)
+      val encoded = transport.result()
       success = true
       encoded
     } catch {
@@ -160,7 +167,7 @@ trait ThriftService {
         throw new RuntimeException(e) // Should never reach here.
 
     } finally {
-      //if (!success) buf.release
+      if (!success) transport.discard()
     }
   }
 
@@ -176,14 +183,11 @@ trait ThriftService {
   def handleOneWaySuccess(f: ThriftFunction): ByteString = ByteString.empty
 
   def invoke(name:String,seqId: Int, f: ThriftFunction, entry: ThriftServiceEntry, args: TBase[_,_],format:Format.Type)(implicit ex: ExecutionContext): Future[ByteString] = {
-    f.invoke(entry.implementation,args).map(result => {
+    f.invokeResult(entry.implementation,args).map(result => {
       if(f.isOneWay){
         handleOneWaySuccess(f)
       }else {
-        Try(handleSuccess(seqId, f, result)) match {
-          case Success(r) => encodeSuccess(name, seqId, format, r)
-          case Failure(t) => handleException(name, seqId, f, format, t)
-        }
+        encodeSuccess(name, seqId, format, result)
       }
     })
   }
@@ -192,5 +196,10 @@ trait ThriftService {
 
   def register(impRef:AnyRef):Unit = register("",impRef)
 
-  def register(name:String,impRef: AnyRef):Unit = entries += (name -> new ThriftServiceEntry(name,impRef))
+  def register(name:String,impRef: AnyRef):Unit = synchronized {
+    entries += (name -> new ThriftServiceEntry(name,impRef))
+    dispatch = entries.values.flatMap(entry => entry.metadata.getFunctions.map{
+      case (method, func) => (if (entry.name.isEmpty) method else entry.name + ":" + method) -> (entry -> func)
+    }).toMap
+  }
 }
@@ -0,0 +1,48 @@
+package play.api.rpc.thrift
+
+import akka.actor.ActorSystem
+import akka.stream.Materializer
+import akka.stream.scaladsl.{Flow, Framing, Sink, Tcp}
+import akka.util.ByteString
+import org.slf4j.LoggerFactory
+import play.api.rpc.thrift.ThriftProtocolFactories.Format
+
+import scala.concurrent.Future
+
+/**
+  * Thrift的TCP服务端,与{@link ThriftService}的HTTP接口共用同一套服务注册和处理逻辑.
+  * 每个消息前面是4字节大端长度(与TFramedTransport相同),一个连接上可以同时有多个请求,
+  * 响应按完成的先后顺序返回,客户端通过seqId对应请求;单向调用没有响应.
+  * 无法解析消息头时关闭连接,因为已经无法知道响应对应哪个请求
+  * <pre>
+  * new ThriftTcpServer(thriftService, Format.TBINARY).bind("0.0.0.0", 9090)
+  * </pre>
+  */
+class ThriftTcpServer(val service: ThriftService,
+                      val format: Format.Type = Format.TBINARY,
+                      val maxFrameLength: Int = ThriftTcpServer.DefaultMaxFrameLength,
+                      val parallelism: Int = ThriftTcpServer.DefaultParallelism)(implicit system: ActorSystem, mat: Materializer) {
+  private val logger = LoggerFactory.getLogger(classOf[ThriftTcpServer])
+
+  private def handler: Flow[ByteString, ByteString, Any] = {
+    Framing.simpleFramingProtocol(maxFrameLength).reversed.join(
+      Flow[ByteString].mapAsyncUnordered(parallelism) { frame =>
+        service.process(frame, format) match {
+          case Left(message) => Future.failed(new IllegalStateException(message))
+          case Right(reply) => reply
+        }
+      }.filter(_.nonEmpty))
+  }
+
+  def bind(interface: String, port: Int): Future[Tcp.ServerBinding] = {
+    Tcp().bind(interface, port).to(Sink.foreach { conn =>
+      if (logger.isDebugEnabled()) logger.debug("Thrift tcp connection from {}", conn.remoteAddress)
+      conn.handleWith(handler)
+    }).run()
+  }
+}
+
+object ThriftTcpServer {
+  val DefaultMaxFrameLength: Int = 16 * 1024 * 1024
+  val DefaultParallelism: Int = 64
+}
@@ -0,0 +1,151 @@
+package play.api.rpc.thrift
+
+import java.io.IOException
+import java.util.concurrent.{ConcurrentHashMap, LinkedBlockingQueue, TimeUnit}
+
+import akka.actor.ActorSystem
+import akka.stream.scaladsl.Tcp
+import akka.stream.{ActorMaterializer, Materializer}
+import akka.util.ByteString
+import org.apache.thrift.protocol.{TBinaryProtocol, TMessage, TMessageType}
+import org.apache.thrift.transport.{TMemoryBuffer, TMemoryInputTransport}
+import org.junit.Assert._
+import org.junit.{After, Before, Test}
+import play.api.rpc.thrift.ThriftProtocolFactories.Format
+import play.libs.transport.thrift.{ThriftClient, ThriftTransport}
+
+import scala.concurrent.duration._
+import scala.concurrent.{Await, ExecutionContext, Future, Promise}
+
+/**
+  * TTcpMuxClient和ThriftTcpServer之间的完整往返,服务端的响应由测试控制完成的时机:
+  * <ul>
+  *   <li>slow: 测试调用reply后才返回</li>
+  *   <li>echo: 立即返回</li>
+  *   <li>drop: 无法处理,服务端关闭连接</li>
+  * </ul>
+  */
+class TTcpMuxClientTest {
+  import TTcpMuxClientTest._
+
+  private implicit var system: ActorSystem = _
+  private implicit var mat: Materializer = _
+  private var binding: Tcp.ServerBinding = _
+  private var service: StubService = _
+  private var client: TTcpMuxClient = _
+
+  @Before
+  def setup(): Unit = {
+    system = ActorSystem("thrift-tcp-test")
+    mat = ActorMaterializer()
+    service = new StubService()(system.dispatcher)
+    binding = Await.result(new ThriftTcpServer(service, Format.TBINARY).bind("127.0.0.1", 0), Timeout)
+    val thriftClient = ThriftClient.builder()
+      .withHost("http://127.0.0.1:" + binding.localAddress.getPort)
+      .withTransport(ThriftTransport.TCP)
+      .withTcpConnections(1)
+      .withRetryCount(0)
+      .withReadTimeout(Timeout.toMillis.toInt)
+      .build()
+    client = new TTcpMuxClient(thriftClient, seqIdOf)
+  }
+
+  @After
+  def teardown(): Unit = {
+    client.close()
+    Await.ready(binding.unbind(), Timeout)
+    Await.ready(system.terminate(), Timeout)
+  }
+
+  private def call(name: String, seqId: Int): Future[Array[Byte]] = {
+    val message = encode(name, TMessageType.CALL, seqId)
+    client.execute(seqId, message, message.length, oneway = false)
+  }
+
+  /**
+    * 同一个连接上同时发出多个请求,服务端不等前面的请求完成就能收到后面的请求,
+    * 响应按服务端完成的顺序返回,客户端按seqId交给对应的调用方
+    */
+  @Test
+  def testMultiplexOutOfOrder(): Unit = {
+    val calls = (1 to 5).map(i => i -> call("slow", i)).toMap
+    for (_ <- 1 to 5) service.awaitReceived()
+
+    for (i <- 5 to 1 by -1) {
+      service.reply(i)
+      assertEquals(i, seqIdOf(Await.result(calls(i), Timeout)))
+      for (j <- 1 until i) assertFalse(calls(j).isCompleted)
+    }
+
+    //慢请求进行中时,快请求不需要等待
+    val slow = call("slow", 6)
+    assertEquals(6, service.awaitReceived())
+    assertEquals(7, seqIdOf(Await.result(call("echo", 7), Timeout)))
+    assertFalse(slow.isCompleted)
+    service.reply(6)
+    assertEquals(6, seqIdOf(Await.result(slow, Timeout)))
+  }
+
+  /**
+    * 连接断开时所有未完成的请求都失败,之后的请求重新建立连接
+    */
+  @Test
+  def testConnectionDrop(): Unit = {
+    val pending = (1 to 3).map(call("slow", _))
+    for (_ <- 1 to 3) service.awaitReceived()
+
+    val dropped = call("drop", 4)
+    (pending :+ dropped).foreach { f =>
+      Await.ready(f, Timeout)
+      assertTrue(f.value.get.failed.get.isInstanceOf[IOException])
+    }
+
+    assertEquals(5, seqIdOf(Await.result(call("echo", 5), Timeout)))
+  }
+}
+
+object TTcpMuxClientTest {
+  val Timeout: FiniteDuration = 5.seconds
+
+  def encode(name: String, messageType: Byte, seqId: Int): Array[Byte] = {
+    val buffer = new TMemoryBuffer(64)
+    val protocol = new TBinaryProtocol(buffer)
+    protocol.writeMessageBegin(new TMessage(name, messageType, seqId))
+    protocol.writeMessageEnd()
+    java.util.Arrays.copyOf(buffer.getArray, buffer.length())
+  }
+
+  def seqIdOf(message: Array[Byte]): Int =
+    new TBinaryProtocol(new TMemoryInputTransport(message)).readMessageBegin().seqid
+
+  class StubService(implicit ec: ExecutionContext) extends ThriftService {
+    private val waiting = new ConcurrentHashMap[Int, Promise[ByteString]]()
+    private val received = new LinkedBlockingQueue[Integer]()
+
+    override def executionContext: ExecutionContext = ec
+
+    /**
+      * 等待服务端收到下一个slow请求,返回它的seqId
+      */
+    def awaitReceived(): Int = {
+      val seqId = received.poll(Timeout.toMillis, TimeUnit.MILLISECONDS)
+      if (seqId == null) throw new AssertionError("no request received in " + Timeout)
+      seqId
+    }
+
+    def reply(seqId: Int): Unit = waiting.remove(seqId).success(ByteString(encode("slow", TMessageType.REPLY, seqId)))
+
+    override def process(body: ByteString, format: Format.Type): Either[String, Future[ByteString]] = {
+      val header = new TBinaryProtocol(new TByteStringTransport(body)).readMessageBegin()
+      header.name match {
+        case "drop" => Left("drop connection")
+        case "echo" => Right(Future.successful(ByteString(encode(header.name, TMessageType.REPLY, header.seqid))))
+        case _ =>
+          val promise = Promise[ByteString]()
+          waiting.put(header.seqid, promise)
+          received.put(header.seqid)
+          Right(promise.future)
+      }
+    }
+  }
+}
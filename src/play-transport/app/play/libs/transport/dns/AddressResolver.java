@@ -0,0 +1,11 @@
+package play.libs.transport.dns;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 非阻塞的域名解析,解析结果带有效期,由{@link AsyncDNS}缓存和提前刷新
+ */
+public interface AddressResolver {
+
+    public CompletionStage<ResolvedAddress> resolve(String host);
+}
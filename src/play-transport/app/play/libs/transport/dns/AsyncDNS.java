@@ -0,0 +1,220 @@
+package play.libs.transport.dns;
+
+import org.apache.http.conn.util.InetAddressUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 提前刷新的域名缓存:
+ * <ul>
+ *     <li>记录过了有效期的refreshAhead比例后在后台重新解析,调用方拿到的一直是缓存中的地址,不会阻塞在解析上</li>
+ *     <li>解析失败或者超过有效期还没刷新成功时,在maxStale时间内继续使用旧地址</li>
+ *     <li>只有第一次解析某个域名时需要等待结果,同一个域名同时只有一个解析请求</li>
+ *     <li>超过idle时间没有访问的域名不再刷新并从缓存中移除</li>
+ * </ul>
+ */
+public class AsyncDNS {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncDNS.class);
+    private static final long RETRY_MILLIS = 1000; //刷新失败后的重试间隔
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "dns-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AddressResolver resolver;
+    private final double refreshAhead;
+    private final long maxStaleMillis;
+    private final long idleMillis;
+    private final long timeoutMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public AsyncDNS(AddressResolver resolver, double refreshAhead, long maxStaleMillis, long idleMillis, long timeoutMillis) {
+        this.resolver = resolver;
+        this.refreshAhead = refreshAhead;
+        this.maxStaleMillis = maxStaleMillis;
+        this.idleMillis = idleMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 定时刷新快到期的域名,清理长时间没有访问的域名
+     */
+    public AsyncDNS startRefresh(long intervalMillis) {
+        SWEEPER.scheduleWithFixedDelay(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public InetAddress[] getAllByName(String host) throws ExecutionException {
+        if (InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host)) {
+            return literal(host);
+        }
+        long now = currentTimeMillis();
+        Entry entry = entries.computeIfAbsent(host, Entry::new);
+        entry.accessAt = now;
+        InetAddress[] addresses = entry.addresses;
+        if (addresses != null) {
+            if (now >= entry.refreshAt) {
+                refresh(entry);
+            }
+            if (now < entry.expireAt + maxStaleMillis) {
+                return addresses;
+            }
+        }
+        return await(refresh(entry), host);
+    }
+
+    /**
+     * 跳过缓存重新解析,结果会更新到缓存中
+     */
+    public InetAddress[] refresh(String host) throws ExecutionException {
+        if (InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host)) {
+            return literal(host);
+        }
+        Entry entry = entries.computeIfAbsent(host, Entry::new);
+        entry.accessAt = currentTimeMillis();
+        return await(refresh(entry), host);
+    }
+
+    public CompletionStage<InetAddress[]> resolveAsync(String host) {
+        Entry entry = entries.computeIfAbsent(host, Entry::new);
+        entry.accessAt = currentTimeMillis();
+        InetAddress[] addresses = entry.addresses;
+        if (addresses != null && entry.accessAt < entry.expireAt + maxStaleMillis) {
+            if (entry.accessAt >= entry.refreshAt) {
+                refresh(entry);
+            }
+            return CompletableFuture.completedFuture(addresses);
+        }
+        return refresh(entry);
+    }
+
+    /**
+     * 缓存中有没有过期(包括maxStale)的地址,或者是IP地址;为true时{@link #getAllByName}不会等待解析
+     */
+    public boolean isResolved(String host) {
+        if (InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host)) {
+            return true;
+        }
+        Entry entry = entries.get(host);
+        return entry != null && entry.addresses != null && currentTimeMillis() < entry.expireAt + maxStaleMillis;
+    }
+
+    /**
+     * 跳过缓存重新解析,不等待结果
+     */
+    public CompletionStage<InetAddress[]> refreshAsync(String host) {
+        Entry entry = entries.computeIfAbsent(host, Entry::new);
+        entry.accessAt = currentTimeMillis();
+        return refresh(entry);
+    }
+
+    private CompletableFuture<InetAddress[]> refresh(final Entry entry) {
+        CompletableFuture<InetAddress[]> future;
+        while (true) {
+            CompletableFuture<InetAddress[]> pending = entry.pending.get();
+            if (pending != null) {
+                return pending;
+            }
+            //CAS失败时另一个解析可能已经完成并清空了pending,重新读取
+            future = new CompletableFuture<>();
+            if (entry.pending.compareAndSet(null, future)) {
+                break;
+            }
+        }
+        try {
+            resolver.resolve(entry.host).whenComplete((resolved, e) -> complete(entry, future, resolved, e));
+        } catch (Throwable e) {
+            complete(entry, future, null, e);
+        }
+        return future;
+    }
+
+    private void complete(Entry entry, CompletableFuture<InetAddress[]> future, ResolvedAddress resolved, Throwable e) {
+        long now = currentTimeMillis();
+        if (e == null && resolved != null && resolved.getAddresses().length > 0) {
+            long ttl = resolved.getTtlMillis();
+            entry.addresses = resolved.getAddresses();
+            entry.refreshAt = now + (long) (ttl * refreshAhead);
+            entry.expireAt = now + ttl;
+            entry.pending.set(null);
+            future.complete(resolved.getAddresses());
+        } else {
+            if (entry.addresses != null) {
+                LOGGER.warn("refresh dns of host {} error,keep using last addresses:{}", entry.host, e == null ? "empty result" : e.getMessage());
+                entry.refreshAt = now + RETRY_MILLIS;
+            }
+            entry.pending.set(null);
+            future.completeExceptionally(e != null ? e : new UnknownHostException(entry.host));
+        }
+    }
+
+    private InetAddress[] await(CompletableFuture<InetAddress[]> future, String host) throws ExecutionException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | TimeoutException e) {
+            throw new ExecutionException("resolve host " + host + " timeout", e);
+        }
+    }
+
+    private void sweep() {
+        try {
+            long now = currentTimeMillis();
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (now - entry.accessAt > idleMillis) {
+                    it.remove();
+                } else if (entry.addresses != null && now >= entry.refreshAt) {
+                    refresh(entry);
+                }
+            }
+        } catch (Throwable e) {
+            LOGGER.error("refresh dns cache error", e);
+        }
+    }
+
+    private static InetAddress[] literal(String host) throws ExecutionException {
+        try {
+            return new InetAddress[]{InetAddress.getByName(host)}; //IP地址不会发起DNS查询
+        } catch (Exception e) {
+            throw new ExecutionException(e);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** 测试时可以覆盖 **/
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    static final class Entry {
+        final String host;
+        final AtomicReference<CompletableFuture<InetAddress[]>> pending = new AtomicReference<>();
+        volatile InetAddress[] addresses;
+        volatile long refreshAt;
+        volatile long expireAt;
+        volatile long accessAt;
+
+        Entry(String host) {
+            this.host = host;
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package play.libs.transport.dns;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import play.Configuration;
+import play.libs.transport.http.client.HttpClientFactory;
 
 import java.net.InetAddress;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 
 /**
  * JVM为了提高效率，会将第一次的DNS结果缓存起来。而且你不重新启动JVM缓存永远不失效。
@@ -20,22 +19,75 @@ import java.util.concurrent.TimeUnit;
  */
 public class DNS {
     private static Logger LOGGER = LoggerFactory.getLogger(DNS.class);
-    private static final LoadingCache<String, InetAddress[]> ADDRS_CACHE = CacheBuilder.newBuilder()
-                                .expireAfterWrite(10, TimeUnit.SECONDS)
-                                .maximumSize(1000)
-                                .build(new CacheLoader<String, InetAddress[]>() {
-                                    @Override
-                                    public InetAddress[] load(String host) throws Exception {
-                                        try{
-                                            return DNSLookup.getAllByName(host);
-                                        }catch (Exception e){
-                                            LOGGER.error("load ip address by host["+host+"] error",e);
-                                            throw e;
-                                        }
-                                    }
-                                });
+    private static volatile AsyncDNS CACHE;
 
+    /**
+     * 缓存中的地址,快到期时在后台刷新,调用方不等待解析;只有第一次解析某个域名时会等待
+     */
     public static InetAddress[] getAllByName(String host) throws ExecutionException {
-        return ADDRS_CACHE.get(host);
+        return getCache().getAllByName(host);
+    }
+
+    /**
+     * 跳过缓存重新解析
+     */
+    public static InetAddress[] refresh(String host) throws ExecutionException {
+        return getCache().refresh(host);
+    }
+
+    /**
+     * 为true时{@link #getAllByName}直接返回缓存中的地址
+     */
+    public static boolean isResolved(String host) {
+        return getCache().isResolved(host);
+    }
+
+    public static CompletionStage<InetAddress[]> resolveAsync(String host) {
+        return getCache().resolveAsync(host);
+    }
+
+    public static CompletionStage<InetAddress[]> refreshAsync(String host) {
+        return getCache().refreshAsync(host);
+    }
+
+    public static AsyncDNS getCache() {
+        if (CACHE == null) {
+            synchronized (DNS.class) {
+                if (CACHE == null) {
+                    CACHE = createCache(HttpClientFactory.getConfiguration());
+                }
+            }
+        }
+        return CACHE;
+    }
+
+    /**
+     * 替换默认的缓存,测试时可以配合{@link StaticAddressResolver}使用
+     */
+    public static void setCache(AsyncDNS cache) {
+        CACHE = cache;
+    }
+
+    /**
+     * ws.dns.resolver: jdk(默认,固定有效期ws.dns.ttl)或dnsjava(直接查询DNS服务器,使用记录的TTL)
+     */
+    public static AsyncDNS createCache(Configuration conf) {
+        long ttl = conf.getMilliseconds("ws.dns.ttl", 10 * 1000L);
+        AddressResolver resolver = new JdkAddressResolver(ttl, conf.getInt("ws.dns.threads", 4));
+        if ("dnsjava".equalsIgnoreCase(conf.getString("ws.dns.resolver", "jdk"))) {
+            try {
+                resolver = new DnsJavaAddressResolver(resolver,
+                        conf.getMilliseconds("ws.dns.minTtl", 1000L),
+                        conf.getMilliseconds("ws.dns.maxTtl", 5 * 60 * 1000L));
+            } catch (Exception e) {
+                LOGGER.error("create dnsjava resolver error,use jdk resolver", e);
+            }
+        }
+        return new AsyncDNS(resolver,
+                conf.getDouble("ws.dns.refreshAhead", 0.8d),
+                conf.getMilliseconds("ws.dns.maxStale", 5 * 60 * 1000L),
+                conf.getMilliseconds("ws.dns.idle", 10 * 60 * 1000L),
+                conf.getMilliseconds("ws.dns.timeout", 5 * 1000L))
+                .startRefresh(1000);
     }
 }
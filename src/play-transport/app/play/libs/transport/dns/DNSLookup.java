@@ -7,7 +7,10 @@ public class DNSLookup {
     public static InetAddress[] getAllByName(String host) throws Exception{
           return getAllByName(host, false);
     }
+    /**
+     * @param force 为true时跳过缓存重新解析
+     */
     public static InetAddress[] getAllByName(String host, boolean force) throws Exception{
-          return InetAddress.getAllByName(host);
+          return force ? DNS.refresh(host) : DNS.getAllByName(host);
     }
 }
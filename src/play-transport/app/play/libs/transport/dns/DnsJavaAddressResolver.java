@@ -0,0 +1,103 @@
+package play.libs.transport.dns;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 基于dnsjava直接查询系统配置的DNS服务器,异步返回A记录并使用记录自带的TTL
+ * 不带点的短域名(依赖搜索域)、/etc/hosts中的域名以及没有A记录的域名交给fallback解析
+ */
+public class DnsJavaAddressResolver implements AddressResolver {
+    private final Resolver resolver;
+    private final AddressResolver fallback;
+    private final long minTtlMillis;
+    private final long maxTtlMillis;
+
+    public DnsJavaAddressResolver(AddressResolver fallback, long minTtlMillis, long maxTtlMillis) throws UnknownHostException {
+        this.resolver = new ExtendedResolver();
+        this.fallback = fallback;
+        this.minTtlMillis = minTtlMillis;
+        this.maxTtlMillis = maxTtlMillis;
+    }
+
+    @Override
+    public CompletionStage<ResolvedAddress> resolve(final String host) {
+        if (host.indexOf('.') < 0) {
+            return fallback.resolve(host);
+        }
+        final CompletableFuture<ResolvedAddress> future = new CompletableFuture<>();
+        try {
+            Record question = Record.newRecord(Name.fromString(host, Name.root), Type.A, DClass.IN);
+            resolver.sendAsync(Message.newQuery(question), new ResolverListener() {
+                @Override
+                public void receiveMessage(Object id, Message m) {
+                    try {
+                        ResolvedAddress resolved = toResolved(host, m);
+                        if (resolved != null) {
+                            future.complete(resolved);
+                        } else {
+                            fallback(host, future);
+                        }
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void handleException(Object id, Exception e) {
+                    fallback(host, future);
+                }
+            });
+        } catch (Throwable e) {
+            fallback(host, future);
+        }
+        return future;
+    }
+
+    private ResolvedAddress toResolved(String host, Message m) throws UnknownHostException {
+        if (m.getRcode() != Rcode.NOERROR) {
+            return null;
+        }
+        List<InetAddress> addresses = new ArrayList<>();
+        long ttl = maxTtlMillis;
+        for (Record r : m.getSectionArray(Section.ANSWER)) {
+            if (r instanceof ARecord) {
+                addresses.add(InetAddress.getByAddress(host, ((ARecord) r).getAddress().getAddress()));
+                ttl = Math.min(ttl, r.getTTL() * 1000);
+            } else if (r instanceof CNAMERecord) {
+                ttl = Math.min(ttl, r.getTTL() * 1000);
+            }
+        }
+        if (addresses.isEmpty()) {
+            return null;
+        }
+        return new ResolvedAddress(addresses.toArray(new InetAddress[addresses.size()]), Math.max(ttl, minTtlMillis));
+    }
+
+    private void fallback(String host, CompletableFuture<ResolvedAddress> future) {
+        fallback.resolve(host).whenComplete((resolved, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(resolved);
+            }
+        });
+    }
+}
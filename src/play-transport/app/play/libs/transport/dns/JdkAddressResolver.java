@@ -0,0 +1,43 @@
+package play.libs.transport.dns;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 使用JDK的InetAddress.getAllByName解析,阻塞调用放在单独的线程池中执行
+ * JDK拿不到记录的TTL,统一使用固定的有效期;支持/etc/hosts和搜索域
+ */
+public class JdkAddressResolver implements AddressResolver {
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private final ExecutorService executor;
+    private final long ttlMillis;
+
+    public JdkAddressResolver(long ttlMillis, int threads) {
+        this.ttlMillis = ttlMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "dns-resolver-" + THREAD_ID.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public CompletionStage<ResolvedAddress> resolve(String host) {
+        CompletableFuture<ResolvedAddress> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(new ResolvedAddress(InetAddress.getAllByName(host), ttlMillis));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,24 @@
+package play.libs.transport.dns;
+
+import java.net.InetAddress;
+
+/**
+ * 一次域名解析的结果和有效期
+ */
+public class ResolvedAddress {
+    private final InetAddress[] addresses;
+    private final long ttlMillis;
+
+    public ResolvedAddress(InetAddress[] addresses, long ttlMillis) {
+        this.addresses = addresses;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public InetAddress[] getAddresses() {
+        return addresses;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+}
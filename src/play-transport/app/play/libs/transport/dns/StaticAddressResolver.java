@@ -0,0 +1,80 @@
+package play.libs.transport.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地固定配置的解析器,用于测试:不访问网络,可以随时修改解析结果,并记录解析次数
+ */
+public class StaticAddressResolver implements AddressResolver {
+    private final Map<String, ResolvedAddress> records = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final List<Runnable> held = new ArrayList<>();
+    private boolean holding = false;
+
+    public StaticAddressResolver put(String host, long ttlMillis, String... ips) throws UnknownHostException {
+        InetAddress[] addresses = new InetAddress[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            addresses[i] = InetAddress.getByAddress(host, InetAddress.getByName(ips[i]).getAddress());
+        }
+        records.put(host, new ResolvedAddress(addresses, ttlMillis));
+        return this;
+    }
+
+    public StaticAddressResolver remove(String host) {
+        records.remove(host);
+        return this;
+    }
+
+    /**
+     * 之后的解析先不返回结果,{@link #release}时再按当时的记录完成,用来模拟慢的DNS服务器
+     */
+    public synchronized StaticAddressResolver hold() {
+        holding = true;
+        return this;
+    }
+
+    public StaticAddressResolver release() {
+        List<Runnable> pending;
+        synchronized (this) {
+            holding = false;
+            pending = new ArrayList<>(held);
+            held.clear();
+        }
+        pending.forEach(Runnable::run);
+        return this;
+    }
+
+    @Override
+    public CompletionStage<ResolvedAddress> resolve(String host) {
+        lookups.incrementAndGet();
+        CompletableFuture<ResolvedAddress> future = new CompletableFuture<>();
+        Runnable answer = () -> {
+            ResolvedAddress resolved = records.get(host);
+            if (resolved != null) {
+                future.complete(resolved);
+            } else {
+                future.completeExceptionally(new UnknownHostException(host));
+            }
+        };
+        synchronized (this) {
+            if (holding) {
+                held.add(answer);
+                return future;
+            }
+        }
+        answer.run();
+        return future;
+    }
+
+    public int getLookups() {
+        return lookups.get();
+    }
+}
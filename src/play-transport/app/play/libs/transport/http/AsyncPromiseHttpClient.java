@@ -1,35 +1,34 @@
 package play.libs.transport.http;
 
 import akka.dispatch.Futures;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.netflix.hystrix.exception.HystrixRuntimeException;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
 import play.libs.concurrent.Promise;
+import play.libs.transport.dns.DNS;
+import play.libs.transport.http.client.BufferedResponseConsumer;
+import play.libs.transport.hystrix.CircuitBreakerRegistry;
 import play.libs.transport.hystrix.HystrixCircuitBreaker;
 
 import java.net.URI;
+import java.util.concurrent.Future;
 
 public class AsyncPromiseHttpClient implements PromiseHttpClient{
     private CloseableHttpAsyncClient httpclient;
     private RequestConfig requestConfig;
     private long lastAccessAt;
     private String name;
-    private LoadingCache<String,HystrixCircuitBreaker> cache = CacheBuilder.newBuilder()
-                        .maximumSize(1 << 10)
-                        .build(new CacheLoader<String, HystrixCircuitBreaker>() {
-                            @Override
-                            public HystrixCircuitBreaker load(String host) throws Exception {
-                                return HystrixCircuitBreaker.Factory.create();
-                            }
-                        });
+    private boolean bufferedConsumer = false; //在I/O线程上读取完整的响应内容
+    private int maxResponseSize = BufferedResponseConsumer.DEFAULT_MAX_SIZE; //bufferedConsumer时响应内容的最大字节数
+    private CircuitBreakerRegistry breakers = new CircuitBreakerRegistry();
 
     public AsyncPromiseHttpClient(CloseableHttpAsyncClient httpclient, String name,RequestConfig requestConfig){
         this.httpclient = httpclient;
@@ -52,6 +51,15 @@ public class AsyncPromiseHttpClient implements PromiseHttpClient{
 
     @Override
     public Promise<HttpResponse> execute(HttpHost host, HttpUriRequest req) {
+        String hostname = host != null ? host.getHostName() : req.getURI().getHost();
+        if(hostname != null && !DNS.isResolved(hostname)){
+            //第一次访问的域名先异步解析,连接池在I/O线程中解析时直接命中缓存,不阻塞I/O线程
+            return Promise.wrap(DNS.resolveAsync(hostname).thenCompose(addresses -> doExecute(host, req)));
+        }
+        return doExecute(host, req);
+    }
+
+    private Promise<HttpResponse> doExecute(HttpHost host, HttpUriRequest req) {
         HystrixCircuitBreaker circuitBreaker = null;
         try {
            this.lastAccessAt = System.currentTimeMillis();
@@ -59,15 +67,20 @@ public class AsyncPromiseHttpClient implements PromiseHttpClient{
            if(!this.httpclient.isRunning()){
                this.httpclient.start();
            }
-           URI uri = req.getURI();
-           String tag = host != null ? host.toHostString() : (uri.getHost() + ":" + uri.getPort());
-           circuitBreaker = cache.get(tag);
+           circuitBreaker = breakers.get(host != null ? host : targetOf(req.getURI()));
            if(circuitBreaker.allowRequest()) {
                final scala.concurrent.Promise<HttpResponse> xPromise = Futures.promise();
-               if(host != null) {
-                   httpclient.execute(host, req, new NFutureCallback(circuitBreaker, xPromise));
+               final Future<HttpResponse> future;
+               if(bufferedConsumer){
+                   HttpAsyncRequestProducer producer = host != null ? HttpAsyncMethods.create(host, req) : HttpAsyncMethods.create(req);
+                   future = httpclient.execute(producer, new BufferedResponseConsumer(maxResponseSize), new NFutureCallback(circuitBreaker, xPromise));
+               }else if(host != null) {
+                   future = httpclient.execute(host, req, new NFutureCallback(circuitBreaker, xPromise));
                }else{
-                   httpclient.execute(req, new NFutureCallback(circuitBreaker, xPromise));
+                   future = httpclient.execute(req, new NFutureCallback(circuitBreaker, xPromise));
+               }
+               if(req instanceof HttpRequestBase){ //req.abort()时取消异步请求
+                   ((HttpRequestBase) req).setCancellable(() -> future.cancel(true));
                }
                return Promise.wrap(xPromise.future());
            }else{
@@ -83,11 +96,31 @@ public class AsyncPromiseHttpClient implements PromiseHttpClient{
        }
     }
     
+    static HttpHost targetOf(URI uri){
+        return new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+    }
+
     @Override
     public void close() {
         IOUtils.closeQuietly(httpclient);
     }
     
+    public boolean isBufferedConsumer() {
+        return bufferedConsumer;
+    }
+
+    public void setBufferedConsumer(boolean bufferedConsumer) {
+        this.bufferedConsumer = bufferedConsumer;
+    }
+
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
+    public void setMaxResponseSize(int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+
     public CloseableHttpAsyncClient getHttpClient(){
         return httpclient;
     }
@@ -114,8 +147,7 @@ public class AsyncPromiseHttpClient implements PromiseHttpClient{
         }
 
         @Override
-        public void cancelled() {
-            circuitBreaker.markFailure();
+        public void cancelled() { //主动取消的请求(如对冲请求中落后的一方)不计入熔断
             promise.failure(CANCEL_EXCEPTION);
         }
     }
@@ -89,6 +89,7 @@ public class HTTP {
                     .withHttpRequest(req)
                     .withHttpHandler(handler)
                     .withExecutionContext(context.getExecutionContext())
+                    .withHedgePolicy(context.getHedgePolicy())
                     .withTracer(tracer)
                     .build();
             invoke.run();
@@ -4,6 +4,7 @@ import brave.Span;
 import brave.Tracer;
 import brave.internal.HexCodec;
 import brave.propagation.TraceContext;
+import com.netflix.loadbalancer.BaseLoadBalancer;
 import com.netflix.loadbalancer.ILoadBalancer;
 import com.netflix.loadbalancer.LoadBalancerContext;
 import com.netflix.loadbalancer.Server;
@@ -12,6 +13,7 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.client.utils.URIUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,11 +23,14 @@ import play.libs.transport.http.client.HttpClientFactory;
 import play.libs.transport.http.handler.HTTPHandler;
 import play.libs.transport.http.result.HTTPResult;
 import play.libs.transport.loadbalancer.DefaultLoadBalancerRetryHandler;
+import play.libs.transport.loadbalancer.LatencyAwareRule;
 import play.libs.transport.loadbalancer.RetryHandler;
+import play.libs.transport.loadbalancer.ServerLatency;
 import scala.concurrent.ExecutionContext;
 
 import java.net.ConnectException;
 import java.net.URI;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
 
 public class HTTPInvoker implements Runnable{
@@ -40,6 +45,9 @@ public class HTTPInvoker implements Runnable{
     private final ExecutionContext executionContext;
     private final ExecutionInfoContext context = new ExecutionInfoContext();
     private final Tracer tracer;
+    private final HedgePolicy hedgePolicy;
+    /** 负载均衡使用{@link LatencyAwareRule}时才统计每台机器的延迟 **/
+    private final boolean trackLatency;
     private long startAt = 0;
     private int timeout = -1;
 
@@ -53,6 +61,9 @@ public class HTTPInvoker implements Runnable{
         this.loadBalancerContext = builder.loadBalancerContext;
         this.executionContext = builder.executionContext  == null ? Execution.httpPromiseContext() : builder.executionContext;
         this.tracer = builder.tracer;
+        this.hedgePolicy = builder.hedgePolicy;
+        this.trackLatency = loadBalancer instanceof BaseLoadBalancer
+                && ((BaseLoadBalancer) loadBalancer).getRule() instanceof LatencyAwareRule;
 
         RequestConfig requestConfig = null;
         if(request instanceof HttpRequestBase){
@@ -104,6 +115,8 @@ public class HTTPInvoker implements Runnable{
             if(!same){
                 context.setServer(server); //设置服务器
             }
+            //重试时复制一份请求,原请求可能作为对冲中落后的一方已经被abort
+            HttpUriRequest request = context.getAttemptCount() == 0 ? this.request : RequestBuilder.copy(this.request).build();
             context.incAttemptCount();
             makeInvoke(server,request,handler);
         } catch (Exception e) {
@@ -135,7 +148,57 @@ public class HTTPInvoker implements Runnable{
         }
         return target;
     }
-    public void makeInvoke(Server server, HttpUriRequest request, HTTPHandler handler){
+    public void makeInvoke(final Server server, HttpUriRequest request, final HTTPHandler handler){
+        Hedge hedge = null;
+        //只对冲第一次请求,重试的请求已经换过机器了
+        if(hedgePolicy != null && this.server == null && loadBalancerContext != null
+                && context.getAttemptCount() == 1 && hedgePolicy.isHedgeable(request)){
+            final Hedge h = hedge = new Hedge(request);
+            h.timer = hedgePolicy.schedule(() -> Promise.toExecutor(executionContext).execute(() -> hedge(h, server, handler)));
+        }
+        makeInvoke(server, request, handler, hedge);
+    }
+
+    /**
+     * 第一次请求在对冲延迟内没有返回,复制一份请求发到另一台机器
+     */
+    private void hedge(Hedge hedge, Server primary, HTTPHandler handler){
+        try {
+            Server server = selectOtherServer(primary);
+            if(server == null){ //没有其它可用的机器
+                return;
+            }
+            //不用clone(),clone出来的请求和原请求共用abort状态
+            HttpUriRequest request = RequestBuilder.copy(hedge.primary).build();
+            if(hedge.launch(request, server)){
+                makeInvoke(server, request, handler, hedge);
+            }
+        } catch (Throwable e) {
+            LOGGER.error("make hedged http invoke error,with request:" + hedge.primary, e);
+        }
+    }
+
+    /**
+     * 对冲请求胜出时,之后在同一台机器上的重试发到对冲请求的机器
+     */
+    private void settledBy(Hedge hedge, HttpUriRequest request){
+        if(request == hedge.hedged){
+            context.server = hedge.hedgedServer;
+        }
+    }
+
+    private Server selectOtherServer(Server primary) throws Exception {
+        for(int i = 0; i < 3; i++){
+            Server server = selectServer();
+            if(server != null && !server.equals(primary)){
+                return server;
+            }
+        }
+        return null;
+    }
+
+    private void makeInvoke(Server server, HttpUriRequest request, HTTPHandler handler, Hedge hedge){
+        ServerLatency latency = null;
         try {
             HttpHost host = determineTarget(request);
             if(server != null) host = new HttpHost(server.getHost(),server.getPort(),host.getSchemeName());
@@ -143,6 +206,9 @@ public class HTTPInvoker implements Runnable{
             Span span = tracer.nextSpan().name("HTTPInvoker.invoke").kind(Span.Kind.CLIENT).start();
             span.tag("server",server == null ? host.getHostName() : server.getHostPort());
             span.tag("attempt_count",context.getAttemptCount() + "");
+            if(hedge != null && request != hedge.primary){
+                span.tag("hedge","true");
+            }
             String reqUri = request.getURI().toString();
 
             if(LOGGER.isInfoEnabled()) {
@@ -151,24 +217,35 @@ public class HTTPInvoker implements Runnable{
 
             propagationTraceInfo(request, span);
 
+            if(server != null && trackLatency){
+                latency = ServerLatency.of(server);
+                latency.start();
+            }
+            long sendAt = System.currentTimeMillis();
             Promise<HttpResponse> promise = httpClient.execute(host,request);
-            promise.onRedeem(new SuccessCallback(span,handler,this,retryHandler), Promise.toExecutor(executionContext));
-            promise.onFailure(new FailureCallback(reqUri,span,handler,this,retryHandler),Promise.toExecutor(executionContext));
+            promise.onRedeem(new SuccessCallback(span,handler,this,retryHandler,request,hedge,latency,sendAt), Promise.toExecutor(executionContext));
+            promise.onFailure(new FailureCallback(reqUri,span,handler,this,retryHandler,request,hedge,latency,sendAt),Promise.toExecutor(executionContext));
 
         } catch (Throwable e) {
-            handler.onThrowable(e);
+            if(latency != null){ //execute同步抛出异常时回调不会执行,归还正在进行的请求数
+                latency.cancel();
+            }
+            if(hedge == null || hedge.complete(request, false)) {
+                handler.onThrowable(e);
+            }
             LOGGER.error("{} http error,with request:{},server:{}",httpClient.getName(),request,server);
         }
     }
 
     public void propagationTraceInfo(HttpUriRequest request, Span span) {
         TraceContext currentSpan = span.context();
-        request.addHeader("X-B3-TraceId",currentSpan.traceIdString());
-        request.addHeader("X-B3-SpanId", HexCodec.toLowerHex(currentSpan.spanId()));
+        //重试和对冲的请求会复用/复制同一个请求对象,这里覆盖而不是追加
+        request.setHeader("X-B3-TraceId",currentSpan.traceIdString());
+        request.setHeader("X-B3-SpanId", HexCodec.toLowerHex(currentSpan.spanId()));
         if(currentSpan.parentId() != null) {
-            request.addHeader("X-B3-ParentSpanId", HexCodec.toLowerHex(currentSpan.parentId()));
+            request.setHeader("X-B3-ParentSpanId", HexCodec.toLowerHex(currentSpan.parentId()));
         }
-        request.addHeader("X-B3-Sampled",String.valueOf(currentSpan.sampled()));
+        request.setHeader("X-B3-Sampled",String.valueOf(currentSpan.sampled()));
     }
 
     static class SuccessCallback implements Consumer<HttpResponse> {
@@ -176,16 +253,41 @@ public class HTTPInvoker implements Runnable{
         private HTTPInvoker invoke;
         private RetryHandler retryHandler;
         private Span span;
+        private HttpUriRequest request;
+        private Hedge hedge;
+        private ServerLatency latency;
+        private long sendAt;
         private static final Throwable FAIL_EXCEPTION = new ConnectException("Invalid result");
         
-        public SuccessCallback(Span span,HTTPHandler handler,HTTPInvoker invoke,RetryHandler retryHandler){
+        public SuccessCallback(Span span,HTTPHandler handler,HTTPInvoker invoke,RetryHandler retryHandler,HttpUriRequest request,Hedge hedge,ServerLatency latency,long sendAt){
             this.span = span;
             this.handler = handler;
             this.invoke = invoke;
             this.retryHandler = retryHandler;
+            this.request = request;
+            this.hedge = hedge;
+            this.latency = latency;
+            this.sendAt = sendAt;
         }
         @Override
         public void accept(HttpResponse a) {
+            long elapsed = System.currentTimeMillis() - sendAt;
+            if(latency != null){
+                latency.complete(elapsed, true);
+            }
+            //只统计可对冲请求的第一次发出,重试和对冲出去的请求不计入,避免拉低对冲延迟
+            if(hedge != null && request == hedge.primary){
+                invoke.hedgePolicy.record(elapsed);
+            }
+            if(hedge != null && !hedge.complete(request, true)){ //对冲请求中落后的一方,丢弃响应
+                span.tag("hedge_discard","true");
+                span.finish();
+                HTTPUtils.closeQuietly(a);
+                return;
+            }
+            if(hedge != null){
+                invoke.settledBy(hedge, request);
+            }
             HTTPResult<?> success = handler.tryComplete(a);//有流读取,存在堵塞的情况
             span.tag("status_code",success.getStatusCode() + "");
             span.finish();
@@ -229,6 +331,7 @@ public class HTTPInvoker implements Runnable{
         private HTTPHandler         handler;
         private ExecutionContext executionContext;
         private Tracer tracer;
+        private HedgePolicy hedgePolicy;
         private Builder() {}
     
         public Builder withExecutionContext(ExecutionContext executionContext) {
@@ -271,6 +374,11 @@ public class HTTPInvoker implements Runnable{
             return this;
         }
 
+        public Builder withHedgePolicy(HedgePolicy hedgePolicy){
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+
         public HTTPInvoker build() {
             if (httpClient == null) {
                 throw new IllegalArgumentException("httpClient needs to be set");
@@ -296,22 +404,44 @@ public class HTTPInvoker implements Runnable{
         private RetryHandler retryHandler;
         private Span span;
         private String reqUri;
+        private HttpUriRequest request;
+        private Hedge hedge;
+        private ServerLatency latency;
+        private long sendAt;
 
-        public FailureCallback(String reqUri,Span span,HTTPHandler handler,HTTPInvoker invoke,RetryHandler retryHandler){
+        public FailureCallback(String reqUri,Span span,HTTPHandler handler,HTTPInvoker invoke,RetryHandler retryHandler,HttpUriRequest request,Hedge hedge,ServerLatency latency,long sendAt){
             this.reqUri = reqUri;
             this.span = span;
             this.handler = handler;
             this.invoke = invoke;
             this.retryHandler = retryHandler;
+            this.request = request;
+            this.hedge = hedge;
+            this.latency = latency;
+            this.sendAt = sendAt;
         }
         @Override
         public void accept(Throwable e) {
+            if(latency != null){
+                if(request.isAborted()){ //主动取消的请求不计入响应时间
+                    latency.cancel();
+                }else{
+                    latency.complete(System.currentTimeMillis() - sendAt, false);
+                }
+            }
             final int maxRetrysSame = retryHandler.getMaxRetriesOnSameServer();
             final int maxRetrysNext = retryHandler.getMaxRetriesOnNextServer();
 
             span.tag("error",e.getClass().getSimpleName() + ":" + e.getMessage());
             span.finish();
 
+            if(hedge != null && !hedge.complete(request, false)){ //对冲的另一个请求还在进行,或者已经被取消
+                return;
+            }
+            if(hedge != null){
+                invoke.settledBy(hedge, request);
+            }
+
             LOGGER.error("{},request times:{},exception:{}",this.reqUri,invoke.context.getServerAttemptCount(),e);
             
             if(invoke.retryPolicy(maxRetrysSame > 0,maxRetrysSame,e)){ //先试上一台机器
@@ -324,6 +454,61 @@ public class HTTPInvoker implements Runnable{
         }
     }
     
+    /**
+     * 第一次请求和对冲请求之间的竞争状态,先成功的一方生效并取消另一方;
+     * 两次都失败时由后失败的一方进入正常的重试流程;被取消的请求对象不会再用于重试
+     */
+    static class Hedge {
+        private final HttpUriRequest primary;
+        private HttpUriRequest hedged;
+        private Server hedgedServer;
+        private int inflight = 1;
+        private boolean settled = false;
+        volatile ScheduledFuture<?> timer;
+
+        Hedge(HttpUriRequest primary){
+            this.primary = primary;
+        }
+
+        synchronized boolean launch(HttpUriRequest hedged, Server server){
+            if(settled){
+                return false;
+            }
+            this.hedged = hedged;
+            this.hedgedServer = server;
+            this.inflight++;
+            return true;
+        }
+
+        /**
+         * 一次请求结束,返回true表示由这次请求的结果决定最终结果
+         */
+        boolean complete(HttpUriRequest request, boolean success){
+            HttpUriRequest loser = null;
+            synchronized (this){
+                if(settled){
+                    return false;
+                }
+                inflight--;
+                if(!success && inflight > 0){
+                    return false;
+                }
+                settled = true;
+                if(inflight > 0){
+                    loser = request == primary ? hedged : primary;
+                }
+            }
+            ScheduledFuture<?> t = timer;
+            if(t != null){
+                t.cancel(false);
+            }
+            if(loser != null){
+                loser.abort();
+            }
+            return true;
+        }
+    }
+
     public static class ExecutionInfoContext {
         Server server;
         int         serverAttemptCount = 0;
@@ -9,6 +9,7 @@ public class HTTPInvokerContext {
     private ILoadBalancer loadBalancer;
     private PromiseHttpClient   httpClient;
     private ExecutionContext executionContext;
+    private HedgePolicy hedgePolicy; //为空时不发对冲请求
     
     public HTTPInvokerContext(){}
     
@@ -40,11 +41,18 @@ public class HTTPInvokerContext {
     public void setExecutionContext(ExecutionContext executionContext) {
         this.executionContext = executionContext;
     }
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
     public HTTPInvokerContext copy(){
         HTTPInvokerContext context = new HTTPInvokerContext();
         context.httpClient = this.httpClient;
         context.retryHandler = this.retryHandler;
         context.loadBalancer = this.loadBalancer;
+        context.hedgePolicy = this.hedgePolicy;
         return context;
     }
 }
@@ -4,9 +4,11 @@ import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.util.EntityUtils;
+import play.libs.transport.http.client.BufferedBytesEntity;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Collection;
 
 public class HTTPUtils {
@@ -17,6 +19,23 @@ public class HTTPUtils {
         }
     }
 
+    /**
+     * 读取响应内容,I/O线程上已经缓冲好的内容直接返回,不再经过流拷贝
+     */
+    public static byte[] toByteArray(HttpEntity entity) throws IOException {
+        if(entity instanceof BufferedBytesEntity){
+            return ((BufferedBytesEntity) entity).toByteArray();
+        }
+        return EntityUtils.toByteArray(entity);
+    }
+
+    public static String toText(HttpEntity entity) throws IOException {
+        if(entity instanceof BufferedBytesEntity){
+            return ((BufferedBytesEntity) entity).toString((Charset) null);
+        }
+        return EntityUtils.toString(entity);
+    }
+
     public static String toString(HttpEntity entity){
         try {
             return EntityUtils.toString(entity);
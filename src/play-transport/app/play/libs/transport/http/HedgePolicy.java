@@ -0,0 +1,127 @@
+package play.libs.transport.http;
+
+import com.google.common.collect.Sets;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import play.Configuration;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对冲请求(hedged request)策略:
+ * 第一次请求在指定延迟内没有返回时,向负载均衡中的另一台机器再发一次,取先返回的结果,取消落后的请求.
+ * 延迟取最近响应时间的百分位(默认p95),并限制在[minDelay,maxDelay]之间;样本不足时使用maxDelay.
+ * 只对幂等的请求方法生效(默认GET/HEAD),同一个服务的多个请求共用一个策略实例以积累响应时间.
+ */
+public class HedgePolicy {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "http-hedge-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final int MIN_SAMPLES = 100;     //样本数少于这个值时不计算百分位
+    private static final int REFRESH_SAMPLES = 64;  //每记录这么多次重新计算一次延迟
+    private static final int DECAY_SAMPLES = 10000; //样本数超过这个值时衰减一半,让延迟跟随最近的响应时间
+
+    private final double percentile;
+    private final long minDelay;
+    private final long maxDelay;
+    private final Set<String> methods;
+    private final AtomicLongArray buckets; //按毫秒统计的响应时间,超过maxDelay的都记在最后一个桶
+    private final AtomicLong count = new AtomicLong();
+    private volatile long delay;
+
+    public HedgePolicy(double percentile, long minDelay, long maxDelay, String... methods) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be in (0,1):" + percentile);
+        }
+        if (minDelay < 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException("invalid hedge delay range [" + minDelay + "," + maxDelay + "]");
+        }
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.methods = methods.length == 0 ? Sets.newHashSet("GET", "HEAD") : Sets.newHashSet(methods);
+        this.buckets = new AtomicLongArray((int) maxDelay + 1);
+        this.delay = maxDelay;
+    }
+
+    public HedgePolicy(Configuration conf) {
+        this(conf.getDouble("percentile", 0.95d),
+             conf.getMilliseconds("minDelay", 10L),
+             conf.getMilliseconds("maxDelay", 1000L),
+             methods(conf.getStringList("methods")));
+    }
+
+    private static String[] methods(List<String> methods) {
+        return methods == null ? new String[0] : methods.stream().map(String::toUpperCase).toArray(String[]::new);
+    }
+
+    /**
+     * 请求是否可以对冲,需要能复制出一个新的请求对象
+     */
+    public boolean isHedgeable(HttpUriRequest request) {
+        return request instanceof HttpRequestBase && methods.contains(request.getMethod());
+    }
+
+    /**
+     * 记录一次请求的响应时间,只应传入可对冲请求第一次发出的请求,重试和对冲请求的响应时间不代表正常情况
+     */
+    public void record(long latencyMs) {
+        int i = (int) Math.min(Math.max(latencyMs, 0), maxDelay);
+        buckets.incrementAndGet(i);
+        long n = count.incrementAndGet();
+        if (n % REFRESH_SAMPLES == 0) {
+            refresh(n);
+        }
+    }
+
+    private void refresh(long n) {
+        if (n < MIN_SAMPLES) {
+            return;
+        }
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        int p = buckets.length() - 1;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                p = i;
+                break;
+            }
+        }
+        this.delay = Math.min(Math.max(p, minDelay), maxDelay);
+        if (total > DECAY_SAMPLES) {
+            for (int i = 0; i < buckets.length(); i++) {
+                long v = buckets.get(i);
+                buckets.addAndGet(i, -(v >> 1));
+            }
+        }
+    }
+
+    /**
+     * 当前的对冲延迟,单位毫秒
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    ScheduledFuture<?> schedule(Runnable hedge) {
+        return TIMER.schedule(hedge, delay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,295 @@
+package play.libs.transport.http;
+
+import akka.dispatch.Futures;
+import com.netflix.hystrix.exception.HystrixRuntimeException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import play.libs.concurrent.Promise;
+import play.libs.transport.http.client.BufferedBytesEntity;
+import play.libs.transport.http.client.BufferedResponseConsumer;
+import play.libs.transport.hystrix.CircuitBreakerRegistry;
+import play.libs.transport.hystrix.HystrixCircuitBreaker;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于OkHttp的HTTP/2客户端,同一个服务的并发请求复用少量连接(多路复用)
+ * https通过ALPN协商HTTP/2,协商失败退回HTTP/1.1;内网http服务可以配置ws.h2.priorKnowledge直接使用h2c
+ * 响应内容在OkHttp的回调线程上读取完,回调执行器拿到的是{@link BufferedBytesEntity}
+ */
+public class Http2PromiseHttpClient implements PromiseHttpClient {
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private OkHttpClient httpclient;
+    private RequestConfig requestConfig;
+    private long lastAccessAt;
+    private String name;
+    private CircuitBreakerRegistry breakers = new CircuitBreakerRegistry();
+    private int maxResponseSize = BufferedResponseConsumer.DEFAULT_MAX_SIZE; //响应内容的最大字节数
+    /** 按(连接超时,读超时)缓存派生的客户端,超时时间来自配置,取值不多 **/
+    private final ConcurrentMap<Long, OkHttpClient> derivedClients = new ConcurrentHashMap<>();
+
+    public Http2PromiseHttpClient(OkHttpClient httpclient, String name, RequestConfig requestConfig){
+        this.httpclient = httpclient;
+        this.name = name;
+        this.requestConfig = requestConfig;
+    }
+
+    public Http2PromiseHttpClient(OkHttpClient httpclient, RequestConfig requestConfig){
+        this(httpclient, Http2PromiseHttpClient.class.getSimpleName(), requestConfig);
+    }
+
+    @Override
+    public Promise<HttpResponse> execute(HttpUriRequest req) {
+        return execute(null, req);
+    }
+
+    @Override
+    public Promise<HttpResponse> execute(HttpHost host, HttpUriRequest req) {
+        HystrixCircuitBreaker circuitBreaker = null;
+        try {
+            this.lastAccessAt = System.currentTimeMillis();
+            circuitBreaker = breakers.get(host != null ? host : AsyncPromiseHttpClient.targetOf(req.getURI()));
+            if(circuitBreaker.allowRequest()) {
+                final scala.concurrent.Promise<HttpResponse> xPromise = Futures.promise();
+                final Call call = clientFor(req).newCall(toRequest(host, req));
+                if(req instanceof HttpRequestBase){ //req.abort()时取消请求
+                    ((HttpRequestBase) req).setCancellable(() -> {
+                        call.cancel();
+                        return true;
+                    });
+                }
+                call.enqueue(new NCallback(circuitBreaker, xPromise, maxResponseSize));
+                return Promise.wrap(xPromise.future());
+            }else{
+                Throwable shortCircuitException = new RuntimeException("Hystrix circuit short-circuited and is OPEN");
+                HystrixRuntimeException exception = new HystrixRuntimeException(HystrixRuntimeException.FailureType.SHORTCIRCUIT,null,"short-circuited",shortCircuitException,null);
+                return Promise.throwing(exception);
+            }
+        }catch (Throwable e){
+            if(circuitBreaker != null){
+                circuitBreaker.markFailure();
+            }
+            return Promise.throwing(e);
+        }
+    }
+
+    /**
+     * 请求单独设置了超时时间时,派生一个共用连接池和调度器的客户端
+     */
+    private OkHttpClient clientFor(HttpUriRequest req){
+        if(!(req instanceof HttpRequestBase)){
+            return httpclient;
+        }
+        RequestConfig config = ((HttpRequestBase) req).getConfig();
+        if(config == null || config == requestConfig){
+            return httpclient;
+        }
+        if(config.getConnectTimeout() == httpclient.connectTimeoutMillis() && config.getSocketTimeout() == httpclient.readTimeoutMillis()){
+            return httpclient;
+        }
+        final int connectTimeout = Math.max(config.getConnectTimeout(), 0);
+        final int socketTimeout = Math.max(config.getSocketTimeout(), 0);
+        long key = ((long) connectTimeout << 32) | socketTimeout;
+        return derivedClients.computeIfAbsent(key, k -> httpclient.newBuilder()
+                .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(socketTimeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(socketTimeout, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    static Request toRequest(HttpHost host, HttpUriRequest req) throws IOException {
+        HttpUrl url = HttpUrl.get(req.getURI());
+        if(url == null){
+            throw new IOException("unsupported request uri:" + req.getURI());
+        }
+        if(host != null){
+            HttpUrl.Builder b = url.newBuilder().host(host.getHostName());
+            if(host.getPort() > 0){
+                b.port(host.getPort());
+            }
+            url = b.build();
+        }
+        Request.Builder builder = new Request.Builder().url(url);
+        for(Header h : req.getAllHeaders()){
+            String name = h.getName();
+            if("Content-Length".equalsIgnoreCase(name)
+                    || "Transfer-Encoding".equalsIgnoreCase(name) || "Connection".equalsIgnoreCase(name)){
+                continue; //由OkHttp根据协议生成;Host保留,HTTP/2时OkHttp转成:authority
+            }
+            builder.addHeader(name, h.getValue());
+        }
+        HttpEntity entity = req instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) req).getEntity() : null;
+        RequestBody body = null;
+        if(entity != null){
+            body = new EntityRequestBody(entity);
+        }else if(requiresRequestBody(req.getMethod())){
+            body = RequestBody.create(null, EMPTY_BODY);
+        }
+        return builder.method(req.getMethod(), body).build();
+    }
+
+    /**
+     * OkHttp要求这些方法必须有请求体
+     */
+    private static boolean requiresRequestBody(String method){
+        return "POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)
+                || "PROPPATCH".equals(method) || "REPORT".equals(method);
+    }
+
+    /**
+     * 响应内容读到内存中,超过maxSize时失败,与{@link BufferedResponseConsumer}的限制一致
+     */
+    static HttpResponse toHttpResponse(Response response, int maxSize) throws IOException {
+        ProtocolVersion version = response.protocol() == Protocol.HTTP_1_0 ? HttpVersion.HTTP_1_0
+                                : response.protocol() == Protocol.HTTP_1_1 ? HttpVersion.HTTP_1_1 : HTTP_2;
+        BasicHttpResponse resp = new BasicHttpResponse(new BasicStatusLine(version, response.code(), response.message()));
+        okhttp3.Headers headers = response.headers();
+        for(int i = 0, size = headers.size(); i < size; i++){
+            resp.addHeader(headers.name(i), headers.value(i));
+        }
+        try(ResponseBody body = response.body()){
+            if(body != null){
+                if(body.contentLength() > maxSize){
+                    throw new IOException("Entity content is too long: " + body.contentLength() + " > " + maxSize);
+                }
+                BufferedSource source = body.source();
+                if(source.request((long) maxSize + 1)){ //最多缓冲maxSize+1个字节
+                    throw new IOException("Entity content is too long, max size: " + maxSize);
+                }
+                byte[] bytes = source.readByteArray();
+                BufferedBytesEntity entity = new BufferedBytesEntity(bytes, bytes.length);
+                MediaType contentType = body.contentType();
+                if(contentType != null){
+                    entity.setContentType(contentType.toString());
+                }
+                resp.setEntity(entity);
+            }
+        }
+        return resp;
+    }
+
+    static class EntityRequestBody extends RequestBody {
+        private final HttpEntity entity;
+        private final MediaType contentType;
+
+        EntityRequestBody(HttpEntity entity){
+            this.entity = entity;
+            this.contentType = entity.getContentType() == null ? null : MediaType.parse(entity.getContentType().getValue());
+        }
+
+        @Override
+        public MediaType contentType() {
+            return contentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return entity.getContentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            entity.writeTo(sink.outputStream());
+        }
+    }
+
+    public static class NCallback implements Callback {
+        protected final scala.concurrent.Promise<HttpResponse> promise;
+        protected final HystrixCircuitBreaker circuitBreaker;
+        protected final int maxResponseSize;
+
+        public NCallback(HystrixCircuitBreaker circuitBreaker, scala.concurrent.Promise<HttpResponse> promise){
+            this(circuitBreaker, promise, BufferedResponseConsumer.DEFAULT_MAX_SIZE);
+        }
+
+        public NCallback(HystrixCircuitBreaker circuitBreaker, scala.concurrent.Promise<HttpResponse> promise, int maxResponseSize){
+            this.promise = promise;
+            this.circuitBreaker = circuitBreaker;
+            this.maxResponseSize = maxResponseSize;
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try {
+                HttpResponse resp = toHttpResponse(response, maxResponseSize);
+                circuitBreaker.markSuccess();
+                promise.success(resp);
+            } catch (IOException e) {
+                onFailure(call, e);
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            if(!call.isCanceled()){ //主动取消的请求不计入熔断
+                circuitBreaker.markFailure();
+            }
+            promise.tryFailure(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        httpclient.dispatcher().executorService().shutdown();
+        httpclient.connectionPool().evictAll();
+    }
+
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
+    public void setMaxResponseSize(int maxResponseSize) {
+        this.maxResponseSize = maxResponseSize > 0 ? maxResponseSize : Integer.MAX_VALUE - 8;
+    }
+
+    public OkHttpClient getHttpClient(){
+        return httpclient;
+    }
+
+    @Override
+    public long getLastAccessAt() {
+        return lastAccessAt;
+    }
+
+    @Override
+    public Object getRawHttpClient() {
+        return getHttpClient();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public RequestConfig getDefaultRequestConfig() {
+        return requestConfig;
+    }
+}
@@ -0,0 +1,146 @@
+package play.libs.transport.http;
+
+import com.netflix.hystrix.exception.HystrixRuntimeException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import play.Configuration;
+import play.libs.concurrent.Promise;
+import play.libs.transport.http.limit.ConcurrencyLimitExceededException;
+import play.libs.transport.http.limit.VegasLimiter;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 给{@link PromiseHttpClient}加上自适应并发限制,超过上限的请求直接以{@link ConcurrencyLimitExceededException}失败,
+ * 不在连接池或线程池中排队.
+ * ws.limit.perHost=true时每台机器单独计算上限,否则整个客户端(ws.client.name)共用一个上限
+ */
+public class LimitedHttpClient implements PromiseHttpClient {
+    private final PromiseHttpClient httpClient;
+    private final boolean perHost;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final VegasLimiter clientLimiter;
+    private final Map<HttpHost, VegasLimiter> hostLimiters = new ConcurrentHashMap<>();
+
+    public LimitedHttpClient(PromiseHttpClient httpClient, boolean perHost, int initialLimit, int minLimit, int maxLimit) {
+        this.httpClient = httpClient;
+        this.perHost = perHost;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.clientLimiter = perHost ? null : new VegasLimiter(initialLimit, minLimit, maxLimit);
+    }
+
+    public LimitedHttpClient(PromiseHttpClient httpClient, Configuration conf) {
+        this(httpClient,
+             conf.getBoolean("ws.limit.perHost", true),
+             conf.getInt("ws.limit.initial", 20),
+             conf.getInt("ws.limit.min", 1),
+             conf.getInt("ws.limit.max", conf.getInt("ws.connect.maxPreRoute", 1000)));
+    }
+
+    @Override
+    public Promise<HttpResponse> execute(HttpUriRequest req) {
+        return execute(null, req);
+    }
+
+    @Override
+    public Promise<HttpResponse> execute(HttpHost host, HttpUriRequest req) {
+        final VegasLimiter limiter = limiterFor(host, req);
+        if (!limiter.tryAcquire()) {
+            return Promise.throwing(new ConcurrencyLimitExceededException(perHost ? String.valueOf(host) : getName(), limiter.getLimit()));
+        }
+        final long startAt = System.nanoTime();
+        Promise<HttpResponse> promise;
+        try {
+            promise = httpClient.execute(host, req);
+        } catch (Throwable e) {
+            limiter.ignore();
+            return Promise.throwing(e);
+        }
+        promise.whenComplete((resp, e) -> {
+            if (e == null) {
+                limiter.release(System.nanoTime() - startAt, false);
+            } else if (!req.isAborted() && isTimeout(e)) {
+                limiter.release(System.nanoTime() - startAt, true);
+            } else {
+                //连接被拒绝、熔断短路等失败很快,响应时间不能作为样本,否则基准响应时间被拉低后上限一直下降
+                limiter.ignore();
+            }
+        });
+        return promise;
+    }
+
+    private VegasLimiter limiterFor(HttpHost host, HttpUriRequest req) {
+        if (!perHost) {
+            return clientLimiter;
+        }
+        if (host == null) {
+            URI uri = req.getURI();
+            host = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+        }
+        VegasLimiter limiter = hostLimiters.get(host);
+        if (limiter == null) {
+            limiter = hostLimiters.computeIfAbsent(host, h -> new VegasLimiter(initialLimit, minLimit, maxLimit));
+        }
+        return limiter;
+    }
+
+    static boolean isTimeout(Throwable e) {
+        for (int i = 0; e != null && i < 5; i++, e = e.getCause()) {
+            if (e instanceof InterruptedIOException || e instanceof TimeoutException) {
+                return true; //SocketTimeoutException/ConnectTimeoutException/OkHttp的超时
+            }
+            if (e instanceof HystrixRuntimeException
+                    && ((HystrixRuntimeException) e).getFailureType() == HystrixRuntimeException.FailureType.TIMEOUT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<HttpHost, VegasLimiter> getHostLimiters() {
+        return hostLimiters;
+    }
+
+    public VegasLimiter getClientLimiter() {
+        return clientLimiter;
+    }
+
+    public PromiseHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public long getLastAccessAt() {
+        return httpClient.getLastAccessAt();
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+
+    @Override
+    public Object getRawHttpClient() {
+        return httpClient.getRawHttpClient();
+    }
+
+    @Override
+    public String getName() {
+        return httpClient.getName();
+    }
+
+    @Override
+    public RequestConfig getDefaultRequestConfig() {
+        return httpClient.getDefaultRequestConfig();
+    }
+}
@@ -0,0 +1,65 @@
+package play.libs.transport.http.client;
+
+import org.apache.http.Consts;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * I/O线程上已经完整读取的响应内容,读取时不会阻塞
+ * 直接暴露内部的字节数组,避免EntityUtils再拷贝一次
+ */
+public class BufferedBytesEntity extends AbstractHttpEntity {
+    private final byte[] content;
+    private final int length;
+
+    public BufferedBytesEntity(byte[] content, int length) {
+        this.content = content;
+        this.length = length;
+    }
+
+    public byte[] toByteArray() {
+        return length == content.length ? content : Arrays.copyOf(content, length);
+    }
+
+    public String toString(Charset defaultCharset) {
+        ContentType contentType = ContentType.get(this);
+        Charset charset = contentType != null ? contentType.getCharset() : null;
+        if (charset == null) {
+            charset = defaultCharset != null ? defaultCharset : Consts.ISO_8859_1;
+        }
+        return new String(content, 0, length, charset);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ByteArrayInputStream(content, 0, length);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(content, 0, length);
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
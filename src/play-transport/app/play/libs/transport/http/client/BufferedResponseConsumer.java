@@ -0,0 +1,100 @@
+package play.libs.transport.http.client;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 在I/O Reactor线程上增量读取响应内容
+ * 有Content-Length时按长度一次分配好缓冲区,解码器直接写入,没有中间拷贝;
+ * 长度未知时按倍数扩容,回调线程拿到的是{@link BufferedBytesEntity},不会再有阻塞读.
+ * 缓冲区直接交给调用方,生命周期不可控,所以不放回池中复用;响应内容超过maxSize时请求失败
+ */
+public class BufferedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+    private static final int DEFAULT_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private final int maxSize;
+
+    private volatile HttpResponse response;
+    private HttpEntity entity;
+    private byte[] buffer;
+    private ByteBuffer window; //复用同一个包装,只有扩容时重建
+
+    public BufferedResponseConsumer() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public BufferedResponseConsumer(int maxSize) {
+        this.maxSize = maxSize > 0 ? Math.min(maxSize, MAX_ARRAY_SIZE) : MAX_ARRAY_SIZE;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+        long len = entity.getContentLength();
+        if (len > maxSize) {
+            throw new IOException("Entity content is too long: " + len + " > " + maxSize);
+        }
+        this.entity = entity;
+        this.buffer = new byte[len >= 0 ? (int) len : Math.min(DEFAULT_BUFFER_SIZE, maxSize)];
+        this.window = ByteBuffer.wrap(buffer);
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+        while (!decoder.isCompleted()) {
+            if (!window.hasRemaining()) {
+                grow();
+            }
+            int n = decoder.read(window);
+            if (n <= 0) {
+                break;
+            }
+        }
+    }
+
+    private void grow() throws IOException {
+        int count = window.position();
+        if (count >= maxSize) {
+            throw new IOException("Entity content is too long, max size: " + maxSize);
+        }
+        int newCapacity = (int) Math.min((long) Math.max(buffer.length, DEFAULT_BUFFER_SIZE) << 1, maxSize);
+        buffer = Arrays.copyOf(buffer, newCapacity);
+        window = ByteBuffer.wrap(buffer);
+        window.position(count);
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        if (buffer != null) {
+            BufferedBytesEntity bytesEntity = new BufferedBytesEntity(buffer, window.position());
+            bytesEntity.setContentType(entity.getContentType());
+            bytesEntity.setContentEncoding(entity.getContentEncoding());
+            bytesEntity.setChunked(entity.isChunked());
+            response.setEntity(bytesEntity);
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        this.response = null;
+        this.entity = null;
+        this.buffer = null;
+        this.window = null;
+    }
+}
@@ -1,6 +1,10 @@
 package play.libs.transport.http.client;
 
 import com.netflix.loadbalancer.Server;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.HttpHost;
@@ -22,10 +26,8 @@ import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
 import org.apache.http.impl.conn.DefaultSchemePortResolver;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
-import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.nio.conn.NoopIOSessionStrategy;
@@ -37,9 +39,14 @@ import org.apache.http.protocol.HttpContext;
 import play.Configuration;
 import play.Play;
 import play.libs.transport.http.AsyncPromiseHttpClient;
+import play.libs.transport.http.Http2PromiseHttpClient;
 import play.libs.transport.http.HystrixHttpClient;
+import play.libs.transport.http.LimitedHttpClient;
 import play.libs.transport.http.PromiseHttpClient;
 import play.libs.transport.http.SyncPromiseHttpClient;
+import play.libs.transport.http.pool.MeteredHttpConnectionManager;
+import play.libs.transport.http.pool.MeteredNHttpConnectionManager;
+import play.libs.transport.http.pool.RoutePoolLimits;
 import play.libs.transport.http.route.ExtranetRoutePlanner;
 import play.libs.transport.http.route.LoadBalancerProxyRoutePlanner;
 import play.libs.transport.loadbalancer.HostLoadBalancer;
@@ -47,11 +54,22 @@ import play.libs.transport.loadbalancer.HostLoadBalancer;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 public class HttpClientFactory {
+    private static final X509TrustManager TRUST_ALL = new X509TrustManager() {
+        public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) throws java.security.cert.CertificateException {}
+        public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) throws java.security.cert.CertificateException{}
+        public java.security.cert.X509Certificate[] getAcceptedIssuers(){return new java.security.cert.X509Certificate[0];}
+    };
+
     public static final IOType DEFAULT_IO_TYPE = IOType.ASYNC_NIO;
     public static final PromiseHttpClient HTTP_CLIENT = HttpClientFactory.createHttpClient(DEFAULT_IO_TYPE);
     
@@ -80,18 +98,46 @@ public class HttpClientFactory {
         return createHttpClient(type, sslcontext, config, null);
     }
     
+    /**
+     * ws.limit.enabled=true时给客户端加上自适应并发限制,见{@link LimitedHttpClient}
+     */
     public static PromiseHttpClient createHttpClient(IOType type, SSLContext sslcontext, Configuration config, String wsName){
+        PromiseHttpClient httpClient = createPromiseHttpClient(type, sslcontext, config, wsName);
+        Configuration conf = config != null ? config : getConfiguration();
+        if(conf.getBoolean("ws.limit.enabled",false)){
+            return new LimitedHttpClient(httpClient, conf);
+        }
+        return httpClient;
+    }
+
+    private static PromiseHttpClient createPromiseHttpClient(IOType type, SSLContext sslcontext, Configuration config, String wsName){
         String name = config == null ? wsName : config.getString("ws.client.name",wsName);
         RequestConfig requestConfig = getDefaultRequestConfig(config);
         if(type == IOType.ASYNC_NIO){
-            CloseableHttpAsyncClient asyncClient = createAsyncHttpsClient(sslcontext,config);
+            CloseableHttpAsyncClient asyncClient = createAsyncHttpsClient(sslcontext,config,StringUtils.defaultIfBlank(name,AsyncPromiseHttpClient.class.getSimpleName()));
+            AsyncPromiseHttpClient httpClient;
             if(StringUtils.isNotBlank(name)){
-                return new AsyncPromiseHttpClient(asyncClient,name,requestConfig);
+                httpClient = new AsyncPromiseHttpClient(asyncClient,name,requestConfig);
             }else{
-                return new AsyncPromiseHttpClient(asyncClient,requestConfig);
+                httpClient = new AsyncPromiseHttpClient(asyncClient,requestConfig);
             }
+            Configuration conf = config != null ? config : getConfiguration();
+            httpClient.setBufferedConsumer(conf.getBoolean("ws.nio.bufferedConsumer",false));
+            httpClient.setMaxResponseSize(conf.getInt("ws.nio.maxResponseSize",BufferedResponseConsumer.DEFAULT_MAX_SIZE));
+            return httpClient;
+        }else if(type == IOType.ASYNC_H2){
+            OkHttpClient h2Client = createHttp2Client(sslcontext,config);
+            Http2PromiseHttpClient httpClient;
+            if(StringUtils.isNotBlank(name)){
+                httpClient = new Http2PromiseHttpClient(h2Client,name,requestConfig);
+            }else{
+                httpClient = new Http2PromiseHttpClient(h2Client,requestConfig);
+            }
+            Configuration conf = config != null ? config : getConfiguration();
+            httpClient.setMaxResponseSize(conf.getInt("ws.nio.maxResponseSize",BufferedResponseConsumer.DEFAULT_MAX_SIZE));
+            return httpClient;
         }else{
-            CloseableHttpClient syncClient = createHttpsClient(sslcontext,config);
+            CloseableHttpClient syncClient = createHttpsClient(sslcontext,config,StringUtils.defaultIfBlank(name,SyncPromiseHttpClient.class.getSimpleName()));
             if(StringUtils.isNotBlank(name)){
                 return new SyncPromiseHttpClient(syncClient,name,requestConfig);
             }else{
@@ -101,7 +147,10 @@ public class HttpClientFactory {
     }
 
     public static PromiseHttpClient syncHttpClientToHystrix(PromiseHttpClient httpClient,Configuration config){
-        if(httpClient instanceof SyncPromiseHttpClient){
+        if(httpClient instanceof LimitedHttpClient){
+            LimitedHttpClient limited = (LimitedHttpClient) httpClient;
+            return new LimitedHttpClient(syncHttpClientToHystrix(limited.getHttpClient(),config), config != null ? config : getConfiguration());
+        }else if(httpClient instanceof SyncPromiseHttpClient){
             return new HystrixHttpClient(((SyncPromiseHttpClient) httpClient).getHttpClient(),config,httpClient.getDefaultRequestConfig());
         }else{
             return httpClient;
@@ -125,6 +174,10 @@ public class HttpClientFactory {
 
 
     public static CloseableHttpAsyncClient createAsyncHttpsClient(SSLContext sslcontext, Configuration config){
+        return createAsyncHttpsClient(sslcontext,config,AsyncPromiseHttpClient.class.getSimpleName());
+    }
+
+    public static CloseableHttpAsyncClient createAsyncHttpsClient(SSLContext sslcontext, Configuration config, String poolName){
         X509HostnameVerifier hostnameVerifier = new AllowAllHostnameVerifier();
         sslcontext = sslcontext == null ? createSSLContext() : sslcontext;
         
@@ -153,13 +206,16 @@ public class HttpClientFactory {
             throw new RuntimeException(e);
         }
         
-        PoolingNHttpClientConnectionManager connManager = new PoolingNHttpClientConnectionManager(ioReactor,null,sessionStrategyRegistry,new SimpleDNSResover());
+        MeteredNHttpConnectionManager connManager = new MeteredNHttpConnectionManager(ioReactor,sessionStrategyRegistry,new SimpleDNSResover(),RoutePoolLimits.fromConfig(config),poolName);
         
         // 默认30秒时间超时
         RequestConfig defaultRequestConfig = getDefaultRequestConfig(config);
 
         connManager.setMaxTotal(config.getInt("ws.connect.maxTotal",2000));
         connManager.setDefaultMaxPerRoute(config.getInt("ws.connect.maxPreRoute",1000));
+        //异步连接池没有复用前检查,依靠后台定时清理过期和空闲的连接,evictInterval为0时不清理
+        connManager.startEviction(config.getMilliseconds("ws.connection.evictInterval",5000L),
+                                  config.getMilliseconds("ws.connection.maxIdle",30000L));
         
         IOReactorConfig ioconfig = IOReactorConfig.custom()
                                     .setConnectTimeout(connettimeout)
@@ -179,6 +235,45 @@ public class HttpClientFactory {
         return httpclient;
     }
 
+    /**
+     * 创建HTTP/2客户端,https通过ALPN协商,ws.h2.priorKnowledge=true时明文直接使用h2c(只能访问http服务)
+     * 并发请求数由ws.connect.maxTotal/maxPreRoute限制,多路复用下每个服务只需要少量连接
+     */
+    public static OkHttpClient createHttp2Client(SSLContext sslcontext, Configuration config){
+        sslcontext = sslcontext == null ? createSSLContext() : sslcontext;
+        config = config != null ? config : getConfiguration();
+        int connettimeout= config.getInt("ws.timeout.connet", 5 * 1000);
+        int readtimeout = config.getInt("ws.timeout.socket", 10 * 1000);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getInt("ws.connect.maxTotal",2000));
+        dispatcher.setMaxRequestsPerHost(config.getInt("ws.connect.maxPreRoute",1000));
+
+        List<Protocol> protocols = config.getBoolean("ws.h2.priorKnowledge",false)
+                ? Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE)
+                : Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(config.getInt("ws.h2.maxIdleConnections",5),
+                        config.getMilliseconds("ws.h2.keepAlive",5 * 60 * 1000L), TimeUnit.MILLISECONDS))
+                .protocols(protocols)
+                .connectTimeout(connettimeout, TimeUnit.MILLISECONDS)
+                .readTimeout(readtimeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(readtimeout, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false) //由HTTPInvoker负责重试
+                .followRedirects(false)
+                .dns(hostname -> Arrays.asList(new SimpleDNSResover().resolve(hostname)))
+                .sslSocketFactory(sslcontext.getSocketFactory(), TRUST_ALL)
+                .hostnameVerifier((hostname, session) -> true);
+
+        HttpHost proxy = createProxyServer(config);
+        if(proxy != null){
+            builder.proxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxy.getHostName(), proxy.getPort())));
+        }
+        return builder.build();
+    }
+
     public static Configuration getConfiguration() {
         Configuration conf = Configuration.empty();
         return play.api.Play.maybeApplication().isDefined() ? Play.application().configuration(): conf;
@@ -194,7 +289,11 @@ public class HttpClientFactory {
      * @return
      */
     public static CloseableHttpClient createHttpsClient(SSLContext sslcontext, Configuration config) {
-        PoolingHttpClientConnectionManager connManager;
+        return createHttpsClient(sslcontext,config,SyncPromiseHttpClient.class.getSimpleName());
+    }
+
+    public static CloseableHttpClient createHttpsClient(SSLContext sslcontext, Configuration config, String poolName) {
+        MeteredHttpConnectionManager connManager;
         X509HostnameVerifier hostnameVerifier = new AllowAllHostnameVerifier();
         sslcontext = sslcontext == null ? createSSLContext() : sslcontext;
         
@@ -202,9 +301,8 @@ public class HttpClientFactory {
             .register("http", PlainConnectionSocketFactory.INSTANCE)
             .register("https", new SSLConnectionSocketFactory(sslcontext, new String[] { "TLSv1" }, null, hostnameVerifier))
             .build();
-        connManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry,new SimpleDNSResover());//可以设置DNSResover
-        
         config = config != null ? config : getConfiguration();
+        connManager = new MeteredHttpConnectionManager(socketFactoryRegistry,new SimpleDNSResover(),RoutePoolLimits.fromConfig(config),poolName);//可以设置DNSResover
         
         int connettimeout= config.getInt("ws.timeout.connet", 5 * 1000);
         int readtimeout = config.getInt("ws.timeout.socket", 10 * 1000);
@@ -213,6 +311,12 @@ public class HttpClientFactory {
 
         connManager.setMaxTotal(config.getInt("ws.connect.maxTotal",2000));
         connManager.setDefaultMaxPerRoute(config.getInt("ws.connect.maxPreRoute",1000));
+        int validateAfterInactivity = config.getInt("ws.connection.validateAfterInactivity",-1);
+        if(validateAfterInactivity >= 0){ //空闲超过该时间的连接,复用前先检查是否已被服务端关闭,0为不检查
+            connManager.setValidateAfterInactivity(validateAfterInactivity);
+        }
+        connManager.startEviction(config.getMilliseconds("ws.connection.evictInterval",5000L),
+                                  config.getMilliseconds("ws.connection.maxIdle",30000L));
         
         SocketConfig soconfig = SocketConfig.custom()
                             .setSoKeepAlive(true)
@@ -234,11 +338,7 @@ public class HttpClientFactory {
     public static SSLContext createSSLContext(){
         try {
             SSLContext sslcontext;
-            TrustManager[] tms = new TrustManager[] { new X509TrustManager() {
-                public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) throws java.security.cert.CertificateException {}
-                public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) throws java.security.cert.CertificateException{}
-                public java.security.cert.X509Certificate[] getAcceptedIssuers(){return null;}
-            } };
+            TrustManager[] tms = new TrustManager[] { TRUST_ALL };
             sslcontext = SSLContext.getInstance("TLS");
             sslcontext.init(null, tms, new java.security.SecureRandom());
             return sslcontext;
@@ -2,5 +2,6 @@ package play.libs.transport.http.client;
 
 public enum IOType {
     SYNC_IO,
-    ASYNC_NIO;
+    ASYNC_NIO,
+    ASYNC_H2; //HTTP/2多路复用,同一个服务的并发请求共用少量连接
 }
\ No newline at end of file
@@ -7,6 +7,10 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.concurrent.ExecutionException;
 
+/**
+ * 连接池使用的同步解析,地址来自{@link DNS}的缓存;
+ * {@link play.libs.transport.http.AsyncPromiseHttpClient}在请求前先异步解析,I/O线程中调用时直接命中缓存
+ */
 public class SimpleDNSResover implements DnsResolver {
 
     @Override
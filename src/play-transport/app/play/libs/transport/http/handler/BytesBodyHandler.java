@@ -2,7 +2,6 @@ package play.libs.transport.http.handler;
 
 import akka.dispatch.Futures;
 import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
 import play.libs.transport.http.HTTPUtils;
 import play.libs.transport.http.result.BytesResult;
 import play.libs.transport.http.result.HTTPResult;
@@ -28,7 +27,7 @@ public class BytesBodyHandler implements HTTPHandler<byte[]>{
     public HTTPResult<byte[]> tryComplete(HttpResponse resp) {
         try {
             int statusCode = resp.getStatusLine().getStatusCode();
-            byte[] body = EntityUtils.toByteArray(resp.getEntity());
+            byte[] body = HTTPUtils.toByteArray(resp.getEntity());
             HTTPUtils.closeQuietly(resp);
             return new BytesResult(statusCode,body,null);
         } catch (Throwable e) {
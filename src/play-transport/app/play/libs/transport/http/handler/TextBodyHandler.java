@@ -3,7 +3,6 @@ package play.libs.transport.http.handler;
 import akka.dispatch.Futures;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
 import play.libs.transport.http.HTTPUtils;
 import play.libs.transport.http.result.HTTPResult;
 import play.libs.transport.http.result.StringResult;
@@ -29,7 +28,7 @@ public class TextBodyHandler implements HTTPHandler<String>{
     public HTTPResult<String> tryComplete(HttpResponse resp) {
         try {
             int statusCode = resp.getStatusLine().getStatusCode();
-            String rest = EntityUtils.toString(resp.getEntity());
+            String rest = HTTPUtils.toText(resp.getEntity());
             String body = StringUtils.trim(rest);
             HTTPUtils.closeQuietly(resp);
             return new StringResult(statusCode,body,null);
@@ -0,0 +1,28 @@
+package play.libs.transport.http.limit;
+
+/**
+ * 正在进行的请求数超过了自适应并发上限,请求没有发出,直接拒绝
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+    private final String target;
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(String target, int limit) {
+        super("concurrency limit " + limit + " exceeded for " + target);
+        this.target = target;
+        this.limit = limit;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this; //拒绝时高频抛出,不需要堆栈
+    }
+}
@@ -0,0 +1,105 @@
+package play.libs.transport.http.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制,参考TCP Vegas:
+ * 用观察到的最小响应时间作为无排队时的基准,估算排队的请求数 queue = limit * (1 - rttNoLoad / rtt),
+ * 排队少时增加并发上限,排队多时减少;请求超时按丢包处理,上限直接乘以0.9.
+ * 基准响应时间每隔一段时间重新测量,避免服务端变慢后基准过低导致上限一直下降.
+ */
+public class VegasLimiter {
+    private static final int PROBE_SAMPLES = 1000; //每隔这么多个样本重新测量基准响应时间
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private volatile int limit;
+    private double estimatedLimit;
+    private long rttNoLoad = 0;
+    private int samples = 0;
+
+    public VegasLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("invalid concurrency limit range [" + minLimit + "," + maxLimit + "]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * 获取一个并发名额,超过当前上限时返回false
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求结束,释放名额并根据响应时间调整上限
+     *
+     * @param rttNanos 响应时间,纳秒
+     * @param dropped  请求是否超时,超时视为过载
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int current = inflight.getAndDecrement();
+        synchronized (this) {
+            if (dropped) {
+                update(estimatedLimit * 0.9);
+                return;
+            }
+            if (rttNanos <= 0) {
+                return;
+            }
+            if (++samples >= PROBE_SAMPLES) { //重新测量基准
+                samples = 0;
+                rttNoLoad = rttNanos;
+                return;
+            }
+            if (rttNoLoad == 0 || rttNanos < rttNoLoad) {
+                rttNoLoad = rttNanos;
+                return;
+            }
+            //请求量没有用到上限的一半时,响应时间不能说明上限是否合适
+            if (current * 2 < estimatedLimit) {
+                return;
+            }
+            double log = Math.max(1, Math.log10(estimatedLimit));
+            double queue = Math.ceil(estimatedLimit * (1 - (double) rttNoLoad / rttNanos));
+            if (queue <= 3 * log) {
+                update(estimatedLimit + log);
+            } else if (queue > 6 * log) {
+                update(estimatedLimit - log);
+            }
+        }
+    }
+
+    /**
+     * 请求没有得到有效的响应时间(如被主动取消),只释放名额
+     */
+    public void ignore() {
+        inflight.decrementAndGet();
+    }
+
+    private void update(double newLimit) {
+        estimatedLimit = Math.min(Math.max(newLimit, minLimit), maxLimit);
+        limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+}
@@ -0,0 +1,32 @@
+package play.libs.transport.http.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时清理连接池中过期和空闲太久的连接
+ * 服务端已经关闭的keep-alive连接不用等到下一次请求失败才发现,所有连接池共用一个后台线程
+ */
+public class IdleConnectionEvictor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdleConnectionEvictor.class);
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "http-connection-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static ScheduledFuture<?> schedule(final String name, final Runnable evict, long intervalMs) {
+        return EXECUTOR.scheduleWithFixedDelay(() -> {
+            try {
+                evict.run();
+            } catch (Throwable e) {
+                LOGGER.error("evict idle connections of pool " + name + " error", e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+}
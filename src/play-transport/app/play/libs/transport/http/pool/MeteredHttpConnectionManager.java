@@ -0,0 +1,108 @@
+package play.libs.transport.http.pool;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步连接池:第一次遇到路由时按{@link RoutePoolLimits}设置上限(域名还没有解析时下次再设置),并记录获取连接的等待时间
+ */
+public class MeteredHttpConnectionManager extends PoolingHttpClientConnectionManager {
+    private final RoutePoolLimits limits;
+    private final PoolMetrics metrics;
+    private volatile ScheduledFuture<?> evictor;
+
+    public MeteredHttpConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry,
+                                        DnsResolver dnsResolver,
+                                        RoutePoolLimits limits,
+                                        String name) {
+        super(socketFactoryRegistry, dnsResolver);
+        this.limits = limits;
+        this.metrics = PoolMetrics.register(name, this);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final PoolMetrics.LeaseStats stats = routeStats(route);
+        final ConnectionRequest request = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    HttpClientConnection conn = request.get(timeout, tunit);
+                    stats.leased(System.nanoTime() - start);
+                    return conn;
+                } catch (InterruptedException | ExecutionException | ConnectionPoolTimeoutException e) {
+                    stats.failed(System.nanoTime() - start);
+                    throw e;
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    private PoolMetrics.LeaseStats routeStats(HttpRoute route) {
+        PoolMetrics.LeaseStats stats = metrics.getLeaseStats(route);
+        if (stats == null) {
+            stats = metrics.addRoute(route);
+        }
+        if (!stats.isLimitApplied()) {
+            int max = limits.limitFor(route);
+            if (max != RoutePoolLimits.UNRESOLVED) {
+                if (max > 0) {
+                    setMaxPerRoute(route, max);
+                }
+                stats.limitApplied();
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 后台定时关闭过期的连接,以及空闲超过maxIdleMs的连接(maxIdleMs<=0时只清理过期连接)
+     */
+    public synchronized void startEviction(long intervalMs, final long maxIdleMs) {
+        if (evictor != null || intervalMs <= 0) {
+            return;
+        }
+        evictor = IdleConnectionEvictor.schedule(metrics.getName(), () -> {
+            closeExpiredConnections();
+            if (maxIdleMs > 0) {
+                closeIdleConnections(maxIdleMs, TimeUnit.MILLISECONDS);
+            }
+            metrics.prune();
+        }, intervalMs);
+    }
+
+    private void stopEviction() {
+        ScheduledFuture<?> f = evictor;
+        if (f != null) {
+            f.cancel(false);
+        }
+    }
+
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void shutdown() {
+        stopEviction();
+        metrics.unregister();
+        super.shutdown();
+    }
+}
@@ -0,0 +1,119 @@
+package play.libs.transport.http.pool;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步连接池:第一次遇到路由时按{@link RoutePoolLimits}设置上限(域名还没有解析时下次再设置),并记录获取连接的等待时间
+ */
+public class MeteredNHttpConnectionManager extends PoolingNHttpClientConnectionManager {
+    private final RoutePoolLimits limits;
+    private final PoolMetrics metrics;
+    private volatile ScheduledFuture<?> evictor;
+
+    public MeteredNHttpConnectionManager(ConnectingIOReactor ioReactor,
+                                         Registry<SchemeIOSessionStrategy> sessionStrategyRegistry,
+                                         DnsResolver dnsResolver,
+                                         RoutePoolLimits limits,
+                                         String name) {
+        super(ioReactor, null, sessionStrategyRegistry, dnsResolver);
+        this.limits = limits;
+        this.metrics = PoolMetrics.register(name, this);
+    }
+
+    @Override
+    public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state,
+                                                           long connectTimeout, long leaseTimeout, TimeUnit tunit,
+                                                           final FutureCallback<NHttpClientConnection> callback) {
+        final PoolMetrics.LeaseStats stats = routeStats(route);
+        final long start = System.nanoTime();
+        return super.requestConnection(route, state, connectTimeout, leaseTimeout, tunit, new FutureCallback<NHttpClientConnection>() {
+            @Override
+            public void completed(NHttpClientConnection conn) {
+                stats.leased(System.nanoTime() - start);
+                if (callback != null) callback.completed(conn);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                stats.failed(System.nanoTime() - start);
+                if (callback != null) callback.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                stats.failed(System.nanoTime() - start);
+                if (callback != null) callback.cancelled();
+            }
+        });
+    }
+
+    private PoolMetrics.LeaseStats routeStats(HttpRoute route) {
+        PoolMetrics.LeaseStats stats = metrics.getLeaseStats(route);
+        if (stats == null) {
+            stats = metrics.addRoute(route);
+        }
+        if (!stats.isLimitApplied()) {
+            int max = limits.limitFor(route);
+            if (max != RoutePoolLimits.UNRESOLVED) {
+                if (max > 0) {
+                    setMaxPerRoute(route, max);
+                }
+                stats.limitApplied();
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 后台定时关闭过期的连接,以及空闲超过maxIdleMs的连接(maxIdleMs<=0时只清理过期连接)
+     */
+    public synchronized void startEviction(long intervalMs, final long maxIdleMs) {
+        if (evictor != null || intervalMs <= 0) {
+            return;
+        }
+        evictor = IdleConnectionEvictor.schedule(metrics.getName(), () -> {
+            closeExpiredConnections();
+            if (maxIdleMs > 0) {
+                closeIdleConnections(maxIdleMs, TimeUnit.MILLISECONDS);
+            }
+            metrics.prune();
+        }, intervalMs);
+    }
+
+    private void stopEviction() {
+        ScheduledFuture<?> f = evictor;
+        if (f != null) {
+            f.cancel(false);
+        }
+    }
+
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void shutdown(long waitMs) throws IOException {
+        stopEviction();
+        metrics.unregister();
+        super.shutdown(waitMs);
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        stopEviction();
+        metrics.unregister();
+        super.shutdown();
+    }
+}
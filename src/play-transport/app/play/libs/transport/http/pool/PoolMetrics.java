@@ -0,0 +1,145 @@
+package play.libs.transport.http.pool;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接池的运行指标:每个路由的租用/空闲/等待连接数,以及获取连接的等待时间
+ * 所有创建出来的连接池都登记在这里,由{@link PoolMetricsCollector}统一导出.
+ * 连接池中已经没有连接、并且超过ROUTE_IDLE_MILLIS没有使用的路由会被移除,路由数超过MAX_ROUTES时在登记新路由时清理
+ */
+public class PoolMetrics {
+    private static final ConcurrentMap<String, PoolMetrics> REGISTRY = new ConcurrentHashMap<>();
+    static final int MAX_ROUTES = 1024;
+    static final long ROUTE_IDLE_MILLIS = 10 * 60 * 1000L;
+
+    private final String name;
+    private final ConnPoolControl<HttpRoute> pool;
+    private final ConcurrentMap<HttpRoute, LeaseStats> routes = new ConcurrentHashMap<>();
+
+    private PoolMetrics(String name, ConnPoolControl<HttpRoute> pool) {
+        this.name = name;
+        this.pool = pool;
+    }
+
+    /**
+     * 登记一个连接池,同名的连接池会加上序号区分
+     */
+    public static PoolMetrics register(String name, ConnPoolControl<HttpRoute> pool) {
+        String key = name;
+        AtomicInteger seq = new AtomicInteger(1);
+        while (true) {
+            PoolMetrics metrics = new PoolMetrics(key, pool);
+            if (REGISTRY.putIfAbsent(key, metrics) == null) {
+                return metrics;
+            }
+            key = name + "-" + seq.incrementAndGet();
+        }
+    }
+
+    public static Collection<PoolMetrics> all() {
+        return Collections.unmodifiableCollection(REGISTRY.values());
+    }
+
+    public static String routeName(HttpRoute route) {
+        return route.getTargetHost().toHostString();
+    }
+
+    public void unregister() {
+        REGISTRY.remove(name, this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LeaseStats getLeaseStats(HttpRoute route) {
+        return routes.get(route);
+    }
+
+    public LeaseStats addRoute(HttpRoute route) {
+        if (routes.size() >= MAX_ROUTES) {
+            prune();
+        }
+        LeaseStats stats = new LeaseStats();
+        LeaseStats prev = routes.putIfAbsent(route, stats);
+        return prev != null ? prev : stats;
+    }
+
+    /**
+     * 移除连接池中已经没有连接(租用、空闲、等待都为0)且一段时间没有使用的路由
+     */
+    public void prune() {
+        long idleBefore = System.currentTimeMillis() - ROUTE_IDLE_MILLIS;
+        for (Map.Entry<HttpRoute, LeaseStats> e : routes.entrySet()) {
+            if (e.getValue().lastUsedAt < idleBefore) {
+                PoolStats stats = pool.getStats(e.getKey());
+                if (stats.getLeased() + stats.getAvailable() + stats.getPending() == 0) {
+                    routes.remove(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+
+    public Set<HttpRoute> getRoutes() {
+        return routes.keySet();
+    }
+
+    public PoolStats getStats(HttpRoute route) {
+        return pool.getStats(route);
+    }
+
+    public PoolStats getTotalStats() {
+        return pool.getTotalStats();
+    }
+
+    public static class LeaseStats {
+        private final LongAdder leased = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private volatile long lastUsedAt = System.currentTimeMillis();
+        private volatile boolean limitApplied = false;
+
+        public void leased(long nanos) {
+            leased.increment();
+            waitNanos.add(nanos);
+            lastUsedAt = System.currentTimeMillis();
+        }
+
+        public void failed(long nanos) {
+            failed.increment();
+            waitNanos.add(nanos);
+            lastUsedAt = System.currentTimeMillis();
+        }
+
+        boolean isLimitApplied() {
+            return limitApplied;
+        }
+
+        void limitApplied() {
+            limitApplied = true;
+        }
+
+        public long getLeasedCount() {
+            return leased.sum();
+        }
+
+        public long getFailedCount() {
+            return failed.sum();
+        }
+
+        public long getWaitNanos() {
+            return waitNanos.sum();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package play.libs.transport.http.pool;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 导出所有HTTP连接池的指标,按client(ws.client.name)和route(host:port)区分
+ */
+public class PoolMetricsCollector extends Collector {
+    private static final List<String> LABEL_NAMES = Arrays.asList("client", "route");
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        GaugeMetricFamily leased = new GaugeMetricFamily("http_client_pool_leased", "Connections currently leased from the pool.", LABEL_NAMES);
+        GaugeMetricFamily available = new GaugeMetricFamily("http_client_pool_available", "Idle connections kept alive in the pool.", LABEL_NAMES);
+        GaugeMetricFamily pending = new GaugeMetricFamily("http_client_pool_pending", "Requests waiting for a connection.", LABEL_NAMES);
+        GaugeMetricFamily max = new GaugeMetricFamily("http_client_pool_max", "Maximum connections allowed for the route.", LABEL_NAMES);
+        CounterMetricFamily leases = new CounterMetricFamily("http_client_pool_lease_total", "Connections leased from the pool.", LABEL_NAMES);
+        CounterMetricFamily failures = new CounterMetricFamily("http_client_pool_lease_failures_total", "Connection leases that timed out or were cancelled.", LABEL_NAMES);
+        CounterMetricFamily waitSeconds = new CounterMetricFamily("http_client_pool_lease_wait_seconds_total", "Time spent waiting to lease a connection.", LABEL_NAMES);
+
+        for (PoolMetrics pool : PoolMetrics.all()) {
+            for (HttpRoute route : pool.getRoutes()) {
+                PoolMetrics.LeaseStats lease = pool.getLeaseStats(route);
+                if (lease == null) {
+                    continue; //刚被清理掉的路由
+                }
+                List<String> labels = Arrays.asList(pool.getName(), PoolMetrics.routeName(route));
+                PoolStats stats = pool.getStats(route);
+                leased.addMetric(labels, stats.getLeased());
+                available.addMetric(labels, stats.getAvailable());
+                pending.addMetric(labels, stats.getPending());
+                max.addMetric(labels, stats.getMax());
+                leases.addMetric(labels, lease.getLeasedCount());
+                failures.addMetric(labels, lease.getFailedCount());
+                waitSeconds.addMetric(labels, lease.getWaitNanos() / 1e9);
+            }
+        }
+        return Arrays.asList(leased, available, pending, max, leases, failures, waitSeconds);
+    }
+}
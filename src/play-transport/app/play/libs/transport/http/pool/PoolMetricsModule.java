@@ -0,0 +1,40 @@
+package play.libs.transport.http.pool;
+
+import io.prometheus.client.CollectorRegistry;
+import play.api.Configuration;
+import play.api.Environment;
+import play.api.inject.Binding;
+import play.api.inject.Module;
+import play.inject.ApplicationLifecycle;
+import scala.collection.Seq;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 把连接池指标注册到prometheus,需要应用自己引入play-prometheus(提供CollectorRegistry)并启用:
+ * <pre>
+ * play.modules.enabled += "play.libs.transport.http.pool.PoolMetricsModule"
+ * </pre>
+ */
+public class PoolMetricsModule extends Module {
+
+    @Override
+    public Seq<Binding<?>> bindings(final Environment environment, final Configuration configuration) {
+        return seq(bind(Exporter.class).toSelf().eagerly());
+    }
+
+    @Singleton
+    public static class Exporter {
+        @Inject
+        public Exporter(CollectorRegistry registry, ApplicationLifecycle lifecycle) {
+            PoolMetricsCollector collector = new PoolMetricsCollector();
+            registry.register(collector);
+            lifecycle.addStopHook(() -> {
+                registry.unregister(collector);
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+    }
+}
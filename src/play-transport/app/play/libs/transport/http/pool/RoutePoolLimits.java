@@ -0,0 +1,145 @@
+package play.libs.transport.http.pool;
+
+import com.google.common.collect.Lists;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigUtil;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.util.InetAddressUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import play.Configuration;
+import play.libs.transport.dns.DNS;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按目标主机划分连接池上限,配置方式:
+ * <pre>
+ * ws.routes {
+ *   "pay.example.com" { maxPerRoute = 200 }
+ *   "10.0.0.5:8080"   { maxPerRoute = 50 }
+ * }
+ * </pre>
+ * HTTPInvoker经过负载均衡后实际连接的是解析出来的IP,
+ * 所以配置的域名会通过DNS缓存反查,域名下的每个IP各自享有maxPerRoute个连接.
+ * 反查只读缓存,不在连接池的调用线程上等待解析;域名还没有解析过时返回{@link #UNRESOLVED},同时在后台解析
+ */
+public class RoutePoolLimits {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RoutePoolLimits.class);
+    public static final RoutePoolLimits EMPTY = new RoutePoolLimits(Collections.emptyList());
+    /** 没有配置上限,使用连接池默认的maxPerRoute **/
+    public static final int NO_LIMIT = 0;
+    /** 配置的域名还没有解析过,暂时不能确定,下次获取连接时再查 **/
+    public static final int UNRESOLVED = -1;
+
+    private final List<Entry> entries;
+
+    public RoutePoolLimits(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static RoutePoolLimits fromConfig(Configuration config) {
+        Configuration routes = config.getConfig("ws.routes");
+        if (routes == null) {
+            return EMPTY;
+        }
+        Config underlying = routes.underlying();
+        List<Entry> entries = Lists.newArrayList();
+        for (String key : routes.subKeys()) {
+            String path = ConfigUtil.joinPath(key, "maxPerRoute");
+            if (!underlying.hasPath(path)) {
+                continue;
+            }
+            entries.add(Entry.parse(key, underlying.getInt(path)));
+        }
+        return entries.isEmpty() ? EMPTY : new RoutePoolLimits(entries);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * 查找路由对应的连接上限,没有配置时返回{@link #NO_LIMIT}
+     */
+    public int limitFor(HttpRoute route) {
+        if (entries.isEmpty()) {
+            return NO_LIMIT;
+        }
+        HttpHost target = route.getTargetHost();
+        String hostName = target.getHostName();
+        for (Entry e : entries) {
+            if (e.matchPort(target.getPort()) && e.host.equalsIgnoreCase(hostName)) {
+                return e.maxPerRoute;
+            }
+        }
+        if (!isIPAddress(hostName)) {
+            return NO_LIMIT;
+        }
+        boolean unresolved = false;
+        for (Entry e : entries) {
+            if (e.matchPort(target.getPort()) && !isIPAddress(e.host)) {
+                InetAddress[] addresses = cachedAddresses(e.host);
+                if (addresses == null) {
+                    unresolved = true;
+                } else if (contains(addresses, hostName)) {
+                    return e.maxPerRoute;
+                }
+            }
+        }
+        return unresolved ? UNRESOLVED : NO_LIMIT;
+    }
+
+    /**
+     * 缓存中的地址,没有时发起异步解析并返回null
+     */
+    private static InetAddress[] cachedAddresses(String host) {
+        try {
+            return DNS.resolveAsync(host).toCompletableFuture().getNow(null);
+        } catch (Exception e) {
+            LOGGER.warn("resolve route host {} error:{}", host, e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean contains(InetAddress[] addresses, String ip) {
+        for (InetAddress addr : addresses) {
+            if (ip.equals(addr.getHostAddress())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIPAddress(String host) {
+        return InetAddressUtils.isIPv4Address(host) || InetAddressUtils.isIPv6Address(host);
+    }
+
+    public static class Entry {
+        final String host;
+        final int port;
+        final int maxPerRoute;
+
+        public Entry(String host, int port, int maxPerRoute) {
+            this.host = host;
+            this.port = port;
+            this.maxPerRoute = maxPerRoute;
+        }
+
+        static Entry parse(String key, int maxPerRoute) {
+            int idx = key.lastIndexOf(':');
+            if (idx > 0 && key.indexOf(':') == idx) { //host:port,IPv6不支持带端口
+                return new Entry(key.substring(0, idx), NumberUtils.toInt(key.substring(idx + 1), -1), maxPerRoute);
+            }
+            return new Entry(key, -1, maxPerRoute);
+        }
+
+        boolean matchPort(int targetPort) {
+            return port <= 0 || port == targetPort;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package play.libs.transport.hystrix;
+
+import org.apache.http.HttpHost;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 按{@link HttpHost}保存每台机器的熔断器,命中时只有一次无锁的{@link ConcurrentHashMap#get}
+ * 不需要像原来的LoadingCache一样每次请求拼接host:port字符串
+ */
+public class CircuitBreakerRegistry {
+    private static final int DEFAULT_MAX_SIZE = 1 << 10;
+
+    private final ConcurrentHashMap<HttpHost, HystrixCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Function<HttpHost, HystrixCircuitBreaker> factory;
+    private final int maxSize;
+
+    public CircuitBreakerRegistry(int maxSize, Function<HttpHost, HystrixCircuitBreaker> factory) {
+        this.maxSize = maxSize;
+        this.factory = factory;
+    }
+
+    public CircuitBreakerRegistry() {
+        this(DEFAULT_MAX_SIZE, host -> new StripedCircuitBreaker());
+    }
+
+    public HystrixCircuitBreaker get(HttpHost host) {
+        HystrixCircuitBreaker breaker = breakers.get(host);
+        if (breaker != null) {
+            return breaker;
+        }
+        if (breakers.size() >= maxSize) {
+            evictClosed();
+        }
+        return breakers.computeIfAbsent(host, factory);
+    }
+
+    /**
+     * 机器数量超过上限时清掉没有熔断的记录,熔断中的保留到恢复为止
+     */
+    private void evictClosed() {
+        Iterator<Map.Entry<HttpHost, HystrixCircuitBreaker>> it = breakers.entrySet().iterator();
+        while (it.hasNext()) {
+            if (!it.next().getValue().isOpen()) {
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return breakers.size();
+    }
+}
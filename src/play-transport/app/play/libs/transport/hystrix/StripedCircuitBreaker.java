@@ -0,0 +1,163 @@
+package play.libs.transport.hystrix;
+
+import com.netflix.hystrix.HystrixCommandProperties;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 与{@link HystrixCircuitBreaker.HystrixCircuitBreakerImpl}相同的熔断逻辑,统计部分换成预先分配好的滑动窗口:
+ * 每个桶只有成功/失败两个{@link LongAdder},桶在创建时分配,之后循环复用,记录一次请求不产生新对象.
+ * HystrixRollingNumber每个桶要为所有事件类型各建一个计数器,每秒滚动一次都要重新分配.
+ */
+public class StripedCircuitBreaker implements HystrixCircuitBreaker {
+    private final Bucket[] buckets;
+    private final long bucketMs;
+    private final long windowMs;
+    private final int requestVolumeThreshold;
+    private final int errorThresholdPercentage;
+    private final long sleepWindowMs;
+    private final long healthSnapshotIntervalMs;
+    private final boolean forceOpen;
+    private final boolean forceClosed;
+
+    private final AtomicBoolean circuitOpen = new AtomicBoolean(false);
+    private final AtomicLong circuitOpenedOrLastTestedTime = new AtomicLong();
+    private final AtomicLong lastHealthSnapshot = new AtomicLong(System.currentTimeMillis());
+    private volatile long snapshotTotal = 0;
+    private volatile int snapshotErrorPercentage = 0;
+
+    public StripedCircuitBreaker(HystrixCommandProperties.Setter properties) {
+        int size = properties.getMetricsRollingStatisticalWindowBuckets();
+        this.windowMs = properties.getMetricsRollingStatisticalWindowInMilliseconds();
+        this.bucketMs = Math.max(windowMs / size, 1);
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.requestVolumeThreshold = properties.getCircuitBreakerRequestVolumeThreshold();
+        this.errorThresholdPercentage = properties.getCircuitBreakerErrorThresholdPercentage();
+        this.sleepWindowMs = properties.getCircuitBreakerSleepWindowInMilliseconds();
+        this.healthSnapshotIntervalMs = properties.getMetricsHealthSnapshotIntervalInMilliseconds();
+        this.forceOpen = properties.getCircuitBreakerForceOpen();
+        this.forceClosed = properties.getCircuitBreakerForceClosed();
+    }
+
+    public StripedCircuitBreaker() {
+        this(HystrixCircuitBreaker.Factory.createSetter());
+    }
+
+    @Override
+    public boolean allowRequest() {
+        if (forceOpen) {
+            return false;
+        }
+        if (forceClosed) {
+            isOpen();
+            return true;
+        }
+        return !isOpen() || allowSingleTest();
+    }
+
+    private boolean allowSingleTest() {
+        long lastTested = circuitOpenedOrLastTestedTime.get();
+        long now = System.currentTimeMillis();
+        //熔断打开超过sleepWindow后,放一个请求过去试探
+        return circuitOpen.get() && now > lastTested + sleepWindowMs
+                && circuitOpenedOrLastTestedTime.compareAndSet(lastTested, now);
+    }
+
+    @Override
+    public boolean isOpen() {
+        if (circuitOpen.get()) {
+            return true;
+        }
+        refreshHealth();
+        if (snapshotTotal < requestVolumeThreshold || snapshotErrorPercentage < errorThresholdPercentage) {
+            return false;
+        }
+        if (circuitOpen.compareAndSet(false, true)) {
+            circuitOpenedOrLastTestedTime.set(System.currentTimeMillis());
+        }
+        return true;
+    }
+
+    @Override
+    public void markSuccess() {
+        current().success.increment();
+        if (circuitOpen.get()) {
+            //试探请求成功,关闭熔断并重新统计
+            reset();
+            circuitOpen.set(false);
+        }
+    }
+
+    @Override
+    public void markFailure() {
+        current().failure.increment();
+    }
+
+    private Bucket current() {
+        long start = System.currentTimeMillis() / bucketMs * bucketMs;
+        Bucket bucket = buckets[(int) ((start / bucketMs) % buckets.length)];
+        long bucketStart = bucket.start;
+        if (bucketStart != start) {
+            bucket.roll(bucketStart, start);
+        }
+        return bucket;
+    }
+
+    private void refreshHealth() {
+        long last = lastHealthSnapshot.get();
+        long now = System.currentTimeMillis();
+        if (now - last < healthSnapshotIntervalMs || !lastHealthSnapshot.compareAndSet(last, now)) {
+            return;
+        }
+        long success = 0;
+        long failure = 0;
+        long windowStart = now - windowMs;
+        for (Bucket bucket : buckets) {
+            if (bucket.start > windowStart) {
+                success += bucket.success.sum();
+                failure += bucket.failure.sum();
+            }
+        }
+        long total = success + failure;
+        snapshotErrorPercentage = total > 0 ? (int) ((double) failure / total * 100) : 0;
+        snapshotTotal = total;
+    }
+
+    private void reset() {
+        for (Bucket bucket : buckets) {
+            bucket.success.reset();
+            bucket.failure.reset();
+        }
+        lastHealthSnapshot.set(System.currentTimeMillis());
+        snapshotTotal = 0;
+        snapshotErrorPercentage = 0;
+    }
+
+    public HealthCounts getHealthCounts() {
+        long total = snapshotTotal;
+        int errorPercentage = snapshotErrorPercentage;
+        return new HealthCounts(total, total * errorPercentage / 100, errorPercentage);
+    }
+
+    static final class Bucket {
+        final LongAdder success = new LongAdder();
+        final LongAdder failure = new LongAdder();
+        volatile long start = -1;
+
+        /**
+         * 桶过期后由第一个发现的线程清零并更新起始时间,并发写入时可能丢失少量计数,和HystrixRollingNumber一样可以接受
+         */
+        synchronized void roll(long expected, long start) {
+            if (this.start == expected) {
+                success.reset();
+                failure.reset();
+                this.start = start;
+            }
+        }
+    }
+}
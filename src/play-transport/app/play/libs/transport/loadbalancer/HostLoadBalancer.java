@@ -54,13 +54,24 @@ public class HostLoadBalancer {
         if(isEnabled) {
            return LoadBalancerBuilder.newBuilder()
                     .withDynamicServerList(new ServerFinder(target))
-                    .withRule(new RoundRobinRule())
+                    .withRule(createRule(conf))
                     .buildDynamicServerListLoadBalancer();
         }else{
             return new NoOpLoadBalancer();
         }
     }
     
+    /**
+     * ws.http.loadBalancerRule: roundRobin(默认)或latency(按正在进行的请求数和响应时间选择)
+     */
+    public static IRule createRule(Configuration conf){
+        String rule = conf.getString("ws.http.loadBalancerRule","roundRobin");
+        if("latency".equalsIgnoreCase(rule)){
+            return new LatencyAwareRule();
+        }
+        return new RoundRobinRule();
+    }
+
     public static List<Server> parseServerList(String serverList){
         String[] sl = serverList.split(",");
         List<Server> servers = Lists.newArrayListWithCapacity(sl.length * 2);
@@ -0,0 +1,45 @@
+package play.libs.transport.loadbalancer;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机取两台可用的机器,选择{@link ServerLatency#cost()}较小的一台(power of two choices)
+ * 变慢或者积压请求的机器会少分流量,不需要等到熔断器打开
+ */
+public class LatencyAwareRule extends AbstractLoadBalancerRule {
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer lb = getLoadBalancer();
+        if (lb == null) {
+            return null;
+        }
+        List<Server> servers = lb.getReachableServers();
+        int size = servers.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return servers.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        Server a = servers.get(i);
+        Server b = servers.get(j);
+        return ServerLatency.of(a).cost() <= ServerLatency.of(b).cost() ? a : b;
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+    }
+}
@@ -3,6 +3,7 @@ package play.libs.transport.loadbalancer;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.http.HttpHost;
@@ -13,6 +14,7 @@ import com.netflix.loadbalancer.Server;
 import com.netflix.loadbalancer.ServerList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import play.libs.transport.dns.DNS;
 import play.libs.transport.dns.DNSLookup;
 
 
@@ -32,17 +34,26 @@ public class ServerFinder implements ServerList<Server> {
         return servers;
     }
 
+    /**
+     * 异步解析,不阻塞负载均衡的更新线程;缓存中有地址时立即更新,否则解析完成后在下一次更新时生效.
+     * DynamicServerListLoadBalancer创建时只调用这个方法,第一次调用时还没有地址,同步解析一次
+     */
     @Override
     public List<Server> getUpdatedListOfServers() {
+        if (servers.get() == null) {
+            return getInitialListOfServers();
+        }
+        final String host = target.getHostName();
         try {
-            List<Server> servers = getAllByName(target, false);
-            if (servers.size() == 0) {
-                servers = getAllByName(target, true);
-            }
-            if (servers.size() > 0) {
-                this.servers.set(servers); //更新服务地址
-            }
-            return servers;
+            DNS.resolveAsync(host)
+                    .thenCompose(adds -> adds.length > 0 ? CompletableFuture.completedFuture(adds) : DNS.refreshAsync(host))
+                    .whenComplete((adds, e) -> {
+                        if (e != null) {
+                            LOGGER.error(String.format("%s request dns error", target), e);
+                        } else if (adds.length > 0) {
+                            this.servers.set(toServers(getHostAddress(adds), target)); //更新服务地址
+                        }
+                    });
         } catch (Exception e) {
             LOGGER.error(String.format("%s request dns error", target), e);
         }
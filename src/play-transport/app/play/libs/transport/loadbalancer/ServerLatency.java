@@ -0,0 +1,75 @@
+package play.libs.transport.loadbalancer;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.netflix.loadbalancer.Server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单台机器的请求统计:正在进行的请求数和按时间指数衰减的响应时间(peak EWMA)
+ * 由HTTPInvoker在请求开始和结束时记录,{@link LatencyAwareRule}据此选择机器
+ */
+public class ServerLatency {
+    private static final double DECAY_MS = 10 * 1000;          //衰减时间常数,10秒前的响应时间权重约为1/e
+    private static final double FAILURE_PENALTY_MS = 1000;     //请求失败按至少1秒计算,避免快速失败的机器吸走流量
+    private static final LoadingCache<String, ServerLatency> STATS = CacheBuilder.newBuilder()
+                        .expireAfterAccess(10, TimeUnit.MINUTES)
+                        .build(new CacheLoader<String, ServerLatency>() {
+                            @Override
+                            public ServerLatency load(String hostPort) throws Exception {
+                                return new ServerLatency();
+                            }
+                        });
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private double ewma = 0;
+    private long updateAt = System.currentTimeMillis();
+
+    public static ServerLatency of(Server server) {
+        return STATS.getUnchecked(server.getHostPort());
+    }
+
+    public void start() {
+        inflight.incrementAndGet();
+    }
+
+    /**
+     * 请求被主动取消(如对冲请求中落后的一方),不计入响应时间
+     */
+    public void cancel() {
+        inflight.decrementAndGet();
+    }
+
+    public void complete(long latencyMs, boolean success) {
+        inflight.decrementAndGet();
+        double sample = success ? latencyMs : Math.max(latencyMs, FAILURE_PENALTY_MS);
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (sample > ewma) { //变慢时立即生效,变快时逐渐衰减
+                ewma = sample;
+            } else {
+                double w = Math.exp(-(now - updateAt) / DECAY_MS);
+                ewma = ewma * w + sample * (1 - w);
+            }
+            updateAt = now;
+        }
+    }
+
+    /**
+     * 选择机器时的代价,越小越优先;长时间没有请求的机器代价逐渐衰减,让恢复的机器重新得到流量
+     */
+    public double cost() {
+        double latency;
+        synchronized (this) {
+            latency = ewma * Math.exp(-(System.currentTimeMillis() - updateAt) / DECAY_MS);
+        }
+        return (latency + 1) * (inflight.get() + 1);
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+}
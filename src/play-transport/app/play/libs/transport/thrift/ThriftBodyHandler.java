@@ -3,10 +3,10 @@ package play.libs.transport.thrift;
 import akka.dispatch.Futures;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
 import org.apache.thrift.TBase;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TProtocolException;
+import play.libs.transport.http.HTTPUtils;
 import play.libs.transport.http.handler.HTTPHandler;
 import play.libs.transport.http.result.HTTPResult;
 import play.libs.transport.http.result.PureResult;
@@ -34,7 +34,7 @@ public class ThriftBodyHandler<A extends TBase> implements HTTPHandler<A> {
         try {
             int statusCode = resp.getStatusLine().getStatusCode();
             if(statusCode == 200){
-                byte[] body = EntityUtils.toByteArray(resp.getEntity());
+                byte[] body = HTTPUtils.toByteArray(resp.getEntity());
                 try {
                     A inst = Thrifts.parseForm(clazz, body); //解析Thrift实体
                     HTTPResult<A> result = new PureResult<A>(statusCode, inst, null,false);
@@ -19,6 +19,7 @@ import play.libs.F.Tuple;
 import play.libs.concurrent.Promise;
 import play.libs.transport.http.HTTP;
 import play.libs.transport.http.HTTPInvokerContext;
+import play.libs.transport.http.HedgePolicy;
 import play.libs.transport.http.PromiseHttpClient;
 import play.libs.transport.http.client.HttpClientFactory;
 import play.libs.transport.http.client.IOType;
@@ -79,11 +80,12 @@ public class ThriftClient {
     }
     
     public HTTPInvokerContext createHttpContext(Builder build){
-        PromiseHttpClient client = HttpClientFactory.createHttpClient(IOType.ASYNC_NIO);
+        PromiseHttpClient client = HttpClientFactory.createHttpClient(build.ioType);
         HTTPInvokerContext httpContext = new HTTPInvokerContext(client);
         httpContext.setLoadBalancer(build.loadBalancer);
         httpContext.setRetryHandler(createRetryHandler(build.retryCount));
         httpContext.setExecutionContext(build.executionContext);
+        httpContext.setHedgePolicy(build.hedgePolicy);
         return httpContext;
     }
 
@@ -145,6 +147,38 @@ public class ThriftClient {
         return handler.getPromise();
     }
 
+    public ThriftTransport getTransport() {
+        return build.transport;
+    }
+
+    public int getRetryCount() {
+        return build.retryCount;
+    }
+
+    public int getTcpPort() {
+        return build.tcpPort;
+    }
+
+    public int getTcpConnections() {
+        return build.tcpConnections;
+    }
+
+    public int getDialTimeout() {
+        return build.dialTimeout;
+    }
+
+    public int getReadTimeout() {
+        return build.readTimeout;
+    }
+
+    public String getHost() {
+        return build.host;
+    }
+
+    public ILoadBalancer getLoadBalancer() {
+        return build.loadBalancer;
+    }
+
     public static Builder builder(){
         return new Builder();
     }
@@ -156,7 +190,16 @@ public class ThriftClient {
              .withHttpPrefix(config.getString("prefix",""))
              .withDialTimeout(config.getMilliseconds("dialTimeout",(long)DEFAULT_DIAL_TIME).intValue())
              .withReadTimeout(config.getMilliseconds("readTimeout",(long)DEFAULT_READ_TIME).intValue())
-             .withRetryCount(config.getInt("retryCount",0));
+             .withRetryCount(config.getInt("retryCount",0))
+             .withIOType(IOType.valueOf(config.getString("ioType",IOType.ASYNC_NIO.name())))
+             .withTransport(ThriftTransport.valueOf(config.getString("transport",ThriftTransport.HTTP.name())))
+             .withTcpPort(config.getInt("tcpPort",0))
+             .withTcpConnections(config.getInt("tcpConnections",2));
+
+        Configuration hedge = config.getConfig("hedge");
+        if(hedge != null && hedge.getBoolean("enabled",false)){ //thrift请求都是POST,需要在hedge.methods中显式配置
+            build.withHedgePolicy(new HedgePolicy(hedge));
+        }
         
         int executor = config.getInt("executor",0);
         if(executor > 0){
@@ -170,10 +213,15 @@ public class ThriftClient {
         int dialTimeout = DEFAULT_DIAL_TIME;
         int readTimeout = DEFAULT_READ_TIME;
         int retryCount = 3;
+        IOType ioType = IOType.ASYNC_NIO;
         ILoadBalancer loadBalancer;
         ExecutionContext executionContext;
+        HedgePolicy hedgePolicy;
         String host = "";
         String httpPrefix = "";
+        ThriftTransport transport = ThriftTransport.HTTP;
+        int tcpPort = 0;        //TCP端口,0时使用servers/host中的端口
+        int tcpConnections = 2; //TCP方式下每台机器的连接数
         
         public ThriftClient build(){
             return new ThriftClient(this);
@@ -191,6 +239,26 @@ public class ThriftClient {
             this.retryCount = retryCount;
             return this;
         }
+        public Builder withIOType(IOType ioType){
+            this.ioType = ioType;
+            return this;
+        }
+        public Builder withHedgePolicy(HedgePolicy hedgePolicy){
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+        public Builder withTransport(ThriftTransport transport){
+            this.transport = transport;
+            return this;
+        }
+        public Builder withTcpPort(int tcpPort){
+            this.tcpPort = tcpPort;
+            return this;
+        }
+        public Builder withTcpConnections(int tcpConnections){
+            this.tcpConnections = tcpConnections;
+            return this;
+        }
         public Builder withHttpPrefix(String httpPrefix){
             this.httpPrefix = httpPrefix;
             return this;
@@ -0,0 +1,6 @@
+package play.libs.transport.thrift;
+
+public enum ThriftTransport {
+    HTTP, //每次调用一个HTTP POST
+    TCP;  //长连接上按帧发送,多个调用共用连接,通过seqId对应响应
+}
@@ -0,0 +1,164 @@
+package play.libs.transport.dns;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 用{@link StaticAddressResolver}代替真实的DNS,手动推进时钟;解析器不hold时解析同步完成
+ */
+public class AsyncDNSTest {
+    private static final String HOST = "svc.test";
+    private static final long TTL = 1000;
+    private static final long MAX_STALE = 5000;
+
+    private final AtomicLong clock = new AtomicLong(1000000);
+    private StaticAddressResolver resolver;
+    private AsyncDNS dns;
+
+    @Before
+    public void setup() throws Exception {
+        resolver = new StaticAddressResolver().put(HOST, TTL, "10.0.0.1");
+        dns = new AsyncDNS(resolver, 0.8d, MAX_STALE, 60000, 1000) {
+            @Override
+            protected long currentTimeMillis() {
+                return clock.get();
+            }
+        };
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(millis);
+    }
+
+    private static String ip(InetAddress[] addresses) {
+        assertEquals(1, addresses.length);
+        return addresses[0].getHostAddress();
+    }
+
+    /**
+     * 第一次解析需要等待结果,之后在有效期的refreshAhead比例之前都直接使用缓存
+     */
+    @Test
+    public void testColdStart() throws Exception {
+        assertFalse(dns.isResolved(HOST));
+        assertEquals("10.0.0.1", ip(dns.getAllByName(HOST)));
+        assertTrue(dns.isResolved(HOST));
+        assertEquals(1, resolver.getLookups());
+
+        try {
+            dns.getAllByName("unknown.test");
+            fail("unknown host resolved");
+        } catch (ExecutionException e) {
+            assertFalse(dns.isResolved("unknown.test"));
+        }
+
+        //IP地址不经过解析器
+        assertEquals("10.0.0.9", ip(dns.getAllByName("10.0.0.9")));
+        assertTrue(dns.isResolved("10.0.0.9"));
+        assertEquals(2, resolver.getLookups());
+    }
+
+    @Test
+    public void testColdStartAsync() throws Exception {
+        resolver.hold();
+        CompletableFuture<InetAddress[]> first = dns.resolveAsync(HOST).toCompletableFuture();
+        CompletableFuture<InetAddress[]> second = dns.resolveAsync(HOST).toCompletableFuture();
+        assertFalse(first.isDone());
+        assertEquals(1, resolver.getLookups()); //同一个域名同时只有一个解析请求
+        resolver.release();
+        assertEquals("10.0.0.1", ip(first.get()));
+        assertEquals("10.0.0.1", ip(second.get()));
+        assertTrue(dns.isResolved(HOST));
+    }
+
+    @Test
+    public void testRefreshRespectsTtl() throws Exception {
+        dns.getAllByName(HOST);
+        resolver.put(HOST, TTL, "10.0.0.2");
+        advance(TTL * 8 / 10 - 1);
+        assertEquals("10.0.0.1", ip(dns.getAllByName(HOST)));
+        assertEquals(1, resolver.getLookups());
+
+        //到了提前刷新的时间,这次返回缓存中的地址,同时刷新
+        advance(1);
+        assertEquals("10.0.0.1", ip(dns.getAllByName(HOST)));
+        assertEquals(2, resolver.getLookups());
+        assertEquals("10.0.0.2", ip(dns.getAllByName(HOST)));
+        assertEquals(2, resolver.getLookups());
+
+        //按新结果的有效期重新计算
+        advance(TTL * 8 / 10 - 1);
+        dns.getAllByName(HOST);
+        assertEquals(2, resolver.getLookups());
+        advance(1);
+        dns.getAllByName(HOST);
+        assertEquals(3, resolver.getLookups());
+    }
+
+    /**
+     * 已经过期但没有超过maxStale时,刷新期间继续返回旧地址,不等待解析
+     */
+    @Test
+    public void testServeStaleWhileRefreshing() throws Exception {
+        dns.getAllByName(HOST);
+        resolver.put(HOST, TTL, "10.0.0.2").hold();
+        advance(TTL + 100);
+        assertTrue(dns.isResolved(HOST));
+        assertEquals("10.0.0.1", ip(dns.getAllByName(HOST)));
+        assertEquals("10.0.0.1", ip(dns.resolveAsync(HOST).toCompletableFuture().getNow(null)));
+        assertEquals(2, resolver.getLookups());
+
+        resolver.release();
+        assertEquals("10.0.0.2", ip(dns.getAllByName(HOST)));
+        assertEquals(2, resolver.getLookups());
+    }
+
+    /**
+     * 刷新失败时在maxStale内继续使用旧地址,间隔一段时间后重试;超过maxStale后报错
+     */
+    @Test
+    public void testFailureFallback() throws Exception {
+        dns.getAllByName(HOST);
+        resolver.remove(HOST);
+        advance(TTL);
+        assertEquals("10.0.0.1", ip(dns.getAllByName(HOST)));
+        assertEquals(2, resolver.getLookups());
+
+        //失败后不会每次访问都重试
+        advance(100);
+        assertEquals("10.0.0.1", ip(dns.getAllByName(HOST)));
+        assertEquals(2, resolver.getLookups());
+        advance(1000);
+        assertEquals("10.0.0.1", ip(dns.getAllByName(HOST)));
+        assertEquals(3, resolver.getLookups());
+
+        advance(MAX_STALE);
+        assertFalse(dns.isResolved(HOST));
+        try {
+            dns.getAllByName(HOST);
+            fail("stale address used after maxStale");
+        } catch (ExecutionException e) {
+            //expected
+        }
+
+        //恢复后重新解析
+        resolver.put(HOST, TTL, "10.0.0.3");
+        assertEquals("10.0.0.3", ip(dns.getAllByName(HOST)));
+    }
+
+    @Test
+    public void testForceRefresh() throws Exception {
+        dns.getAllByName(HOST);
+        resolver.put(HOST, TTL, "10.0.0.2");
+        assertEquals("10.0.0.2", ip(dns.refresh(HOST)));
+        assertEquals("10.0.0.2", ip(dns.getAllByName(HOST)));
+        assertEquals(2, resolver.getLookups());
+    }
+}
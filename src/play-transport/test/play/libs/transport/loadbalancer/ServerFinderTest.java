@@ -0,0 +1,74 @@
+package play.libs.transport.loadbalancer;
+
+import com.netflix.loadbalancer.DynamicServerListLoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerBuilder;
+import com.netflix.loadbalancer.RoundRobinRule;
+import com.netflix.loadbalancer.Server;
+import org.apache.http.HttpHost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import play.libs.transport.dns.AsyncDNS;
+import play.libs.transport.dns.DNS;
+import play.libs.transport.dns.StaticAddressResolver;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ServerFinderTest {
+    private StaticAddressResolver resolver;
+
+    @Before
+    public void setup() throws Exception {
+        resolver = new StaticAddressResolver().put("svc.test", 60000, "10.0.0.1", "10.0.0.2");
+        DNS.setCache(new AsyncDNS(resolver, 0.8d, 60000, 60000, 1000));
+    }
+
+    @After
+    public void restore() {
+        DNS.setCache(null);
+    }
+
+    /**
+     * DynamicServerListLoadBalancer创建时只调用getUpdatedListOfServers,第一次调用就要返回解析到的地址
+     */
+    @Test
+    public void testColdStart() {
+        List<Server> servers = new ServerFinder(new HttpHost("svc.test", 8080)).getUpdatedListOfServers();
+        assertEquals(2, servers.size());
+        assertEquals(8080, servers.get(0).getPort());
+
+        assertTrue(new ServerFinder(new HttpHost("unknown.test", 80)).getUpdatedListOfServers().isEmpty());
+    }
+
+    @Test
+    public void testDynamicServerListLoadBalancer() {
+        DynamicServerListLoadBalancer<Server> lb = LoadBalancerBuilder.newBuilder()
+                .withDynamicServerList(new ServerFinder(new HttpHost("svc.test", 80)))
+                .withRule(new RoundRobinRule())
+                .buildDynamicServerListLoadBalancer();
+        try {
+            assertEquals(2, lb.getAllServers().size());
+            assertNotNull(lb.chooseServer(null));
+        } finally {
+            lb.stopServerListRefreshing();
+        }
+    }
+
+    @Test
+    public void testUpdateFromCache() throws Exception {
+        ServerFinder finder = new ServerFinder(new HttpHost("svc.test", 80));
+        assertEquals(2, finder.getUpdatedListOfServers().size());
+        resolver.put("svc.test", 60000, "10.0.0.3");
+        DNS.refresh("svc.test");
+        List<Server> servers = finder.getUpdatedListOfServers();
+        assertEquals(1, servers.size());
+        assertEquals("10.0.0.3", servers.get(0).getHost());
+
+        //解析失败时保留原来的地址
+        resolver.remove("svc.test");
+        DNS.refreshAsync("svc.test");
+        assertEquals(1, finder.getUpdatedListOfServers().size());
+    }
+}